@@ -52,8 +52,22 @@ public class MusicReceiver
      * @param sequence The sequence to send to the MIDI device
      */
     public void sendSequence(Sequence sequence) throws MidiUnavailableException {
+        sendSequence(sequence, false);
+    }
+    
+    /**
+     * Send the given sequence to the MIDI device
+     *  
+     * @param sequence The sequence to send to the MIDI device
+     * @param useTimestamps if true, messages are sent ahead of time, timestamped on the device's clock 
+     */
+    public void sendSequence(Sequence sequence, boolean useTimestamps) throws MidiUnavailableException {
         init();
-        MidiTools.sendSequenceToReceiver(sequence, receiver);
+        if (useTimestamps) {
+            MidiTools.sendSequenceToReceiver(sequence, receiver, device);
+        } else {
+            MidiTools.sendSequenceToReceiver(sequence, receiver);
+        }
         cleanup();
         close();
     }
@@ -19,7 +19,10 @@
 
 package org.jfugue.midi;
 
+import org.jfugue.theory.Chord;
 import org.jfugue.theory.Note;
+import org.jfugue.theory.PackedNote;
+import org.staccato.DefaultNoteSettingsManager;
 
 import java.util.logging.Logger;
 
@@ -48,6 +51,7 @@ final class MidiEventManager extends TrackTimeManager
     private byte metronomePulse; 
     private byte thirtysecondNotesPer24MidiClockSignals;
     private Logger logger = Logger.getLogger("org.jfugue");
+    private byte[] chordValues = new byte[8];
 
     public MidiEventManager() { 
     	super();
@@ -250,37 +254,74 @@ final class MidiEventManager extends TrackTimeManager
     	if (note.getDuration() == 0.0) {
     		note.useDefaultDuration();
     	}
+    	addNote(note.getValue(), note.getDuration(), note.getOnVelocity(), note.getOffVelocity(), note.isFirstNote(), note.isHarmonicNote(), note.isRest(), note.isStartOfTie(), note.isEndOfTie());
+    }
+    
+    /**
+     * Adds a note given in packed form; this gives the same events as addNote(PackedNote.toNote(packedNote, duration))
+     * @see org.jfugue.theory.PackedNote
+     */
+    public void addPackedNote(long packedNote, double duration) {
+    	if (duration == 0.0) {
+    		duration = DefaultNoteSettingsManager.getInstance().getDefaultDuration();
+    	}
+    	addNote(PackedNote.getValue(packedNote), duration, PackedNote.getOnVelocity(packedNote), PackedNote.getOffVelocity(packedNote), 
+    			PackedNote.hasFlag(packedNote, PackedNote.FIRST_NOTE), PackedNote.hasFlag(packedNote, PackedNote.HARMONIC_NOTE), PackedNote.hasFlag(packedNote, PackedNote.REST_FLAG), 
+    			PackedNote.hasFlag(packedNote, PackedNote.START_OF_TIE), PackedNote.hasFlag(packedNote, PackedNote.END_OF_TIE));
+    }
+    
+    /**
+     * Adds the notes of a chord. This gives the same events as adding each of the
+     * chord's getNotes(), but uses the chord's cached note values instead of creating Notes.
+     */
+    public void addChord(Chord chord) {
+    	Note root = chord.getRoot();
+    	if (chord.getNoteCount() > chordValues.length) {
+    		chordValues = new byte[chord.getNoteCount()];
+    	}
+    	int count = chord.fillNoteValues(chordValues);
+    	double duration = (root.getDuration() == 0.0) ? DefaultNoteSettingsManager.getInstance().getDefaultDuration() : root.getDuration();
+    	addNote(chordValues[0], duration, root.getOnVelocity(), root.getOffVelocity(), root.isFirstNote(), root.isHarmonicNote(), root.isRest(), root.isStartOfTie(), root.isEndOfTie());
+    	
+    	// The other notes of a chord are harmonic notes with default velocities
+    	byte onVelocity = DefaultNoteSettingsManager.getInstance().getDefaultOnVelocity();
+    	byte offVelocity = DefaultNoteSettingsManager.getInstance().getDefaultOffVelocity();
+    	for (int i=1; i < count; i++) {
+    		addNote(chordValues[i], duration, onVelocity, offVelocity, false, true, false, false, false);
+    	}
+    }
 
+    private void addNote(byte value, double duration, byte onVelocity, byte offVelocity, boolean isFirstNote, boolean isHarmonicNote, boolean isRest, boolean isStartOfTie, boolean isEndOfTie) {
     	// If this is the first note in a sequence of harmonic or melodic notes, remember what time it is.
-    	if (note.isFirstNote()) {
+    	if (isFirstNote) {
     		setInitialNoteBeatTimeForHarmonicNotes(getTrackBeatTime()); 
     	}
     	
     	// If we're going to the next sequence in a parallel note situation, roll back the time to the beginning of the first note.
     	// A note will never be a parallel note if a first note has not happened first.
-    	if (note.isHarmonicNote()) {
+    	if (isHarmonicNote) {
     		setTrackBeatTime(getInitialNoteBeatTimeForHarmonicNotes());
     	} 
 
     	// If the note is a rest, simply advance the track time and get outta here
-    	if (note.isRest()) {
-    		advanceTrackBeatTime(note.getDuration());  
+    	if (isRest) {
+    		advanceTrackBeatTime(duration);  
     		return;
     	}
     	
     	// Add a NOTE_ON event.
     	// If the note is continuing a tie, it is already sounding, and there is not need to turn the note on
-    	if (!note.isEndOfTie()) {
-    		addEvent(ShortMessage.NOTE_ON, note.getValue(), note.getOnVelocity());
+    	if (!isEndOfTie) {
+    		addEvent(ShortMessage.NOTE_ON, value, onVelocity);
     	}
     	
     	// Advance the track timer
-    	advanceTrackBeatTime(note.getDuration());  
+    	advanceTrackBeatTime(duration);  
     	
     	// Add a NOTE_OFF event.
     	// If this note is the start of a tie, the note will continue to sound, so we don't want to turn it off.
-    	if (!note.isStartOfTie()) {
-    		addEvent(ShortMessage.NOTE_OFF, note.getValue(), note.getOffVelocity());
+    	if (!isStartOfTie) {
+    		addEvent(ShortMessage.NOTE_OFF, value, offVelocity);
     	}
     }
     
@@ -298,4 +339,4 @@ final class MidiEventManager extends TrackTimeManager
         return this.sequence;
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
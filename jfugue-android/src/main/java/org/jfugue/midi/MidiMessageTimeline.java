@@ -0,0 +1,262 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.midi;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jfugue.util.StableSort;
+
+import jp.kshoji.javax.sound.midi.MetaMessage;
+import jp.kshoji.javax.sound.midi.MidiDevice;
+import jp.kshoji.javax.sound.midi.MidiEvent;
+import jp.kshoji.javax.sound.midi.MidiMessage;
+import jp.kshoji.javax.sound.midi.Receiver;
+import jp.kshoji.javax.sound.midi.Sequence;
+import jp.kshoji.javax.sound.midi.Track;
+
+/**
+ * The messages of a MIDI sequence, merged across tracks and sorted by tick, with
+ * the time of each message in microseconds computed from the sequence's tempo map.
+ * Ticks, times and messages are kept in parallel arrays, so sending the messages
+ * to a Receiver walks a cursor through the arrays rather than visiting every tick.
+ * 
+ * @see MidiTools#sendSequenceToReceiver(Sequence, Receiver)
+ */
+public final class MidiMessageTimeline 
+{
+    private static final double MICROS_PER_SECOND = 1000000.0D;
+    private static final int DEFAULT_MICROS_PER_QUARTER_NOTE = 60000000 / MidiDefaults.DEFAULT_TEMPO_BEATS_PER_MINUTE;
+    private static final long NANOS_PER_MICRO = 1000L;
+    private static final long LEAD_TIME_IN_MICROS = 100000L;
+    
+    private final long[] ticks;
+    private final long[] times;
+    private final MidiMessage[] messages;
+    private final boolean isPPQ;
+    
+    private MidiMessageTimeline(long[] ticks, MidiMessage[] messages, float divisionType, int resolution) {
+        this.ticks = ticks;
+        this.messages = messages;
+        this.isPPQ = (divisionType == Sequence.PPQ);
+        this.times = computeTimes(divisionType, resolution);
+    }
+    
+    public static MidiMessageTimeline fromSequence(Sequence sequence) {
+        int size = 0;
+        for (Track track : sequence.getTracks()) {
+            size += track.size();
+        }
+        
+        long[] ticks = new long[size];
+        MidiMessage[] messages = new MidiMessage[size];
+        int index = 0;
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                ticks[index] = event.getTick();
+                messages[index] = event.getMessage();
+                index++;
+            }
+        }
+        
+        // Each track is already in tick order; a stable sort keeps messages at the same tick in track order
+        if (!StableSort.isSorted(ticks, size)) {
+            int[] order = StableSort.order(ticks, size);
+            long[] unsortedTicks = ticks.clone();
+            MidiMessage[] unsortedMessages = messages.clone();
+            for (int i=0; i < size; i++) {
+                ticks[i] = unsortedTicks[order[i]];
+                messages[i] = unsortedMessages[order[i]];
+            }
+        }
+        return new MidiMessageTimeline(ticks, messages, sequence.getDivisionType(), sequence.getResolution());
+    }
+
+    /**
+     * Builds a timeline from the Map returned by MidiTools.sortMessagesByTick()
+     */
+    public static MidiMessageTimeline fromSortedMessages(Map<Long, List<MidiMessage>> sortedMidiMessages, float divisionType, int resolution) {
+        int size = 0;
+        long[] keys = new long[sortedMidiMessages.size()];
+        int keyIndex = 0;
+        for (Map.Entry<Long, List<MidiMessage>> entry : sortedMidiMessages.entrySet()) {
+            keys[keyIndex++] = entry.getKey();
+            size += entry.getValue().size();
+        }
+        Arrays.sort(keys);
+
+        long[] ticks = new long[size];
+        MidiMessage[] messages = new MidiMessage[size];
+        int index = 0;
+        for (long tick : keys) {
+            for (MidiMessage message : sortedMidiMessages.get(tick)) {
+                ticks[index] = tick;
+                messages[index] = message;
+                index++;
+            }
+        }
+        return new MidiMessageTimeline(ticks, messages, divisionType, resolution);
+    }
+    
+    public int size() {
+        return messages.length;
+    }
+    
+    public long getTick(int index) {
+        return ticks[index];
+    }
+    
+    public long getTimeInMicros(int index) {
+        return times[index];
+    }
+    
+    public MidiMessage getMessage(int index) {
+        return messages[index];
+    }
+    
+    public long getDurationInMicros() {
+        return times.length == 0 ? 0L : times[times.length-1];
+    }
+
+    /**
+     * Returns the index of the first message at or after the given time
+     */
+    public int indexOfTime(long timeInMicros) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < timeInMicros) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Sends each message to the receiver at its time. Times are measured against
+     * absolute deadlines from a single starting point, so the time taken to send
+     * messages does not accumulate as drift. Tempo messages are used for timing
+     * and are not sent. 
+     * 
+     * @param useTimestamps if true, messages are sent ahead of time, each with its time in
+     *                      microseconds since the start of the sequence, for a receiver whose clock
+     *                      starts at zero with the sequence; otherwise each message is sent at its
+     *                      time with a timestamp of -1
+     * @see #sendToReceiver(Receiver, MidiDevice)
+     */
+    public void sendToReceiver(Receiver receiver, boolean useTimestamps) {
+        if (useTimestamps) {
+            sendAhead(receiver, 0L, 0L);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        for (int i=0; i < messages.length; i++) {
+            waitUntil(startNanos, times[i]);
+            if (!isTempoMessage(messages[i])) {
+                receiver.send(messages[i], -1L);
+            }
+        }
+    }
+
+    /**
+     * Sends the messages to a receiver of the given device, timestamped on the device's clock.
+     * Each message is sent up to the lead time before it is due, so the device, rather than
+     * this thread, is responsible for playing it on time. If the device does not support 
+     * timestamps, the messages are sent at their times with a timestamp of -1. 
+     */
+    public void sendToReceiver(Receiver receiver, MidiDevice device) {
+        long devicePosition = device.getMicrosecondPosition();
+        if (devicePosition < 0) {
+            sendToReceiver(receiver, false);
+        } else {
+            // The first message is due one lead time from now, so it is not already late when it arrives
+            sendAhead(receiver, devicePosition, devicePosition + LEAD_TIME_IN_MICROS);
+        }
+    }
+
+    /**
+     * Sends each message once it is within the lead time of being due, timestamped with 
+     * its time offset by the start time on the receiver's clock. Returns once the last
+     * message is due, so that a caller which closes the receiver does not cut off messages
+     * the device is still holding.
+     * 
+     * @param clockNowInMicros the receiver's clock now
+     * @param startTimeInMicros the time on the receiver's clock at which the sequence starts
+     */
+    private void sendAhead(Receiver receiver, long clockNowInMicros, long startTimeInMicros) {
+        long startNanos = System.nanoTime();
+        long offset = startTimeInMicros - clockNowInMicros;
+        for (int i=0; i < messages.length; i++) {
+            waitUntil(startNanos, offset + times[i] - LEAD_TIME_IN_MICROS);
+            if (!isTempoMessage(messages[i])) {
+                receiver.send(messages[i], startTimeInMicros + times[i]);
+            }
+        }
+        waitUntil(startNanos, offset + getDurationInMicros());
+    }
+    
+    private void waitUntil(long startNanos, long timeInMicros) {
+        long wait = startNanos + timeInMicros * NANOS_PER_MICRO - System.nanoTime();
+        while (wait > 0) {
+            LockSupport.parkNanos(wait);
+            wait = startNanos + timeInMicros * NANOS_PER_MICRO - System.nanoTime();
+        }
+    }
+
+    private boolean isTempoMessage(MidiMessage message) {
+        return isPPQ && (message instanceof MetaMessage) && (((MetaMessage)message).getType() == MidiDefaults.SET_TEMPO_MESSAGE_TYPE);
+    }
+    
+    private long[] computeTimes(float divisionType, int resolution) {
+        long[] computedTimes = new long[ticks.length];
+        double microsPerTick;
+        if (isPPQ) {
+            microsPerTick = (double)DEFAULT_MICROS_PER_QUARTER_NOTE / resolution;
+        } else {
+            double framesPerSecond = 
+                    (divisionType == Sequence.SMPTE_24 ? 24
+                      : (divisionType == Sequence.SMPTE_25 ? 25
+                        : (divisionType == Sequence.SMPTE_30 ? 30
+                          : (divisionType == Sequence.SMPTE_30DROP ? 29.97 : 24))));
+            microsPerTick = MICROS_PER_SECOND / (framesPerSecond * resolution);
+        }
+
+        // A tempo change applies to the time between its tick and the following ticks 
+        long prevTick = 0L;
+        double time = 0.0D;
+        for (int i=0; i < ticks.length; i++) {
+            time += (ticks[i] - prevTick) * microsPerTick;
+            prevTick = ticks[i];
+            computedTimes[i] = (long)time;
+            if (isTempoMessage(messages[i])) {
+                byte[] data = ((MetaMessage)messages[i]).getData();
+                int microsecondsPerQuarterNote = ((data[0] & 0xff) << 16) | ((data[1] & 0xff) << 8) | (data[2] & 0xff);
+                microsPerTick = (double)microsecondsPerQuarterNote / resolution;
+            }
+        }
+        return computedTimes;
+    }
+}
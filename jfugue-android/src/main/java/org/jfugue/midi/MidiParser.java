@@ -20,7 +20,8 @@
 package org.jfugue.midi;
 
 import org.jfugue.parser.Parser;
-import org.jfugue.theory.Note;
+import org.jfugue.theory.PackedNote;
+import org.staccato.DefaultNoteSettingsManager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -206,11 +207,7 @@ public class MidiParser extends Parser
         byte decayVelocity = event.getMessage().getMessage()[2];
         this.expectedTimeInBeats[this.currentChannel] = this.currentTimeInBeats[this.currentChannel] + durationInBeats; 
 	
-        Note noteObject = new Note(note);
-        noteObject.setDuration(getDurationInBeats(durationInTicks)); 
-        noteObject.setOnVelocity(tempNote.attackVelocity);
-        noteObject.setOffVelocity(decayVelocity);
-        fireNoteParsed(noteObject);
+        firePackedNoteParsed(PackedNote.pack(note, tempNote.attackVelocity, decayVelocity, PackedNote.DURATION_EXPLICITLY_SET | PackedNote.FIRST_NOTE), durationInBeats);
     }    
     
     private void noteOn(int channel, MidiEvent event) {
@@ -281,7 +278,9 @@ public class MidiParser extends Parser
         double newTimeInBeats = getDurationInBeats(tick);
         if (this.expectedTimeInBeats[this.currentChannel] != newTimeInBeats) {
         	if (newTimeInBeats > expectedTimeInBeats[this.currentChannel]) {
-        		fireNoteParsed(Note.createRest(newTimeInBeats - expectedTimeInBeats[this.currentChannel]));
+        		long rest = PackedNote.pack((byte)0, DefaultNoteSettingsManager.getInstance().getDefaultOnVelocity(), DefaultNoteSettingsManager.getInstance().getDefaultOffVelocity(), 
+        				PackedNote.REST_FLAG | PackedNote.FIRST_NOTE | PackedNote.DURATION_EXPLICITLY_SET);
+        		firePackedNoteParsed(rest, newTimeInBeats - expectedTimeInBeats[this.currentChannel]);
         	} else {
         		fireTrackBeatTimeRequested(newTimeInBeats);
         	}
@@ -150,10 +150,13 @@ public class MidiParserListener implements ParserListener
         this.eventManager.addNote(note);
     }
     
+    /** Used by PackedMidiParserListener, which takes notes in packed form */
+    void addPackedNote(long packedNote, double duration) {
+        this.eventManager.addPackedNote(packedNote, duration);
+    }
+    
     @Override 
     public void onChordParsed(Chord chord) {
-    	for (Note note : chord.getNotes()) {
-    		this.eventManager.addNote(note);
-    	}
+    	this.eventManager.addChord(chord);
     }
 }
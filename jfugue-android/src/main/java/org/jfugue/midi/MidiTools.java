@@ -24,7 +24,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import jp.kshoji.javax.sound.midi.MetaMessage;
+import jp.kshoji.javax.sound.midi.MidiDevice;
 import jp.kshoji.javax.sound.midi.MidiEvent;
 import jp.kshoji.javax.sound.midi.MidiMessage;
 import jp.kshoji.javax.sound.midi.Receiver;
@@ -70,62 +70,36 @@ public class MidiTools {
         return currentLargestKey;
     }
 
-    private static int calculateTicksPerSecondFromMidiSetTempoMessageData(byte[] data, float sequenceResolution) {
-        // The "Set Tempo" MIDI Message sets the tempo of a sequence in microseconds per quarter note
-        int microsecondsPerQuarterNote = ((data[0] & 0xff) << 16) | ((data[1] & 0xff) << 8) | (data[2] & 0xff);
-        int bpm = (int)(60000000.0D / microsecondsPerQuarterNote);
-        return (int)(sequenceResolution * bpm / 60.0D);
+    /**
+     * Sends the messages to the receiver at the times given by their ticks and the tempo
+     * messages among them.
+     * @see MidiMessageTimeline#sendToReceiver(Receiver, boolean)
+     */
+    public static void sendSortedMidiMessagesToReceiver(Map<Long, List<MidiMessage>> sortedMidiMessages, float sequenceDivisionType, int sequenceResolution, Receiver receiver) {
+        MidiMessageTimeline.fromSortedMessages(sortedMidiMessages, sequenceDivisionType, sequenceResolution).sendToReceiver(receiver, false);
     }
 
-    private static int calculateTime(long deltaTick, int ticksPerSecond) {
-        return (int)(deltaTick * 1000.0D / ticksPerSecond);
+    /**
+     * Convenience method for a commonly-used idiom
+     */
+    public static void sendSequenceToReceiver(Sequence sequence, Receiver receiver) {
+        sendSequenceToReceiver(sequence, receiver, false);
     }
-    
-    public static void sendSortedMidiMessagesToReceiver(Map<Long, List<MidiMessage>> sortedMidiMessages, float sequenceDivisionType, int sequenceResolution, Receiver receiver) {
-        int bpm = MidiDefaults.DEFAULT_TEMPO_BEATS_PER_MINUTE;
-        int ticksPerSecond;
-        long prevTick = 0L;
-        long msTime = 0L; 
-        long largestTick = getLargestKey(sortedMidiMessages);
 
-        if (sequenceDivisionType == Sequence.PPQ) {
-            ticksPerSecond = (int)(sequenceResolution * bpm / 60.0D);
-        } else {
-            double framesPerSecond = 
-                    (sequenceDivisionType == Sequence.SMPTE_24 ? 24
-                      : (sequenceDivisionType == Sequence.SMPTE_25 ? 25
-                        : (sequenceDivisionType == Sequence.SMPTE_30 ? 30
-                          : (sequenceDivisionType == Sequence.SMPTE_30DROP ? 29.97 : 24))));
-            ticksPerSecond = (int)(sequenceResolution * framesPerSecond);
-        }
-        
-        for (long tick = 0; tick <= largestTick; tick++) {
-            if (sortedMidiMessages.containsKey(tick)) {
-                msTime = calculateTime(tick - prevTick, ticksPerSecond);
-                List<MidiMessage> messages = sortedMidiMessages.get(tick);
-                for (MidiMessage message : messages) {
-                    if ((message instanceof MetaMessage) && (sequenceDivisionType == Sequence.PPQ) && (((MetaMessage)message).getType() == MidiDefaults.SET_TEMPO_MESSAGE_TYPE)) {
-                        ticksPerSecond = calculateTicksPerSecondFromMidiSetTempoMessageData(((MetaMessage)message).getData(), sequenceResolution);
-                        msTime = calculateTime(tick - prevTick, ticksPerSecond);
-                    } else {
-                        receiver.send(message, msTime);
-                    }
-                }
-                try {
-                    Thread.sleep(msTime); 
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex);
-                }
-                prevTick = tick;
-            }
-        }
+    /**
+     * Sends the sequence to the receiver in real time
+     * @param useTimestamps if true, each message is sent with its time in microseconds since the start of the sequence
+     */
+    public static void sendSequenceToReceiver(Sequence sequence, Receiver receiver, boolean useTimestamps) {
+        MidiMessageTimeline.fromSequence(sequence).sendToReceiver(receiver, useTimestamps);
     }
 
     /**
-     * Convenience method for a commonly-used idiom
+     * Sends the sequence to a receiver of the given device, timestamping each message on the device's clock
+     * @see MidiMessageTimeline#sendToReceiver(Receiver, MidiDevice)
      */
-    public static void sendSequenceToReceiver(Sequence sequence, Receiver receiver) {
-        sendSortedMidiMessagesToReceiver(sortMessagesByTick(sequence), sequence.getDivisionType(), sequence.getResolution(), receiver);
+    public static void sendSequenceToReceiver(Sequence sequence, Receiver receiver, MidiDevice device) {
+        MidiMessageTimeline.fromSequence(sequence).sendToReceiver(receiver, device);
     }
 
     public static byte getLSB(int value) {
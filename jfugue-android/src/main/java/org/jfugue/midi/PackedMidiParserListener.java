@@ -0,0 +1,39 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.midi;
+
+import org.jfugue.parser.PackedNoteParserListener;
+
+/**
+ * A MidiParserListener that also takes notes in packed form, so notes fired with 
+ * Parser.firePackedNoteParsed() (for example, by a MidiParser) are added to the 
+ * sequence without creating a Note for each of them. This class is final: a 
+ * subclass that overrides onNoteParsed() should extend MidiParserListener instead, 
+ * which always gets its notes through onNoteParsed().
+ * 
+ * @see org.jfugue.parser.Parser#firePackedNoteParsed(long, double)
+ */
+public final class PackedMidiParserListener extends MidiParserListener implements PackedNoteParserListener
+{
+    @Override
+    public void onPackedNoteParsed(long packedNote, double duration) {
+        addPackedNote(packedNote, duration);
+    }
+}
@@ -19,8 +19,10 @@
 
 package org.jfugue.mitools;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
 
 /**
  * This class contains a collection of methods that change the order of
@@ -29,6 +31,13 @@ import java.util.List;
  * but they can also be durations (such as "w h q"), and you can use
  * the Recombinator to combine two Strings, one containing notes and one
  * containing durations, to generate new music from existing musical elements.
+ * 
+ * Each method that takes a String also has a version that takes the elements
+ * as an array of Strings, so elements can be rearranged many times without
+ * splitting and joining Strings each time. Methods that make random choices
+ * can be given a Random; giving a Random created with a seed makes the results 
+ * repeatable, and giving each thread its own Random keeps threads from waiting 
+ * on each other.
  *  
  * @version 5.0
  * @author David Koelle (dmkoelle@gmail.com)
@@ -57,13 +66,18 @@ public class Rearranger
 	 * Example 2: rotate("A B C D", 3) --> "D A B C"
 	 */
 	public static String rotate(String elementsSeparatedBySpaces, int numRotations) {
-		String[] strings = elementsSeparatedBySpaces.split(" ");
-		StringBuilder buddy = new StringBuilder();
-		for (int i=numRotations; i < strings.length + numRotations; i++) {
-			buddy.append(strings[i % strings.length]);
-			buddy.append(" ");
+		return join(rotate(split(elementsSeparatedBySpaces), numRotations));
+	}
+
+	/** Returns a new array in which the first 'numRotations' elements are moved to the end */
+	public static String[] rotate(String[] elements, int numRotations) {
+		String[] retVal = new String[elements.length];
+		if (elements.length > 0) {
+			int start = ((numRotations % elements.length) + elements.length) % elements.length;
+			System.arraycopy(elements, start, retVal, 0, elements.length - start);
+			System.arraycopy(elements, 0, retVal, elements.length - start, start);
 		}
-		return buddy.toString().trim();
+		return retVal;
 	}
 
 	/** 
@@ -78,20 +92,23 @@ public class Rearranger
 	 * 
 	 */
 	public static String randomize(String elementsSeparatedBySpaces) {
-		String[] strings = elementsSeparatedBySpaces.split(" ");
-		List<String> ss = new ArrayList<String>();
-		for (int i=0; i < strings.length; i++) {
-			ss.add(strings[i]);
-		}
+		return randomize(elementsSeparatedBySpaces, new Random());
+	}
 
-		StringBuilder buddy = new StringBuilder();
-		for (int i=0; i < strings.length; i++) {
-			int r = (int)(Math.random() * ss.size());
-			buddy.append(ss.get(r));
-			buddy.append(" ");
-			ss.remove(r);
+	public static String randomize(String elementsSeparatedBySpaces, Random random) {
+		return join(randomize(split(elementsSeparatedBySpaces), random));
+	}
+
+	/** Returns a new array with the given elements in a random order */
+	public static String[] randomize(String[] elements, Random random) {
+		String[] retVal = elements.clone();
+		for (int i=retVal.length-1; i > 0; i--) {
+			int r = random.nextInt(i+1);
+			String temp = retVal[i];
+			retVal[i] = retVal[r];
+			retVal[r] = temp;
 		}
-		return buddy.toString().trim();
+		return retVal;
 	}
 
 	/**
@@ -106,13 +123,20 @@ public class Rearranger
 	 * 
 	 */
 	public static String createStringFromElements(String elementsSeparatedBySpaces, int numElementsInResult) {
-		String[] strings = elementsSeparatedBySpaces.split(" ");
-		StringBuilder buddy = new StringBuilder();
+		return createStringFromElements(elementsSeparatedBySpaces, numElementsInResult, new Random());
+	}
+	
+	public static String createStringFromElements(String elementsSeparatedBySpaces, int numElementsInResult, Random random) {
+		return join(createElementsFromElements(split(elementsSeparatedBySpaces), numElementsInResult, random));
+	}
+	
+	/** Returns an array of 'numElementsInResult' elements, each chosen at random from the given elements */
+	public static String[] createElementsFromElements(String[] elements, int numElementsInResult, Random random) {
+		String[] retVal = new String[numElementsInResult];
 		for (int i=0; i < numElementsInResult; i++) {
-			buddy.append(strings[(int)(Math.random() * strings.length)]);
-			buddy.append(" ");
+			retVal[i] = elements[random.nextInt(elements.length)];
 		}
-		return buddy.toString().trim();
+		return retVal;
 	}
 	
 	/**
@@ -124,14 +148,15 @@ public class Rearranger
 	 * Example 2: appendToElements("C D E", "q") --> "Cq Dq Eq"
 	 */
 	public static String appendToElements(String elementsSeparatedBySpaces, String stringToAppend) {
-		String[] strings = elementsSeparatedBySpaces.split(" ");
-		StringBuilder buddy = new StringBuilder();
-		for (String s : strings) {
-			buddy.append(s);
-			buddy.append(stringToAppend);
-			buddy.append(" ");
+		return join(appendToElements(split(elementsSeparatedBySpaces), stringToAppend));
+	}
+	
+	public static String[] appendToElements(String[] elements, String stringToAppend) {
+		String[] retVal = new String[elements.length];
+		for (int i=0; i < elements.length; i++) {
+			retVal[i] = elements[i] + stringToAppend;
 		}
-		return buddy.toString().trim();
+		return retVal;
 	}
 	
 	/**
@@ -144,16 +169,33 @@ public class Rearranger
 	 * Example: appendToElements("A B C B C B") --> "A B C"
 	 */
 	public static String createUniqueElements(String elementsSeparatedBySpaces) {
-		String[] strings = elementsSeparatedBySpaces.split(" ");
-		List<String> elementList = new ArrayList<String>();
-		StringBuilder buddy = new StringBuilder();
-		for (String s : strings) {
-			if (!elementList.contains(s)) {
-				buddy.append(s);
-				buddy.append(" ");
-				elementList.add(s);
+		return join(createUniqueElements(split(elementsSeparatedBySpaces)));
+	}
+	
+	public static String[] createUniqueElements(String[] elements) {
+		Set<String> seen = new HashSet<String>(elements.length * 2);
+		String[] retVal = new String[elements.length];
+		int size = 0;
+		for (String element : elements) {
+			if (seen.add(element)) {
+				retVal[size++] = element;
 			}
 		}
+		return Arrays.copyOf(retVal, size);
+	}
+	
+	/** Splits a String into its elements, which are separated by spaces */
+	public static String[] split(String elementsSeparatedBySpaces) {
+		return elementsSeparatedBySpaces.split(" ");
+	}
+	
+	/** Joins elements into a String, separated by spaces */
+	public static String join(String[] elements) {
+		StringBuilder buddy = new StringBuilder();
+		for (String element : elements) {
+			buddy.append(element);
+			buddy.append(" ");
+		}
 		return buddy.toString().trim();
 	}
 }
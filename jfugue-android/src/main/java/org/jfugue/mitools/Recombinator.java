@@ -19,14 +19,18 @@
 
 package org.jfugue.mitools;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.jfugue.pattern.Pattern;
 
 /**
- * Lets you...  
- * 
+ * Lets you combine two sets of things, like notes and durations, into new music by 
+ * filling in instructions such as "$0$1", where $0 stands for one of the first set of
+ * things and $1 stands for one of the second. Instructions can be compiled once into a 
+ * Template and used for many recombinations, and recombinations can be written straight
+ * to an Appendable.
  *  
  * @author David Koelle
  *
@@ -35,11 +39,11 @@ public class Recombinator
 {
     private List<Object> things0AsList;
     private Object[] things0AsArray;
-    private Object[] things0WorkingArray;
+    private String[] things0WorkingArray;
 
     private List<Object> things1AsList;
     private Object[] things1AsArray;
-    private Object[] things1WorkingArray;
+    private String[] things1WorkingArray;
 
     public Recombinator() { }
     
@@ -82,83 +86,144 @@ public class Recombinator
     }
 
     public Pattern recombine(String instructions, LoopBehavior option)
+    {
+    	return recombine(Template.compile(instructions), option);
+    }
+    
+    public Pattern recombine(Template template, LoopBehavior option)
+    {
+    	StringBuilder buddy = new StringBuilder();
+    	recombine(template, option, buddy);
+    	return new Pattern(buddy.toString());
+    }
+    
+    /**
+     * Writes each recombination to the given Appendable as it is made, separated by spaces,
+     * so any number of recombinations can be made without holding them all in memory.
+     */
+    public void recombine(Template template, LoopBehavior option, Appendable out)
     {
     	createWorkingArrays();
-    	switch (option) {
-    		case LOOP_BOTH: return loopBoth(instructions); 
-    		case LOOP_0_FIRST: return loop0(instructions); 
-    		case LOOP_1_FIRST: return loop1(instructions); 
-    		default : return null; 
+    	try {
+	    	switch (option) {
+	    		case LOOP_BOTH: loopBoth(template, out); break; 
+	    		case LOOP_0_FIRST: loop0(template, out); break; 
+	    		case LOOP_1_FIRST: loop1(template, out); break; 
+	    	}
+    	} catch (IOException e) {
+    		throw new RuntimeException(e);
     	}
     }
     
     /** 
      * Given $0 = { A, B } and $1 = { C, D }, loopBoth("$0v$1") gives { AvC, BvD }
      * If one array is longer than the other, the shorter array is repeated. 
-     * 
-     * @param instructions
-     * @return
      */
-    private Pattern loopBoth(String instructions) {
-    	Pattern pattern = new Pattern();
-    	for (int i=0; i < Math.max(things0WorkingArray.length, things1WorkingArray.length); i++) {
-       		String patternPiece = instructions.replaceAll("\\$0", things0WorkingArray[i % things0WorkingArray.length].toString());
-       		pattern.add(patternPiece.replaceAll("\\$1", things1WorkingArray[i % things1WorkingArray.length].toString()));
+    private void loopBoth(Template template, Appendable out) throws IOException {
+    	int count = Math.max(things0WorkingArray.length, things1WorkingArray.length);
+    	for (int i=0; i < count; i++) {
+    		template.appendTo(out, i > 0, things0WorkingArray[i % things0WorkingArray.length], things1WorkingArray[i % things1WorkingArray.length]);
        	}
-    	return pattern;
     }
 
     /** 
      * Given $0 = { A, B } and $1 = { C, D }, loop1("$0v$1") gives { AvC, AvD, BvC, BvD } 
-     * 
-     * @param instructions
-     * @return
      */
-    private Pattern loop1(String instructions) {
-    	Pattern pattern = new Pattern();
-    	for (Object obj0 : things0WorkingArray) {
-    		String patternPiece = instructions.replaceAll("\\$0", obj0.toString());
-    		for (Object obj1 : things1WorkingArray) {
-    			pattern.add(patternPiece.replaceAll("\\$1", obj1.toString()));
+    private void loop1(Template template, Appendable out) throws IOException {
+    	boolean isFirst = true;
+    	for (String thing0 : things0WorkingArray) {
+    		for (String thing1 : things1WorkingArray) {
+    			template.appendTo(out, !isFirst, thing0, thing1);
+    			isFirst = false;
         	}
     	}
-    	return pattern;
     }
 
     /** 
-     * Given $0 = { A, B } and $1 = { C, D }, loop1("$0v$1") gives { AvC, BvC, AvD, BvD } 
-     * 
-     * @param instructions
-     * @return
+     * Given $0 = { A, B } and $1 = { C, D }, loop0("$0v$1") gives { AvC, BvC, AvD, BvD } 
      */
-    private Pattern loop0(String instructions) {
-    	Pattern pattern = new Pattern();
-    	for (Object obj1 : things1WorkingArray) {
-    		String patternPiece = instructions.replaceAll("\\$1", obj1.toString());
-    		for (Object obj0 : things0WorkingArray) {
-    			pattern.add(patternPiece.replaceAll("\\$0", obj0.toString()));
+    private void loop0(Template template, Appendable out) throws IOException {
+    	boolean isFirst = true;
+    	for (String thing1 : things1WorkingArray) {
+    		for (String thing0 : things0WorkingArray) {
+    			template.appendTo(out, !isFirst, thing0, thing1);
+    			isFirst = false;
         	}
     	}
-    	return pattern;
     }
 
     private void createWorkingArrays() {
     	if (things0AsArray != null) {
-    		things0WorkingArray = Arrays.copyOf(things0AsArray, things0AsArray.length);
+    		things0WorkingArray = toStrings(things0AsArray);
     	} else if (things0AsList != null) {
-    		things0AsList.toArray(things0WorkingArray);
+    		things0WorkingArray = toStrings(things0AsList.toArray());
     	} else {
     		throw new RuntimeException("Recombinator cannot recombine; there is no set of objects for $0");
     	}
 
     	if (things1AsArray != null) {
-    		things1WorkingArray = Arrays.copyOf(things1AsArray, things1AsArray.length);
+    		things1WorkingArray = toStrings(things1AsArray);
     	} else if (things1AsList != null) {
-    		things1AsList.toArray(things1WorkingArray);
+    		things1WorkingArray = toStrings(things1AsList.toArray());
     	} else {
     		throw new RuntimeException("Recombinator cannot recombine; there is no set of objects for $1");
     	}
     }
+    
+    private static String[] toStrings(Object[] things) {
+    	String[] retVal = new String[things.length];
+    	for (int i=0; i < things.length; i++) {
+    		retVal[i] = things[i].toString();
+    	}
+    	return retVal;
+    }
+
+    /**
+     * Instructions for a recombination, like "$0v$1", split once into the text between
+     * the $0 and $1 placeholders, so each recombination is made by appending pieces 
+     * instead of searching and replacing.
+     */
+    public static final class Template {
+    	private final String[] literals;
+    	private final int[] placeholders;
+    	
+    	private Template(String[] literals, int[] placeholders) {
+    		this.literals = literals;
+    		this.placeholders = placeholders;
+    	}
+    	
+    	public static Template compile(String instructions) {
+    		List<String> literals = new ArrayList<String>();
+    		List<Integer> placeholders = new ArrayList<Integer>();
+    		int literalStart = 0;
+    		for (int i=0; i < instructions.length()-1; i++) {
+    			if ((instructions.charAt(i) == '$') && ((instructions.charAt(i+1) == '0') || (instructions.charAt(i+1) == '1'))) {
+    				literals.add(instructions.substring(literalStart, i));
+    				placeholders.add(instructions.charAt(i+1) - '0');
+    				literalStart = i+2;
+    				i++;
+    			}
+    		}
+    		literals.add(instructions.substring(literalStart));
+    		
+    		int[] placeholderArray = new int[placeholders.size()];
+    		for (int i=0; i < placeholderArray.length; i++) {
+    			placeholderArray[i] = placeholders.get(i);
+    		}
+    		return new Template(literals.toArray(new String[0]), placeholderArray);
+    	}
+    	
+    	void appendTo(Appendable out, boolean needsSeparator, String thing0, String thing1) throws IOException {
+    		if (needsSeparator) {
+    			out.append(' ');
+    		}
+    		out.append(literals[0]);
+    		for (int i=0; i < placeholders.length; i++) {
+    			out.append(placeholders[i] == 0 ? thing0 : thing1);
+    			out.append(literals[i+1]);
+    		}
+    	}
+    }
 
     public enum LoopBehavior {
     	LOOP_0_FIRST, LOOP_1_FIRST, LOOP_BOTH;
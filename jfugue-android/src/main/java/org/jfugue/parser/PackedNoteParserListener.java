@@ -0,0 +1,37 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.parser;
+
+import org.jfugue.theory.PackedNote;
+
+/**
+ * A ParserListener that can take notes in packed form. Notes fired with
+ * Parser.firePackedNoteParsed() are given to these listeners through
+ * onPackedNoteParsed(), so the parser does not need to create a Note for them.
+ * Notes fired with Parser.fireNoteParsed() still arrive through onNoteParsed(),
+ * so implementations must handle both.
+ * 
+ * @see PackedNote
+ * @see Parser#firePackedNoteParsed(long, double)
+ */
+public interface PackedNoteParserListener extends ParserListener 
+{
+	public void onPackedNoteParsed(long packedNote, double duration);
+}
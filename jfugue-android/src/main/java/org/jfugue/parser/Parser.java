@@ -24,6 +24,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jfugue.theory.Chord;
 import org.jfugue.theory.Note;
+import org.jfugue.theory.PackedNote;
 
 public class Parser {
     private CopyOnWriteArrayList<ParserListener> parserListeners;
@@ -195,6 +196,25 @@ public class Parser {
 	    }
 	}	
 
+	/**
+	 * Fires a note in packed form. PackedNoteParserListeners get it as it is; a Note is 
+	 * created only if there are other listeners, and is shared by all of them. 
+	 */
+	public void firePackedNoteParsed(long packedNote, double duration) { 
+	    List<ParserListener> listeners = getParserListeners();
+	    Note note = null;
+	    for (ParserListener listener : listeners) {
+	        if (listener instanceof PackedNoteParserListener) {
+	            ((PackedNoteParserListener)listener).onPackedNoteParsed(packedNote, duration);
+	        } else {
+	            if (note == null) {
+	                note = PackedNote.toNote(packedNote, duration);
+	            }
+	            listener.onNoteParsed(note);
+	        }
+	    }
+	}	
+
     public void fireChordParsed(Chord chord) { 
         List<ParserListener> listeners = getParserListeners();
         for (ParserListener listener : listeners) {
@@ -21,20 +21,49 @@ package org.jfugue.pattern;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
+import org.jfugue.util.ParallelTasks;
+import org.staccato.StaccatoParser;
+import org.staccato.StaccatoUtil;
+
+/**
+ * A grid of NUM_TRACKS tracks by a given length of cells, where each cell holds the pattern
+ * that a track plays at that position. Cells are kept in arrays, so a cell is found without
+ * searching, and the array for a track is created only when something is put in it.
+ * Empty cells are skipped when the table is turned into music.
+ */
 public class TrackTable implements PatternProducer
 {
     private int length;
-    private List<List<Pattern>> tracks; 
+    private Pattern[][] tracks; 
     private PatternValidator validator;
     
     public TrackTable(int length) {
         this.length = length;
-        tracks = new ArrayList<List<Pattern>>(TrackTable.NUM_TRACKS);
+        tracks = new Pattern[TrackTable.NUM_TRACKS][];
     }
     
+    /** Returns the patterns in the non-empty cells of the given track, in order of position */
     public List<Pattern> getTrack(int track) {
-        return tracks.get(track);
+        List<Pattern> retVal = new ArrayList<Pattern>();
+        Pattern[] cells = tracks[track];
+        if (cells != null) {
+            for (Pattern cell : cells) {
+                if (cell != null) {
+                    retVal.add(cell);
+                }
+            }
+        }
+        return retVal;
+    }
+    
+    /** Returns the pattern in the given cell, or null if the cell is empty */
+    public Pattern get(int track, int position) {
+        checkPosition(position);
+        Pattern[] cells = tracks[track];
+        return (cells == null) ? null : cells[position];
     }
     
     public TrackTable setPatternValidator(PatternValidator pv) {
@@ -46,18 +75,30 @@ public class TrackTable implements PatternProducer
     	return this.validator;
     }
     
+    /** Puts the pattern in the given cell, replacing anything that was there before */
     public TrackTable put(int track, int position, PatternProducer patternProducer) {
+        checkPosition(position);
         if (validator != null) {
             if (!validator.isValid(patternProducer)) {
                 throw new RuntimeException(validator.getErrorMessage(patternProducer));
             }
         }
-        List<Pattern> trackList = this.tracks.get(track);
-        if (trackList == null) {
-            trackList = new ArrayList<Pattern>(getLength());
-            this.tracks.add(track, trackList);
+        Pattern[] cells = this.tracks[track];
+        if (cells == null) {
+            cells = new Pattern[getLength()];
+            this.tracks[track] = cells;
+        }
+        cells[position] = patternProducer.getPattern();
+        return this;
+    }
+
+    /** Empties the given cell */
+    public TrackTable remove(int track, int position) {
+        checkPosition(position);
+        Pattern[] cells = this.tracks[track];
+        if (cells != null) {
+            cells[position] = null;
         }
-        trackList.add(position, patternProducer.getPattern());
         return this;
     }
 
@@ -124,16 +165,86 @@ public class TrackTable implements PatternProducer
         return this.length;
     }
     
+    private void checkPosition(int position) {
+        if ((position < 0) || (position >= this.length)) {
+            throw new IndexOutOfBoundsException("Position "+position+" is outside of this TrackTable, which has a length of "+this.length);
+        }
+    }
+    
+    /** Returns the patterns of the non-empty cells of the given track, one after another, or null if the track is empty */
+    public Pattern getTrackPattern(int track) {
+        Pattern[] cells = tracks[track];
+        if (cells == null) {
+            return null;
+        }
+        Pattern retVal = null;
+        for (Pattern cell : cells) {
+            if (cell != null) {
+                if (retVal == null) {
+                    retVal = new Pattern();
+                }
+                retVal.add(cell);
+            }
+        }
+        return retVal;
+    }
+    
+    /**
+     * Returns the pattern of each track, as getTrackPattern() would, with null for empty tracks. 
+     * The tracks are given to the executor to be put together at the same time; if the executor 
+     * is null, they are put together on the calling thread.
+     */
+    public Pattern[] getTrackPatterns(ExecutorService executor) {
+        final Pattern[] trackPatterns = new Pattern[NUM_TRACKS];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(NUM_TRACKS);
+        for (int track=0; track < NUM_TRACKS; track++) {
+            if (tracks[track] != null) {
+                final int trackIndex = track;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        trackPatterns[trackIndex] = getTrackPattern(trackIndex);
+                        return null;
+                    }
+                });
+            }
+        }
+        
+        ParallelTasks.runAll(tasks, executor);
+        return trackPatterns;
+    }
+    
     @Override
     public Pattern getPattern() {
         Pattern pattern = new Pattern();
-        for (List<Pattern> track : tracks) {
-            for (Pattern p : track) {
-                pattern.addTrack(tracks.indexOf(track), p);
+        for (int track=0; track < NUM_TRACKS; track++) {
+            Pattern trackPattern = getTrackPattern(track);
+            if (trackPattern != null) {
+                pattern.addTrack(track, trackPattern);
             }
         }
         return pattern;
     }
+    
+    /**
+     * Gives the music in this table to the parser's listeners one cell at a time, in the 
+     * same order as getPattern(), without putting the whole table into one string.
+     */
+    public void parse(StaccatoParser parser) {
+        parser.fireBeforeParsingStarts();
+        for (int track=0; track < NUM_TRACKS; track++) {
+            Pattern[] cells = tracks[track];
+            if (cells != null) {
+                parser.parseFragment(StaccatoUtil.createTrackElement((byte)track));
+                for (Pattern cell : cells) {
+                    if (cell != null) {
+                        parser.parseFragment(cell.toString());
+                    }
+                }
+            }
+        }
+        parser.fireAfterParsingFinished();
+    }
 
     public static final int NUM_TRACKS = 16;
     public static final int RHYTHM_TRACK = 9;
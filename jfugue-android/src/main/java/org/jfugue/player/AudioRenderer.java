@@ -0,0 +1,49 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.player;
+
+import jp.kshoji.javax.sound.midi.MidiMessage;
+import jp.kshoji.javax.sound.midi.Synthesizer;
+
+/**
+ * A synthesizer that produces audio on request rather than in real time, for use
+ * with OfflineRenderer. Implementations typically wrap a software synthesizer.
+ * 
+ * @see SineAudioRenderer
+ */
+public interface AudioRenderer 
+{
+	/** 
+	 * Returns the synthesizer behind this renderer, into which soundbanks may be loaded (for example, by a PatchProvider),
+	 * or null if the renderer does not use a synthesizer 
+	 */
+	public Synthesizer getSynthesizer();
+	
+	/** Applies the message immediately, so that it affects audio rendered from now on */
+	public void send(MidiMessage message);
+	
+	/** 
+	 * Renders the given number of frames as interleaved samples in the range -1.0 to 1.0, 
+	 * writing them into the buffer starting at the given sample offset
+	 */
+	public void render(float[] buffer, int offset, int frames);
+	
+	public void close();
+}
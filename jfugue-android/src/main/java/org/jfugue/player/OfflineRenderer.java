@@ -0,0 +1,350 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.player;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jfugue.midi.MidiMessageTimeline;
+import org.jfugue.midi.MidiParserListener;
+import org.jfugue.midi.PatchProvider;
+import org.jfugue.pattern.PatternProducer;
+import org.jfugue.util.ParallelTasks;
+import org.staccato.StaccatoParser;
+
+import jp.kshoji.javax.sound.midi.InvalidMidiDataException;
+import jp.kshoji.javax.sound.midi.MetaMessage;
+import jp.kshoji.javax.sound.midi.MidiMessage;
+import jp.kshoji.javax.sound.midi.MidiUnavailableException;
+import jp.kshoji.javax.sound.midi.Sequence;
+import jp.kshoji.javax.sound.midi.ShortMessage;
+
+/**
+ * Renders music to 16-bit PCM audio as fast as the CPU allows, rather than playing
+ * it in real time through the Sequencer. The messages of the sequence are sent to an
+ * AudioRenderer at sample-accurate positions, and the audio is written to an
+ * OutputStream block by block, as a WAV file or as raw little-endian PCM.
+ * 
+ * With a parallelism greater than one, each MIDI channel is rendered by its own
+ * AudioRenderer on its own thread, and the channels are mixed block by block.
+ * 
+ * The Android MIDI library has no synthesizer that can render offline, so by default
+ * music is rendered with a SineAudioRenderer, which plays every instrument as a sine
+ * wave. For realistic instruments, supply an AudioRendererFactory that wraps a software
+ * synthesizer. OfflineRenderer does not use the Sequencer or the SequencerManager, so 
+ * it also works where no MIDI device is available.
+ * 
+ * @see AudioRenderer
+ * @see AudioRendererFactory
+ * @see SineAudioRenderer
+ */
+public class OfflineRenderer 
+{
+	public static final float DEFAULT_SAMPLE_RATE = 44100.0f;
+	public static final int DEFAULT_CHANNELS = 2;
+	public static final int DEFAULT_BLOCK_SIZE_IN_FRAMES = 1024;
+	public static final long DEFAULT_TAIL_IN_MILLIS = 1000L;
+	private static final int BYTES_PER_SAMPLE = 2;
+	
+	private AudioRendererFactory rendererFactory;
+	private PatchProvider patchProvider;
+	private float sampleRate = DEFAULT_SAMPLE_RATE;
+	private int channels = DEFAULT_CHANNELS;
+	private int blockSizeInFrames = DEFAULT_BLOCK_SIZE_IN_FRAMES;
+	private long tailInMillis = DEFAULT_TAIL_IN_MILLIS;
+	private int parallelism = 1;
+	
+	/** Creates an OfflineRenderer that renders with SineAudioRenderers */
+	public OfflineRenderer() {
+		this(new SineAudioRendererFactory());
+	}
+	
+	public OfflineRenderer(AudioRendererFactory rendererFactory) {
+		this.rendererFactory = rendererFactory;
+	}
+	
+	/** 
+	 * Sets the soundbank to load into each AudioRenderer's synthesizer before rendering.
+	 * The AudioRenderers must have a synthesizer; SineAudioRenderer does not. 
+	 */
+	public void setPatchProvider(PatchProvider patchProvider) {
+		this.patchProvider = patchProvider;
+	}
+	
+	public void setSampleRate(float sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+	
+	public float getSampleRate() {
+		return this.sampleRate;
+	}
+	
+	public void setChannels(int channels) {
+		this.channels = channels;
+	}
+	
+	public int getChannels() {
+		return this.channels;
+	}
+	
+	public void setBlockSizeInFrames(int blockSizeInFrames) {
+		this.blockSizeInFrames = blockSizeInFrames;
+	}
+	
+	/** Sets how long to keep rendering after the last message, so that notes can finish releasing */
+	public void setTailInMillis(long tailInMillis) {
+		this.tailInMillis = tailInMillis;
+	}
+	
+	/** Sets the number of threads used to render MIDI channels independently. The default, 1, renders everything with one AudioRenderer. */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+	
+	public void renderToWav(PatternProducer patternProducer, OutputStream out) throws IOException, MidiUnavailableException, InvalidMidiDataException {
+		StaccatoParser parser = new StaccatoParser();
+		MidiParserListener listener = new MidiParserListener();
+		parser.addParserListener(listener);
+		parser.parse(patternProducer);
+		renderToWav(listener.getSequence(), out);
+	}
+
+	public void renderToWav(Sequence sequence, OutputStream out) throws IOException, MidiUnavailableException, InvalidMidiDataException {
+		render(sequence, out, true);
+	}
+	
+	public void renderToPcm(Sequence sequence, OutputStream out) throws IOException, MidiUnavailableException, InvalidMidiDataException {
+		render(sequence, out, false);
+	}
+	
+	private void render(Sequence sequence, OutputStream out, boolean writeWavHeader) throws IOException, MidiUnavailableException, InvalidMidiDataException {
+		MidiMessageTimeline timeline = MidiMessageTimeline.fromSequence(sequence);
+		long totalFrames = convertMicrosToFrame(timeline.getDurationInMicros() + tailInMillis * 1000L);
+		
+		List<RenderPart> parts = new ArrayList<RenderPart>();
+		ExecutorService executor = null;
+		try {
+			for (int[] indexes : (parallelism > 1) ? partitionByChannel(timeline) : new int[][] { allIndexes(timeline) }) {
+				parts.add(new RenderPart(timeline, indexes, createRenderer()));
+			}
+			if (parts.size() > 1) {
+				executor = Executors.newFixedThreadPool(Math.min(parallelism, parts.size()));
+			}
+			
+			if (writeWavHeader) {
+				writeWavHeader(out, totalFrames);
+			}
+			
+			float[] mix = new float[blockSizeInFrames * channels];
+			byte[] bytes = new byte[blockSizeInFrames * channels * BYTES_PER_SAMPLE];
+			for (long frame = 0; frame < totalFrames; frame += blockSizeInFrames) {
+				int frames = (int)Math.min(blockSizeInFrames, totalFrames - frame);
+				for (RenderPart part : parts) {
+					part.setBlock(frame, frames);
+				}
+				ParallelTasks.runAll(parts, executor);
+				mix(parts, mix, frames * channels);
+				int length = convertToBytes(mix, bytes, frames * channels);
+				out.write(bytes, 0, length);
+			}
+			out.flush();
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+			for (RenderPart part : parts) {
+				part.renderer.close();
+			}
+		}
+	}
+	
+	private AudioRenderer createRenderer() throws MidiUnavailableException, InvalidMidiDataException, IOException {
+		AudioRenderer renderer = rendererFactory.createRenderer(sampleRate, channels);
+		if (patchProvider != null) {
+			if (renderer.getSynthesizer() == null) {
+				renderer.close();
+				throw new IllegalStateException("OfflineRenderer was given a PatchProvider, but its AudioRenderer has no synthesizer to load patches into");
+			}
+			String status = patchProvider.loadPatchesIntoSynthesizer(renderer.getSynthesizer());
+			if (!PatchProvider.STATUS_OK.equals(status)) {
+				renderer.close();
+				throw new RuntimeException("OfflineRenderer could not load patches: "+status);
+			}
+		}
+		return renderer;
+	}
+	
+	private static int[] allIndexes(MidiMessageTimeline timeline) {
+		int[] indexes = new int[timeline.size()];
+		for (int i=0; i < indexes.length; i++) {
+			indexes[i] = i;
+		}
+		return indexes;
+	}
+	
+	// Channel messages go to the part for their channel; system exclusive messages go to every part
+	private static int[][] partitionByChannel(MidiMessageTimeline timeline) {
+		int[] counts = new int[16];
+		int systemCount = 0;
+		for (int i=0; i < timeline.size(); i++) {
+			MidiMessage message = timeline.getMessage(i);
+			if (message instanceof ShortMessage) {
+				counts[((ShortMessage)message).getChannel()]++;
+			} else if (!(message instanceof MetaMessage)) {
+				systemCount++;
+			}
+		}
+		
+		int[][] channelIndexes = new int[16][];
+		int[] sizes = new int[16];
+		for (int channel=0; channel < 16; channel++) {
+			if (counts[channel] > 0) {
+				channelIndexes[channel] = new int[counts[channel] + systemCount];
+			}
+		}
+		for (int i=0; i < timeline.size(); i++) {
+			MidiMessage message = timeline.getMessage(i);
+			if (message instanceof ShortMessage) {
+				int channel = ((ShortMessage)message).getChannel();
+				channelIndexes[channel][sizes[channel]++] = i;
+			} else if (!(message instanceof MetaMessage)) {
+				for (int channel=0; channel < 16; channel++) {
+					if (channelIndexes[channel] != null) {
+						channelIndexes[channel][sizes[channel]++] = i;
+					}
+				}
+			}
+		}
+		
+		List<int[]> partitions = new ArrayList<int[]>();
+		for (int[] indexes : channelIndexes) {
+			if (indexes != null) {
+				partitions.add(indexes);
+			}
+		}
+		if (partitions.isEmpty()) {
+			partitions.add(new int[0]);
+		}
+		return partitions.toArray(new int[partitions.size()][]);
+	}
+	
+	private static void mix(List<RenderPart> parts, float[] mix, int samples) {
+		System.arraycopy(parts.get(0).buffer, 0, mix, 0, samples);
+		for (int p=1; p < parts.size(); p++) {
+			float[] buffer = parts.get(p).buffer;
+			for (int i=0; i < samples; i++) {
+				mix[i] += buffer[i];
+			}
+		}
+	}
+
+	private static int convertToBytes(float[] samples, byte[] bytes, int length) {
+		int b = 0;
+		for (int i=0; i < length; i++) {
+			float sample = Math.max(-1.0f, Math.min(1.0f, samples[i]));
+			int value = (int)(sample * 32767.0f);
+			bytes[b++] = (byte)value;
+			bytes[b++] = (byte)(value >> 8);
+		}
+		return b;
+	}
+	
+	private void writeWavHeader(OutputStream out, long totalFrames) throws IOException {
+		long dataLength = totalFrames * channels * BYTES_PER_SAMPLE;
+		int rate = (int)sampleRate;
+		out.write(new byte[] { 'R', 'I', 'F', 'F' });
+		writeInt(out, (int)(36 + dataLength));
+		out.write(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+		writeInt(out, 16);                                        // Size of the fmt chunk
+		writeShort(out, 1);                                       // PCM
+		writeShort(out, channels);
+		writeInt(out, rate);
+		writeInt(out, rate * channels * BYTES_PER_SAMPLE);        // Bytes per second
+		writeShort(out, channels * BYTES_PER_SAMPLE);             // Bytes per frame
+		writeShort(out, BYTES_PER_SAMPLE * 8);                    // Bits per sample
+		out.write(new byte[] { 'd', 'a', 't', 'a' });
+		writeInt(out, (int)dataLength);
+	}
+	
+	private static void writeInt(OutputStream out, int value) throws IOException {
+		out.write(value);
+		out.write(value >> 8);
+		out.write(value >> 16);
+		out.write(value >> 24);
+	}
+
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value);
+		out.write(value >> 8);
+	}
+	
+	private long convertMicrosToFrame(long micros) {
+		return (long)Math.ceil(micros * (double)sampleRate / 1000000.0D);
+	}
+
+	/**
+	 * The messages rendered by one AudioRenderer. Each block, messages are sent at
+	 * the frame where they fall, with audio rendered between them.
+	 */
+	private class RenderPart implements Callable<Void> {
+		private MidiMessageTimeline timeline;
+		private int[] indexes;
+		private AudioRenderer renderer;
+		private float[] buffer;
+		private int cursor;
+		private long blockStartFrame;
+		private int blockFrames;
+		
+		public RenderPart(MidiMessageTimeline timeline, int[] indexes, AudioRenderer renderer) {
+			this.timeline = timeline;
+			this.indexes = indexes;
+			this.renderer = renderer;
+			this.buffer = new float[blockSizeInFrames * channels];
+		}
+		
+		public void setBlock(long blockStartFrame, int blockFrames) {
+			this.blockStartFrame = blockStartFrame;
+			this.blockFrames = blockFrames;
+		}
+		
+		public Void call() {
+			int done = 0;
+			while (done < blockFrames) {
+				long nextFrame = (cursor < indexes.length) ? convertMicrosToFrame(timeline.getTimeInMicros(indexes[cursor])) : Long.MAX_VALUE;
+				if (nextFrame <= blockStartFrame + done) {
+					MidiMessage message = timeline.getMessage(indexes[cursor++]);
+					if (!(message instanceof MetaMessage)) {
+						renderer.send(message);
+					}
+					continue;
+				}
+				int frames = (int)Math.min(blockFrames - done, nextFrame - (blockStartFrame + done));
+				renderer.render(buffer, done * channels, frames);
+				done += frames;
+			}
+			return null;
+		}
+	}
+}
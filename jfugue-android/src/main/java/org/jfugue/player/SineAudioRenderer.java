@@ -0,0 +1,267 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jfugue.player;
+
+import org.jfugue.theory.Tuning;
+
+import jp.kshoji.javax.sound.midi.MidiMessage;
+import jp.kshoji.javax.sound.midi.ShortMessage;
+import jp.kshoji.javax.sound.midi.Synthesizer;
+
+/**
+ * A small AudioRenderer that plays each note as a sine wave with a short attack and
+ * release, and each percussion note (channel 10) as a decaying burst of noise. It follows
+ * note on and off, channel volume, expression, pan, pitch bend, and the all notes off and
+ * all sound off controllers; program changes are ignored, so every instrument sounds alike.
+ * 
+ * It is meant for previews and tests, and as the default for OfflineRenderer when no
+ * software synthesizer is available. It has no Synthesizer, so soundbanks cannot be loaded.
+ * 
+ * @see SineAudioRendererFactory
+ */
+public class SineAudioRenderer implements AudioRenderer 
+{
+	public static final int MAX_VOICES = 64;
+	private static final int CHANNELS = 16;
+	private static final int PERCUSSION_CHANNEL = 9;
+	private static final int SINE_TABLE_SIZE = 4096;
+	private static final float[] SINE_TABLE = new float[SINE_TABLE_SIZE + 1];
+	static {
+		for (int i=0; i <= SINE_TABLE_SIZE; i++) {
+			SINE_TABLE[i] = (float)Math.sin(2.0 * Math.PI * i / SINE_TABLE_SIZE);
+		}
+	}
+	private static final float VOICE_GAIN = 0.15f;
+	private static final float ATTACK_SECONDS = 0.005f;
+	private static final float RELEASE_SECONDS = 0.1f;
+	private static final float PERCUSSION_DECAY_SECONDS = 0.15f;
+	private static final double PITCH_BEND_RANGE_IN_SEMITONES = 2.0;
+
+	private final float sampleRate;
+	private final int channels;
+	private final Tuning tuning;
+	private final float attackStep;
+	private final float releaseStep;
+	private final float percussionStep;
+
+	// Voices are kept in parallel arrays; active voices are packed at the front
+	private int voiceCount;
+	private final int[] voiceChannel = new int[MAX_VOICES];
+	private final int[] voiceNote = new int[MAX_VOICES];
+	private final double[] voiceFrequency = new double[MAX_VOICES];
+	private final double[] voicePhase = new double[MAX_VOICES];
+	private final float[] voiceVelocity = new float[MAX_VOICES];
+	private final float[] voiceLevel = new float[MAX_VOICES];
+	private final boolean[] voiceReleasing = new boolean[MAX_VOICES];
+	
+	private final float[] channelVolume = new float[CHANNELS];
+	private final float[] channelExpression = new float[CHANNELS];
+	private final float[] channelPan = new float[CHANNELS];
+	private final double[] channelBend = new double[CHANNELS];
+	private int noiseSeed = 0x12345678;
+	
+	public SineAudioRenderer(float sampleRate, int channels) {
+		this(sampleRate, channels, Tuning.EQUAL_TEMPERAMENT);
+	}
+	
+	public SineAudioRenderer(float sampleRate, int channels, Tuning tuning) {
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.tuning = tuning;
+		this.attackStep = 1.0f / (ATTACK_SECONDS * sampleRate);
+		this.releaseStep = 1.0f / (RELEASE_SECONDS * sampleRate);
+		this.percussionStep = 1.0f / (PERCUSSION_DECAY_SECONDS * sampleRate);
+		for (int channel=0; channel < CHANNELS; channel++) {
+			resetControllers(channel);
+		}
+	}
+	
+	/** Returns null; this renderer does not use a Synthesizer */
+	@Override
+	public Synthesizer getSynthesizer() {
+		return null;
+	}
+	
+	@Override
+	public void send(MidiMessage message) {
+		if (!(message instanceof ShortMessage)) {
+			return;
+		}
+		ShortMessage shortMessage = (ShortMessage)message;
+		int channel = shortMessage.getChannel();
+		int data1 = shortMessage.getData1();
+		int data2 = shortMessage.getData2();
+		switch (shortMessage.getCommand()) {
+			case ShortMessage.NOTE_ON : 
+				if (data2 > 0) {
+					noteOn(channel, data1, data2);
+				} else {
+					noteOff(channel, data1);
+				}
+				break;
+			case ShortMessage.NOTE_OFF : noteOff(channel, data1); break;
+			case ShortMessage.PITCH_BEND : 
+				int bend = ((data2 << 7) | data1) - 8192;
+				channelBend[channel] = Math.pow(2.0, bend / 8192.0 * PITCH_BEND_RANGE_IN_SEMITONES / 12.0);
+				break;
+			case ShortMessage.CONTROL_CHANGE : controlChange(channel, data1, data2); break;
+			default : break;
+		}
+	}
+	
+	private void noteOn(int channel, int note, int velocity) {
+		if (voiceCount == MAX_VOICES) {
+			removeVoice(0);
+		}
+		int v = voiceCount++;
+		voiceChannel[v] = channel;
+		voiceNote[v] = note;
+		voiceFrequency[v] = tuning.getFrequency(note);
+		voicePhase[v] = 0.0;
+		voiceVelocity[v] = velocity / 127.0f;
+		voiceLevel[v] = (channel == PERCUSSION_CHANNEL) ? 1.0f : 0.0f;
+		voiceReleasing[v] = (channel == PERCUSSION_CHANNEL);
+	}
+	
+	private void noteOff(int channel, int note) {
+		for (int v=0; v < voiceCount; v++) {
+			if ((voiceChannel[v] == channel) && (voiceNote[v] == note) && !voiceReleasing[v]) {
+				voiceReleasing[v] = true;
+				return;
+			}
+		}
+	}
+	
+	private void controlChange(int channel, int controller, int value) {
+		switch (controller) {
+			case 7 : channelVolume[channel] = value / 127.0f; break;
+			case 10 : channelPan[channel] = value / 127.0f; break;
+			case 11 : channelExpression[channel] = value / 127.0f; break;
+			case 120 : removeVoices(channel); break;  // All sound off
+			case 121 : resetControllers(channel); break;
+			case 123 :                                // All notes off
+				for (int v=0; v < voiceCount; v++) {
+					if (voiceChannel[v] == channel) {
+						voiceReleasing[v] = true;
+					}
+				}
+				break;
+			default : break;
+		}
+	}
+	
+	private void resetControllers(int channel) {
+		channelVolume[channel] = 100 / 127.0f;
+		channelExpression[channel] = 1.0f;
+		channelPan[channel] = 0.5f;
+		channelBend[channel] = 1.0;
+	}
+	
+	private void removeVoices(int channel) {
+		for (int v=voiceCount-1; v >= 0; v--) {
+			if (voiceChannel[v] == channel) {
+				removeVoice(v);
+			}
+		}
+	}
+	
+	private void removeVoice(int v) {
+		voiceCount--;
+		int moved = voiceCount - v;
+		System.arraycopy(voiceChannel, v+1, voiceChannel, v, moved);
+		System.arraycopy(voiceNote, v+1, voiceNote, v, moved);
+		System.arraycopy(voiceFrequency, v+1, voiceFrequency, v, moved);
+		System.arraycopy(voicePhase, v+1, voicePhase, v, moved);
+		System.arraycopy(voiceVelocity, v+1, voiceVelocity, v, moved);
+		System.arraycopy(voiceLevel, v+1, voiceLevel, v, moved);
+		System.arraycopy(voiceReleasing, v+1, voiceReleasing, v, moved);
+	}
+	
+	@Override
+	public void render(float[] buffer, int offset, int frames) {
+		int end = offset + frames * channels;
+		for (int i=offset; i < end; i++) {
+			buffer[i] = 0.0f;
+		}
+		for (int v=voiceCount-1; v >= 0; v--) {
+			if (renderVoice(v, buffer, offset, frames)) {
+				removeVoice(v);
+			}
+		}
+	}
+	
+	/** Adds the voice to the buffer, and returns true if the voice has finished sounding */
+	private boolean renderVoice(int v, float[] buffer, int offset, int frames) {
+		int channel = voiceChannel[v];
+		boolean isPercussion = (channel == PERCUSSION_CHANNEL);
+		float gain = VOICE_GAIN * voiceVelocity[v] * channelVolume[channel] * channelExpression[channel];
+		float leftGain = (channels == 2) ? gain * Math.min(1.0f, 2.0f * (1.0f - channelPan[channel])) : gain;
+		float rightGain = (channels == 2) ? gain * Math.min(1.0f, 2.0f * channelPan[channel]) : gain;
+		double increment = voiceFrequency[v] * channelBend[channel] / sampleRate;
+		double phase = voicePhase[v];
+		float level = voiceLevel[v];
+		boolean releasing = voiceReleasing[v];
+		float step = isPercussion ? percussionStep : releaseStep;
+		
+		int index = offset;
+		for (int frame=0; frame < frames; frame++) {
+			if (releasing) {
+				level -= step;
+				if (level <= 0.0f) {
+					return true;
+				}
+			} else if (level < 1.0f) {
+				level = Math.min(1.0f, level + attackStep);
+			}
+			
+			float sample;
+			if (isPercussion) {
+				noiseSeed = noiseSeed * 1103515245 + 12345;
+				sample = (noiseSeed >> 8) * (1.0f / (1 << 23));
+			} else {
+				double position = phase * SINE_TABLE_SIZE;
+				int i = (int)position;
+				float fraction = (float)(position - i);
+				sample = SINE_TABLE[i] + (SINE_TABLE[i+1] - SINE_TABLE[i]) * fraction;
+				phase += increment;
+				if (phase >= 1.0) {
+					phase -= 1.0;
+				}
+			}
+			sample *= level;
+			
+			if (channels == 2) {
+				buffer[index++] += sample * leftGain;
+				buffer[index++] += sample * rightGain;
+			} else {
+				for (int c=0; c < channels; c++) {
+					buffer[index++] += sample * leftGain;
+				}
+			}
+		}
+		voicePhase[v] = phase;
+		voiceLevel[v] = level;
+		return false;
+	}
+	
+	@Override
+	public void close() {
+		voiceCount = 0;
+	}
+}
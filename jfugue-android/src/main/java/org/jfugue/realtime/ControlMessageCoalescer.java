@@ -0,0 +1,91 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.realtime;
+
+import java.util.Arrays;
+
+import jp.kshoji.javax.sound.midi.MidiChannel;
+
+/**
+ * Collects controller, channel pressure and pitch wheel values, keeping only the
+ * latest value for each channel and controller, and sends the ones that differ
+ * from the value last sent. Package scope, final class.
+ */
+final class ControlMessageCoalescer 
+{
+    static final int PITCH_WHEEL = 128;
+    static final int CHANNEL_PRESSURE = 129;
+    private static final int SLOTS_PER_CHANNEL = 130;
+    private static final int NONE = -1;
+
+    private int[] pendingValues;
+    private int[] sentValues;
+    private int[] dirtySlots;
+    private int dirtyCount;
+
+    public ControlMessageCoalescer(int channels) {
+        this.pendingValues = new int[channels * SLOTS_PER_CHANNEL];
+        this.sentValues = new int[channels * SLOTS_PER_CHANNEL];
+        this.dirtySlots = new int[channels * SLOTS_PER_CHANNEL];
+        Arrays.fill(pendingValues, NONE);
+        Arrays.fill(sentValues, NONE);
+    }
+
+    /**
+     * Records a value to be sent on the next flush
+     * @param slot the controller number, or PITCH_WHEEL or CHANNEL_PRESSURE
+     */
+    public synchronized void set(int channel, int slot, int value) {
+        int index = channel * SLOTS_PER_CHANNEL + slot;
+        if (pendingValues[index] == NONE) {
+            dirtySlots[dirtyCount++] = index;
+        }
+        pendingValues[index] = value;
+    }
+
+    /**
+     * Notes a value that was sent directly to the channel, so that a later
+     * identical value is recognized as redundant
+     */
+    public synchronized void setSent(int channel, int slot, int value) {
+        sentValues[channel * SLOTS_PER_CHANNEL + slot] = value;
+    }
+
+    public synchronized void flush(MidiChannel[] channels) {
+        for (int i=0; i < dirtyCount; i++) {
+            int index = dirtySlots[i];
+            int value = pendingValues[index];
+            pendingValues[index] = NONE;
+            if (value == sentValues[index]) {
+                continue;
+            }
+            sentValues[index] = value;
+            
+            MidiChannel channel = channels[index / SLOTS_PER_CHANNEL];
+            int slot = index % SLOTS_PER_CHANNEL;
+            switch (slot) {
+                case PITCH_WHEEL : channel.setPitchBend(value); break;
+                case CHANNEL_PRESSURE : channel.setChannelPressure(value); break;
+                default : channel.controlChange(slot, value); break;
+            }
+        }
+        dirtyCount = 0;
+    }
+}
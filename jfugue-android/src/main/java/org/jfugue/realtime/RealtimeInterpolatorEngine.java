@@ -0,0 +1,128 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.realtime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Updates the active RealtimeInterpolators at a fixed control rate, on the
+ * timeline of the RealtimeMidiParserListener scheduler. Controller, pressure
+ * and pitch wheel messages sent by interpolators during an update are
+ * coalesced by the RealtimePlayer, so many interpolators driving the same
+ * controller produce at most one message per channel per update.
+ * Package scope, final class.
+ */
+final class RealtimeInterpolatorEngine 
+{
+    public static final int DEFAULT_CONTROL_RATE_IN_HZ = 200;
+    private static final long MICROS_PER_SECOND = 1000000L;
+    private static final long MICROS_PER_MILLI = 1000L;
+
+    private RealtimePlayer realtimePlayer;
+    private List<RealtimeInterpolator> interpolators;
+    private List<RealtimeInterpolator> startedInterpolators;
+    private List<RealtimeInterpolator> stoppedInterpolators;
+    private volatile long controlPeriodInMicros;
+    private long nextUpdateTimeInMicros;
+
+    public RealtimeInterpolatorEngine(RealtimePlayer realtimePlayer) {
+        this.realtimePlayer = realtimePlayer;
+        this.interpolators = new ArrayList<RealtimeInterpolator>();
+        this.startedInterpolators = new ArrayList<RealtimeInterpolator>();
+        this.stoppedInterpolators = new ArrayList<RealtimeInterpolator>();
+        setControlRate(DEFAULT_CONTROL_RATE_IN_HZ);
+    }
+
+    public void setControlRate(int controlRateInHz) {
+        if (controlRateInHz <= 0) {
+            throw new IllegalArgumentException("Interpolator control rate must be greater than zero; provided value is "+controlRateInHz);
+        }
+        this.controlPeriodInMicros = Math.max(1L, MICROS_PER_SECOND / controlRateInHz);
+    }
+
+    public synchronized void start(RealtimeInterpolator interpolator, long durationInMillis) {
+        interpolator.setDurationInMillis(durationInMillis);
+        startedInterpolators.add(interpolator);
+    }
+
+    public synchronized void stop(RealtimeInterpolator interpolator) {
+        stoppedInterpolators.add(interpolator);
+    }
+
+    /**
+     * Returns the time at which update() next has work to do, or Long.MAX_VALUE if no interpolators are running
+     */
+    public synchronized long getNextUpdateTimeInMicros() {
+        if (interpolators.isEmpty() && startedInterpolators.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        return nextUpdateTimeInMicros;
+    }
+
+    /**
+     * Runs one control update if one is due. If the scheduler has fallen behind by several
+     * control periods, only a single update is made at the current time, which bounds the
+     * work done per period to one pass over the active interpolators.
+     */
+    public void update(long timeInMicros) {
+        synchronized (this) {
+            if (startedInterpolators.isEmpty() && (timeInMicros < nextUpdateTimeInMicros)) {
+                return;
+            }
+            interpolators.removeAll(stoppedInterpolators);
+            stoppedInterpolators.clear();
+            interpolators.addAll(startedInterpolators);
+            startedInterpolators.clear();
+        }
+        
+        long time = timeInMicros / MICROS_PER_MILLI;
+        realtimePlayer.beginCoalescing();
+        try {
+            int remaining = 0;
+            for (int i=0; i < interpolators.size(); i++) {
+                RealtimeInterpolator interpolator = interpolators.get(i);
+                if (!interpolator.isStarted()) {
+                    interpolator.start(time);
+                }
+                if (interpolator.isActive()) {
+                    long elapsedTime = Math.min(time - interpolator.getStartTime(), interpolator.getDurationInMillis());
+                    double percentComplete = (interpolator.getDurationInMillis() == 0L) ? 1.0D : (double)elapsedTime / interpolator.getDurationInMillis();
+                    interpolator.update(realtimePlayer, elapsedTime, percentComplete);
+                    if (elapsedTime >= interpolator.getDurationInMillis()) {
+                        interpolator.end();
+                    }
+                }
+                // Compact the list in place, dropping interpolators that have ended
+                if (!interpolator.isEnded()) {
+                    interpolators.set(remaining++, interpolator);
+                }
+            }
+            interpolators.subList(remaining, interpolators.size()).clear();
+        } finally {
+            realtimePlayer.endCoalescing();
+        }
+        
+        long period = this.controlPeriodInMicros;
+        synchronized (this) {
+            this.nextUpdateTimeInMicros = (timeInMicros / period + 1) * period;
+        }
+    }
+}
@@ -26,9 +26,11 @@ import org.jfugue.theory.Chord;
 import org.jfugue.theory.Note;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
 
 import jp.kshoji.javax.sound.midi.MidiUnavailableException;
 
@@ -41,51 +43,77 @@ import jp.kshoji.javax.sound.midi.MidiUnavailableException;
  */
 public class RealtimeMidiParserListener extends TrackTimeManager implements ParserListener
 {
-	private boolean endDaemon;
+    private static final long MICROS_PER_MILLI = 1000L;
+    private static final long NANOS_PER_MICRO = 1000L;
+    private static final double MICROS_PER_MIN = 60000000.0D;
+    
+    /** Longest single wait by the daemon, so newly scheduled events are picked up promptly */
+    private static final long MAX_WAIT_IN_NANOS = 1000000L;
+    
+	private volatile boolean endDaemon;
     private int bpm = MidiDefaults.DEFAULT_TEMPO_BEATS_PER_MINUTE;
-    private long originalClockTimeInMillis;
-    private long activeTimeInMillis;
-    private Map<Long, List<Command>> millisToScheduledCommands;
-    private Map<Long, List<ScheduledEvent>> millisToScheduledEvents;
-    private List<RealtimeInterpolator> interpolators;
+    private long originalClockTimeInNanos;
+    private long activeTimeInMicros;
+    private long timeQuantumInMicros = 1L;
+    private TreeMap<Long, List<Command>> microsToScheduledCommands;
+    private TreeMap<Long, List<PendingEvent>> microsToScheduledEvents;
+    private RealtimeInterpolatorEngine interpolatorEngine;
     private RealtimePlayer realtimePlayer;
     
     public RealtimeMidiParserListener(RealtimePlayer player) throws MidiUnavailableException {
     	super();
     	this.realtimePlayer = player;
-    	this.millisToScheduledCommands = new HashMap<Long, List<Command>>();
-    	this.millisToScheduledEvents = new HashMap<Long, List<ScheduledEvent>>();
-    	this.interpolators = new ArrayList<RealtimeInterpolator>();
-    	this.originalClockTimeInMillis = System.currentTimeMillis(); 
+    	this.microsToScheduledCommands = new TreeMap<Long, List<Command>>();
+    	this.microsToScheduledEvents = new TreeMap<Long, List<PendingEvent>>();
+    	this.interpolatorEngine = new RealtimeInterpolatorEngine(player);
+    	this.originalClockTimeInNanos = System.nanoTime(); 
     	startDaemon();
     }
 
-    private long getDeltaClockTimeInMillis() {
-    	return System.currentTimeMillis() - this.originalClockTimeInMillis;
+    private long getDeltaClockTimeInMicros() {
+    	return (System.nanoTime() - this.originalClockTimeInNanos) / NANOS_PER_MICRO;
     }
     
     public long getCurrentTime() {
-        return getDeltaClockTimeInMillis();
+        return getDeltaClockTimeInMicros() / MICROS_PER_MILLI;
+    }
+    
+    public long getCurrentTimeInMicros() {
+        return getDeltaClockTimeInMicros();
+    }
+    
+    /**
+     * Sets the resolution to which scheduled times are rounded. The default is one microsecond.
+     */
+    public void setTimeQuantumInMicros(long timeQuantumInMicros) {
+        if (timeQuantumInMicros <= 0L) {
+            throw new IllegalArgumentException("Time quantum must be greater than zero; provided value is "+timeQuantumInMicros);
+        }
+        this.timeQuantumInMicros = timeQuantumInMicros;
+    }
+    
+    public long getTimeQuantumInMicros() {
+        return this.timeQuantumInMicros;
+    }
+    
+    public void setInterpolatorControlRate(int controlRateInHz) {
+        this.interpolatorEngine.setControlRate(controlRateInHz);
     }
     
     private void startDaemon() {
     	Runnable daemon = new Runnable() {
-    		private long lastMillis = 0L;
-    		
     		public void run() {
     			while (!endDaemon) {
-    				setAllTrackBeatTime(getDeltaClockTimeInMillis());
+    			    long time = getDeltaClockTimeInMicros();
+    				setAllTrackBeatTime(time);
+    				executeScheduledItems(time);
+    				interpolatorEngine.update(time);
     				
-    				long deltaMillis = getDeltaClockTimeInMillis() - lastMillis;
-    				if (deltaMillis > 0) {
-	    				for (long time = lastMillis; time < lastMillis+deltaMillis; time++) {
-	    					setActiveTimeInMillis(time);
-	    					executeScheduledCommands(time);
-	    					executeScheduledEvents(time);
-	    					updateInterpolators(time);
-	    				}
+    				long nextTime = Math.min(getNextScheduledTimeInMicros(), interpolatorEngine.getNextUpdateTimeInMicros());
+    				long wait = Math.min(nextTime - getDeltaClockTimeInMicros(), MAX_WAIT_IN_NANOS / NANOS_PER_MICRO);
+    				if (wait > 0) {
+    				    LockSupport.parkNanos(wait * NANOS_PER_MICRO);
     				}
-    				this.lastMillis = this.lastMillis + deltaMillis;
     			}
     		}
     	};
@@ -94,41 +122,50 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
     	t.start();
     }
 
-	// Process any scheduled commands that are internal to this parser 
-    private void executeScheduledCommands(long time) {
-		if (millisToScheduledCommands.containsKey(time)) {
-			List<Command> commands = millisToScheduledCommands.get(time);
-			for (Command command : commands) {
-				command.execute();
-			}
-		}
-    }
-    
-	// Process any scheduled events requested by the user 
-    private void executeScheduledEvents(long time) {
-    	if (millisToScheduledEvents.containsKey(time)) {
-			List<ScheduledEvent> scheduledEvents = millisToScheduledEvents.get(time);
-			for (ScheduledEvent event : scheduledEvents) {
-				event.execute(realtimePlayer, time);
-			}
-    	}
+    private synchronized long getNextScheduledTimeInMicros() {
+        long next = Long.MAX_VALUE;
+        if (!microsToScheduledCommands.isEmpty()) {
+            next = microsToScheduledCommands.firstKey();
+        }
+        if (!microsToScheduledEvents.isEmpty()) {
+            next = Math.min(next, microsToScheduledEvents.firstKey());
+        }
+        return next;
     }
-    
-	// Process any active interpolators 
-    private void updateInterpolators(long time) {
-		for (RealtimeInterpolator interpolator : interpolators) {
-			if (!interpolator.isStarted()) {
-				interpolator.start(time);
-			}
-			if (interpolator.isActive()) {
-				long elapsedTime = time - interpolator.getStartTime();
-				double percentComplete = elapsedTime / interpolator.getDurationInMillis();
-				interpolator.update(realtimePlayer, elapsedTime, percentComplete);
-				if (elapsedTime == interpolator.getDurationInMillis()) {
-					interpolator.end();
-				}
-			}
-		}
+
+    // Process scheduled commands (internal to this parser) and scheduled events (requested by the user)
+    // that are due, in time order. At the same time, commands are executed before events.
+    private void executeScheduledItems(long time) {
+        while (true) {
+            Map.Entry<Long, List<Command>> commandEntry = null;
+            Map.Entry<Long, List<PendingEvent>> eventEntry = null;
+            synchronized (this) {
+                Map.Entry<Long, List<Command>> firstCommand = microsToScheduledCommands.firstEntry();
+                Map.Entry<Long, List<PendingEvent>> firstEvent = microsToScheduledEvents.firstEntry();
+                boolean commandDue = (firstCommand != null) && (firstCommand.getKey() <= time);
+                boolean eventDue = (firstEvent != null) && (firstEvent.getKey() <= time);
+                if (commandDue && (!eventDue || (firstCommand.getKey() <= firstEvent.getKey()))) {
+                    commandEntry = microsToScheduledCommands.pollFirstEntry();
+                    setActiveTimeInMicros(commandEntry.getKey());
+                } else if (eventDue) {
+                    eventEntry = microsToScheduledEvents.pollFirstEntry();
+                    setActiveTimeInMicros(eventEntry.getKey());
+                } else {
+                    return;
+                }
+            }
+            
+            if (commandEntry != null) {
+                for (Command command : commandEntry.getValue()) {
+                    command.execute();
+                }
+            } else {
+                long timeInMillis = eventEntry.getKey() / MICROS_PER_MILLI;
+                for (PendingEvent pending : eventEntry.getValue()) {
+                    pending.event.execute(realtimePlayer, timeInMillis);
+                }
+            }
+        }
     }
     
     public void finish() {
@@ -139,43 +176,57 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
     	return this.realtimePlayer;
     }
     
-    private void setActiveTimeInMillis(long timeInMillis) {
-    	this.activeTimeInMillis = timeInMillis;
+    private void setActiveTimeInMicros(long timeInMicros) {
+    	this.activeTimeInMicros = timeInMicros;
     }
     
-    private long getNextAvailableTimeInMillis(long timeInMillis) {
-    	if (timeInMillis <= activeTimeInMillis) {
-    		timeInMillis += activeTimeInMillis+1;
-    	}
-    	return timeInMillis;
+    // Rounds the time to the time quantum. A time that has already been processed is
+    // moved to the time being processed, so it runs on the next pass in scheduling order.
+    private long getNextAvailableTimeInMicros(double timeInMicros) {
+        long time = Math.round(timeInMicros / timeQuantumInMicros) * timeQuantumInMicros;
+    	return Math.max(time, activeTimeInMicros);
     }
     
-    public void scheduleCommand(long timeInMillis, Command command) {
-    	timeInMillis = getNextAvailableTimeInMillis(timeInMillis);
-    	List<Command> commands = millisToScheduledCommands.get(timeInMillis);
+    private synchronized void scheduleCommand(double timeInMicros, Command command) {
+    	long time = getNextAvailableTimeInMicros(timeInMicros);
+    	List<Command> commands = microsToScheduledCommands.get(time);
     	if (commands == null) {
     		commands = new ArrayList<Command>();
-    		millisToScheduledCommands.put(timeInMillis, commands);
+    		microsToScheduledCommands.put(time, commands);
     	}
     	commands.add(command);
     }
 
-    public void scheduleEvent(long timeInMillis, ScheduledEvent event) {
-    	timeInMillis = getNextAvailableTimeInMillis(timeInMillis);
-    	List<ScheduledEvent> events = millisToScheduledEvents.get(timeInMillis);
+    public synchronized void scheduleEvent(long timeInMillis, ScheduledEvent event) {
+    	long time = getNextAvailableTimeInMicros(timeInMillis * MICROS_PER_MILLI);
+    	List<PendingEvent> events = microsToScheduledEvents.get(time);
     	if (events == null) {
-    		events = new ArrayList<ScheduledEvent>();
-    		millisToScheduledEvents.put(timeInMillis, events);
+    		events = new ArrayList<PendingEvent>();
+    		microsToScheduledEvents.put(time, events);
     	}
-    	events.add(event);
+    	events.add(new PendingEvent(timeInMillis, event));
     }
 
-    public void unscheduleEvent(long timeInMillis, ScheduledEvent event) {
-    	List<ScheduledEvent> events = millisToScheduledEvents.get(timeInMillis);
-    	if (events == null) {
-    		return;
+    /**
+     * Removes an event that was scheduled at the given time. The event is found by the time 
+     * that was passed to scheduleEvent(), since the time it is kept under may have been 
+     * rounded to the time quantum or moved to the time being processed.
+     */
+    public synchronized void unscheduleEvent(long timeInMillis, ScheduledEvent event) {
+    	Iterator<List<PendingEvent>> lists = microsToScheduledEvents.values().iterator();
+    	while (lists.hasNext()) {
+    		List<PendingEvent> events = lists.next();
+    		for (int i=0; i < events.size(); i++) {
+    			PendingEvent pending = events.get(i);
+    			if ((pending.requestedTimeInMillis == timeInMillis) && pending.event.equals(event)) {
+    				events.remove(i);
+    				if (events.isEmpty()) {
+    					lists.remove();
+    				}
+    				return;
+    			}
+    		}
     	}
-    	events.remove(event);
     }
     
     /* ParserListener Events */
@@ -189,7 +240,7 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
     @Override
     public void onTrackChanged(final byte track) {
         setCurrentTrack(track);
-    	scheduleCommand((long)getTrackBeatTime(), new Command() {
+    	scheduleCommand(getTrackBeatTime(), new Command() {
     		public void execute() {
     			getRealtimePlayer().changeTrack(track);
     		}
@@ -203,7 +254,7 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
 
     @Override 
     public void onInstrumentParsed(final byte instrument) {
-    	scheduleCommand((long)getTrackBeatTime(), new Command() {
+    	scheduleCommand(getTrackBeatTime(), new Command() {
     		public void execute() {
     			getRealtimePlayer().changeInstrument(instrument);
     		}
@@ -235,7 +286,7 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
 
     @Override
     public void onPitchWheelParsed(final byte lsb, final byte msb) {
-    	scheduleCommand((long)getTrackBeatTime(), new Command() {
+    	scheduleCommand(getTrackBeatTime(), new Command() {
     		public void execute() {
     			getRealtimePlayer().setPitchBend(lsb + (msb << 7));
     		}
@@ -244,7 +295,7 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
 
     @Override
     public void onChannelPressureParsed(final byte pressure) {
-    	scheduleCommand((long)getTrackBeatTime(), new Command() {
+    	scheduleCommand(getTrackBeatTime(), new Command() {
     		public void execute() {
     			getRealtimePlayer().changeChannelPressure(pressure);
     		}
@@ -253,7 +304,7 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
 
     @Override
     public void onPolyphonicPressureParsed(final byte key, final byte pressure) {
-    	scheduleCommand((long)getTrackBeatTime(), new Command() {
+    	scheduleCommand(getTrackBeatTime(), new Command() {
     		public void execute() {
     			getRealtimePlayer().changePolyphonicPressure(key, pressure);
     		}
@@ -265,7 +316,7 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
 
     @Override
     public void onControllerEventParsed(final byte controller, final byte value) {
-    	scheduleCommand((long)getTrackBeatTime(), new Command() {
+    	scheduleCommand(getTrackBeatTime(), new Command() {
     		public void execute() {
     			getRealtimePlayer().changeController(controller, value);
     		}
@@ -300,14 +351,14 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
 
     	// If the note is a rest, simply advance the track time and get outta here
     	if (note.isRest()) {
-    		advanceTrackBeatTime(convertBeatsToMillis(note.getDuration()));  
+    		advanceTrackBeatTime(convertBeatsToMicros(note.getDuration()));  
     		return;
     	}
     	
     	// Add a NOTE_ON event.
     	// If the note is continuing a tie, it is already sounding, and there is not need to turn the note on
     	if (!note.isEndOfTie()) {
-        	scheduleCommand((long)getTrackBeatTime(), new Command() {
+        	scheduleCommand(getTrackBeatTime(), new Command() {
         		public void execute() {
         			getRealtimePlayer().startNote(note);
         		}
@@ -315,12 +366,12 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
     	}
     	
     	// Advance the track timer
-    	advanceTrackBeatTime(convertBeatsToMillis(note.getDuration()));  
+    	advanceTrackBeatTime(convertBeatsToMicros(note.getDuration()));  
     	
     	// Add a NOTE_OFF event.
     	// If this note is the start of a tie, the note will continue to sound, so we don't want to turn it off.
     	if (!note.isStartOfTie()) {
-        	scheduleCommand((long)getTrackBeatTime(), new Command() {
+        	scheduleCommand(getTrackBeatTime(), new Command() {
         		public void execute() {
         			getRealtimePlayer().stopNote(note);
         		}
@@ -349,16 +400,25 @@ public class RealtimeMidiParserListener extends TrackTimeManager implements Pars
     }
     
     public void onInterpolatorStarted(RealtimeInterpolator interpolator, long durationInMillis) {
-        interpolator.setDurationInMillis(durationInMillis);
-    	interpolators.add(interpolator);
+        interpolatorEngine.start(interpolator, durationInMillis);
     }
     
     public void onInterpolatorStopping(RealtimeInterpolator interpolator) {
-    	interpolators.remove(interpolator);
+    	interpolatorEngine.stop(interpolator);
+    }
+    
+    private double convertBeatsToMicros(double beats) {
+    	return (beats / bpm) * MICROS_PER_MIN * MidiDefaults.DEFAULT_TEMPO_BEATS_PER_WHOLE; 
     }
     
-    private long convertBeatsToMillis(double beats) {
-    	return (long)((beats / bpm) * MidiDefaults.MS_PER_MIN * 4); 
+    private static class PendingEvent {
+    	private final long requestedTimeInMillis;
+    	private final ScheduledEvent event;
+    	
+    	public PendingEvent(long requestedTimeInMillis, ScheduledEvent event) {
+    		this.requestedTimeInMillis = requestedTimeInMillis;
+    		this.event = event;
+    	}
     }
     
     interface Command {
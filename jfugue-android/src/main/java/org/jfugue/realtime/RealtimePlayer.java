@@ -47,11 +47,14 @@ public class RealtimePlayer
     private int currentChannel;
 	private StaccatoParser staccatoParser;
 	private RealtimeMidiParserListener rtMidiParserListener;
+	private ControlMessageCoalescer coalescer;
+	private volatile Thread coalescingThread;
 	
 	public RealtimePlayer() throws MidiUnavailableException {
         this.synth = SynthesizerManager.getInstance().getSynthesizer();
         this.synth.open();
     	this.channels = this.synth.getChannels();
+    	this.coalescer = new ControlMessageCoalescer(this.channels.length);
 
     	staccatoParser = new StaccatoParser();
 		rtMidiParserListener = new RealtimeMidiParserListener(this);
@@ -73,6 +76,13 @@ public class RealtimePlayer
     public long getCurrentTime() {
         return rtMidiParserListener.getCurrentTime();
     }
+
+    /**
+     * Sets the resolution to which the times of parsed events are rounded. The default is one microsecond.
+     */
+    public void setTimeQuantumInMicros(long timeQuantumInMicros) {
+        rtMidiParserListener.setTimeQuantumInMicros(timeQuantumInMicros);
+    }
     
 	public void schedule(long timeInMillis, ScheduledEvent event) {
 	    rtMidiParserListener.onEventScheduled(timeInMillis, event);
@@ -109,6 +119,30 @@ public class RealtimePlayer
     public void stopInterpolator(RealtimeInterpolator interpolator) {
     	rtMidiParserListener.onInterpolatorStopping(interpolator);
     }
+    
+    /**
+     * Sets how many times per second running interpolators are updated. The default is 200.
+     */
+    public void setInterpolatorControlRate(int controlRateInHz) {
+        rtMidiParserListener.setInterpolatorControlRate(controlRateInHz);
+    }
+    
+    /**
+     * While coalescing, controller, pressure and pitch wheel changes made by the
+     * calling thread are collected instead of sent, and sent once by endCoalescing().
+     */
+    void beginCoalescing() {
+        this.coalescingThread = Thread.currentThread();
+    }
+    
+    void endCoalescing() {
+        this.coalescingThread = null;
+        this.coalescer.flush(this.channels);
+    }
+    
+    private boolean isCoalescing() {
+        return Thread.currentThread() == this.coalescingThread;
+    }
 
     public void changeInstrument(int newInstrument) {
     	getCurrentChannel().programChange(newInstrument);
@@ -127,11 +161,22 @@ public class RealtimePlayer
     }
    
     public void setPitchBend(byte lsb, byte msb) {
-    	getCurrentChannel().setPitchBend(lsb + (msb << 7));
+        int pitch = lsb + (msb << 7);
+        if (isCoalescing()) {
+            coalescer.set(currentChannel, ControlMessageCoalescer.PITCH_WHEEL, pitch);
+            return;
+        }
+    	getCurrentChannel().setPitchBend(pitch);
+    	coalescer.setSent(currentChannel, ControlMessageCoalescer.PITCH_WHEEL, pitch);
     }
     
     public void changeChannelPressure(byte pressure) {
+        if (isCoalescing()) {
+            coalescer.set(currentChannel, ControlMessageCoalescer.CHANNEL_PRESSURE, pressure);
+            return;
+        }
     	getCurrentChannel().setChannelPressure(pressure);
+    	coalescer.setSent(currentChannel, ControlMessageCoalescer.CHANNEL_PRESSURE, pressure);
     }
     
     public void changePolyphonicPressure(byte key, byte pressure) {
@@ -139,7 +184,12 @@ public class RealtimePlayer
     }
     
     public void changeController(byte controller, byte value) {
+        if (isCoalescing()) {
+            coalescer.set(currentChannel, controller, value);
+            return;
+        }
     	getCurrentChannel().controlChange(controller, value);
+    	coalescer.setSent(currentChannel, controller, value);
     }
     
 	public void close() {
@@ -0,0 +1,71 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.rhythm;
+
+import org.jfugue.midi.MidiDefaults;
+import org.jfugue.parser.Parser;
+
+/**
+ * A Rhythm compiled into a grid of steps: for each segment and layer, the RhythmKit entry 
+ * to play at each step, with each entry already parsed into notes. Alt layers are resolved 
+ * when the Rhythm is compiled, so RhythmAltLayerProviders are not called again.
+ * 
+ * Parsing a CompiledRhythm gives its ParserListeners the same events as parsing the 
+ * Rhythm's pattern would: the percussion track, then for each segment each layer followed 
+ * by its notes. PackedNoteParserListeners get the notes in packed form.
+ * 
+ * @see Rhythm#compile()
+ */
+public class CompiledRhythm extends Parser 
+{
+	private final long[][] entryNotes;
+	private final double[][] entryDurations;
+	private final int[][][] steps;
+	
+	CompiledRhythm(long[][] entryNotes, double[][] entryDurations, int[][][] steps) {
+		super();
+		this.entryNotes = entryNotes;
+		this.entryDurations = entryDurations;
+		this.steps = steps;
+	}
+	
+	/** Returns the number of segments in the rhythm */
+	public int getLength() {
+		return steps.length;
+	}
+	
+	public void parse() {
+		fireBeforeParsingStarts();
+		fireTrackChanged(MidiDefaults.PERCUSSION_TRACK);
+		for (int[][] segment : steps) {
+			for (int layer=0; layer < segment.length; layer++) {
+				fireLayerChanged((byte)layer);
+				for (int entry : segment[layer]) {
+					long[] notes = entryNotes[entry];
+					double[] durations = entryDurations[entry];
+					for (int i=0; i < notes.length; i++) {
+						firePackedNoteParsed(notes[i], durations[i]);
+					}
+				}
+			}
+		}
+		fireAfterParsingFinished();
+	}
+}
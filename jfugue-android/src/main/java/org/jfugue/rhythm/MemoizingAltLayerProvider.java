@@ -0,0 +1,133 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.rhythm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.jfugue.util.ParallelTasks;
+
+/**
+ * Wraps a RhythmAltLayerProvider and remembers the alt layer it gives for each segment,
+ * so a provider that does a lot of work to generate a layer is asked only once per segment,
+ * no matter how many times the Rhythm's pattern or layers are created. Since a provider
+ * is added to a single layer, this caches results by layer and segment.
+ * 
+ * A Rhythm clears the results of its memoizing providers whenever it is changed through
+ * its methods; call invalidate() if the wrapped provider changes in a way the Rhythm can not see.
+ * 
+ * precompute() asks the provider for many segments at once, optionally on an ExecutorService;
+ * in that case the provider must be safe to call from several threads. The results are 
+ * stored by segment, so the Rhythm's output does not depend on the order in which they finish.
+ *
+ * @see Rhythm#addAltLayerProvider(int, RhythmAltLayerProvider)
+ */
+public class MemoizingAltLayerProvider implements RhythmAltLayerProvider 
+{
+	private static final int SEGMENTS_PER_TASK = 16;
+	
+	private final RhythmAltLayerProvider provider;
+	private String[] altLayers = new String[0];
+	private boolean[] isProvided = new boolean[0];
+	
+	public MemoizingAltLayerProvider(RhythmAltLayerProvider provider) {
+		this.provider = provider;
+	}
+	
+	public RhythmAltLayerProvider getProvider() {
+		return this.provider;
+	}
+	
+	@Override
+	public String provideAltLayer(int segment) {
+		synchronized (this) {
+			if ((segment >= 0) && (segment < isProvided.length) && isProvided[segment]) {
+				return altLayers[segment];
+			}
+		}
+		String altLayer = provider.provideAltLayer(segment);
+		if (segment >= 0) {
+			store(segment, altLayer);
+		}
+		return altLayer;
+	}
+	
+	/** Forgets all alt layers that have been provided */
+	public synchronized void invalidate() {
+		this.altLayers = new String[0];
+		this.isProvided = new boolean[0];
+	}
+	
+	/**
+	 * Asks the provider for the alt layers of all segments from 0 up to, but not including, 
+	 * the given length that have not been provided yet. Segments are given to the 
+	 * executor in groups; if the executor is null, they are all provided on the calling thread.
+	 */
+	public void precompute(int length, ExecutorService executor) {
+		final boolean[] isNeeded;
+		synchronized (this) {
+			isNeeded = new boolean[length];
+			for (int segment=0; segment < length; segment++) {
+				isNeeded[segment] = (segment >= isProvided.length) || !isProvided[segment];
+			}
+		}
+		
+		final String[] results = new String[length];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int start=0; start < length; start += SEGMENTS_PER_TASK) {
+			final int firstSegment = start;
+			final int lastSegment = Math.min(start + SEGMENTS_PER_TASK, length);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int segment=firstSegment; segment < lastSegment; segment++) {
+						if (isNeeded[segment]) {
+							results[segment] = provider.provideAltLayer(segment);
+						}
+					}
+					return null;
+				}
+			});
+		}
+		
+		ParallelTasks.runAll(tasks, executor);
+		
+		synchronized (this) {
+			for (int segment=0; segment < length; segment++) {
+				if (isNeeded[segment]) {
+					store(segment, results[segment]);
+				}
+			}
+		}
+	}
+	
+	private synchronized void store(int segment, String altLayer) {
+		if (segment >= isProvided.length) {
+			int newLength = Math.max(segment + 1, isProvided.length * 2);
+			altLayers = Arrays.copyOf(altLayers, newLength);
+			isProvided = Arrays.copyOf(isProvided, newLength);
+		}
+		altLayers[segment] = altLayer;
+		isProvided[segment] = true;
+	}
+}
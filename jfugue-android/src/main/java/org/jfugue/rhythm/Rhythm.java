@@ -20,15 +20,24 @@
 package org.jfugue.rhythm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.jfugue.midi.MidiDefaults;
+import org.jfugue.parser.PackedNoteParserListener;
+import org.jfugue.parser.ParserException;
+import org.jfugue.parser.ParserListenerAdapter;
 import org.jfugue.pattern.Pattern;
 import org.jfugue.pattern.PatternProducer;
+import org.jfugue.theory.Chord;
+import org.jfugue.theory.Note;
+import org.jfugue.theory.PackedNote;
+import org.staccato.StaccatoParser;
 import org.staccato.StaccatoUtil;
 
 public class Rhythm implements PatternProducer
@@ -77,6 +86,7 @@ public class Rhythm implements PatternProducer
     public Rhythm addLayer(String layer) {
     	if (this.layers.size() < MidiDefaults.LAYERS) {
     		this.layers.add(layer);
+    		invalidateMemoizedAltLayers();
     	}
     	return this;
     }
@@ -103,6 +113,7 @@ public class Rhythm implements PatternProducer
     		throw new RuntimeException("Size of the List<String> provided to Rhythm.setLayers() is greater than "+MidiDefaults.LAYERS);
     	}
     	this.layers = layers;
+    	invalidateMemoizedAltLayers();
     	return this;
     }
 
@@ -111,9 +122,22 @@ public class Rhythm implements PatternProducer
      * @see getLayers
      */
     public String[] getLayersForSegment(int segment) {
+    	return getLayersForSegment(segment, getSortedAltLayers());
+    }
+    
+    /** Sorts the alt layers of every layer once, for methods that go through many segments */
+    private List<List<AltLayer>> getSortedAltLayers() {
+    	List<List<AltLayer>> retVal = new ArrayList<List<AltLayer>>(layers.size());
+    	for (int layer = 0; layer < layers.size(); layer++) {
+    		retVal.add(getSortedAltLayersForLayer(layer));
+    	}
+    	return retVal;
+    }
+    
+    private String[] getLayersForSegment(int segment, List<List<AltLayer>> sortedAltLayers) {
     	String[] retVal = new String[layers.size()];
     	for (int layer = 0; layer < layers.size(); layer++) {
-    		List<AltLayer> altLayers = getSortedAltLayersForLayer(layer);
+    		List<AltLayer> altLayers = sortedAltLayers.get(layer);
     		// Start with the base layer
     		retVal[layer] = getLayer(layer);
     		
@@ -187,6 +211,7 @@ public class Rhythm implements PatternProducer
      */
 	public Rhythm addRecurringAltLayer(int layer, int start, int end, int recurrence, String rhythmString, int zOrder) {
 		getAltLayersForLayer(layer).add(new AltLayer(start, end, recurrence, rhythmString, null, zOrder));
+		invalidateMemoizedAltLayers();
 		return this;
 	}
 
@@ -203,6 +228,7 @@ public class Rhythm implements PatternProducer
 	 */
 	public Rhythm addRangedAltLayer(int layer, int start, int end, String rhythmString, int zOrder) {
 		getAltLayersForLayer(layer).add(new AltLayer(start, end, -1, rhythmString, null, zOrder));
+		invalidateMemoizedAltLayers();
 		return this;
 	}
 
@@ -219,12 +245,14 @@ public class Rhythm implements PatternProducer
 	 */
 	public Rhythm addOneTimeAltLayer(int layer, int oneTime, String rhythmString, int zOrder) {
 		getAltLayersForLayer(layer).add(new AltLayer(oneTime, oneTime, -1, rhythmString, null, zOrder));
+		invalidateMemoizedAltLayers();
 		return this;
 	}
 	
 	/**
 	 * Gives a RhythmAltLayerProvider, which will make its own determination about what type of 
-	 * alt layer to play, and when to play it.
+	 * alt layer to play, and when to play it. Wrap the provider in a MemoizingAltLayerProvider 
+	 * if it is slow, so it is asked only once for each segment.
 	 * By default, this has a Z-Order of 4.
 	 * @see RhythmAltLayerProvider
 	 */
@@ -239,9 +267,39 @@ public class Rhythm implements PatternProducer
 	 */
 	public Rhythm addAltLayerProvider(int layer, RhythmAltLayerProvider altLayerProvider, int zOrder) {
 		getAltLayersForLayer(layer).add(new AltLayer(0, getLength(), -1, null, altLayerProvider, zOrder));
+		invalidateMemoizedAltLayers();
 		return this;
 	}
 	    
+    /**
+     * Asks every MemoizingAltLayerProvider in this Rhythm for its alt layers for all segments,
+     * using the given executor to work on many segments at once, so later calls to getPattern(),
+     * getRhythm() or compile() find them ready. If the executor is null, the work is done
+     * on the calling thread.
+     * @see MemoizingAltLayerProvider#precompute(int, ExecutorService)
+     */
+    public Rhythm precomputeAltLayers(ExecutorService executor) {
+    	for (List<AltLayer> altLayersForLayer : altLayers.values()) {
+    		for (AltLayer altLayer : altLayersForLayer) {
+    			if (altLayer.altLayerProvider instanceof MemoizingAltLayerProvider) {
+    				((MemoizingAltLayerProvider)altLayer.altLayerProvider).precompute(getLength(), executor);
+    			}
+    		}
+    	}
+    	return this;
+    }
+    
+    /** Memoized alt layers might depend on anything in the rhythm, so they are cleared on every change */
+    private void invalidateMemoizedAltLayers() {
+    	for (List<AltLayer> altLayersForLayer : altLayers.values()) {
+    		for (AltLayer altLayer : altLayersForLayer) {
+    			if (altLayer.altLayerProvider instanceof MemoizingAltLayerProvider) {
+    				((MemoizingAltLayerProvider)altLayer.altLayerProvider).invalidate();
+    			}
+    		}
+    	}
+    }
+    
     /**
      * Combines rhythms into multiple layers. If there are
      * more than MAX_LAYERS layers in the provided rhythms, 
@@ -289,6 +347,7 @@ public class Rhythm implements PatternProducer
      */
     public Rhythm setLength(int length) {
     	this.length = length;
+    	invalidateMemoizedAltLayers();
     	return this;
     }
     
@@ -319,9 +378,10 @@ public class Rhythm implements PatternProducer
     	buddy.append(StaccatoUtil.createTrackElement((byte)9));
     	buddy.append(" ");
     	
+    	List<List<AltLayer>> sortedAltLayers = getSortedAltLayers();
     	for (int segment=0; segment < getLength(); segment++) {
         	byte layerCounter = 0;
-	    	for (String layer : getLayersForSegment(segment)) {
+	    	for (String layer : getLayersForSegment(segment, sortedAltLayers)) {
 	        	buddy.append(StaccatoUtil.createLayerElement(layerCounter));
 	        	buddy.append(" ");
 	        	layerCounter++;
@@ -332,6 +392,54 @@ public class Rhythm implements PatternProducer
     	return new Pattern(buddy.toString().trim());
     }
 
+    /**
+     * Compiles this Rhythm, with its alt layers and the current contents of its RhythmKit, into 
+     * a CompiledRhythm, which gives the same notes to ParserListeners as parsing getPattern() would, 
+     * without building or parsing a music string. Each entry in the RhythmKit is parsed once.
+     * Changes made to this Rhythm after it is compiled do not affect the CompiledRhythm.
+     * @see CompiledRhythm
+     */
+    public CompiledRhythm compile() {
+    	Map<Character, Integer> entryIndexes = new HashMap<Character, Integer>();
+    	List<long[]> entryNotes = new ArrayList<long[]>();
+    	List<double[]> entryDurations = new ArrayList<double[]>();
+    	Map<String, int[]> stepsForLayer = new HashMap<String, int[]>();
+    	KitEntryCompiler entryCompiler = new KitEntryCompiler();
+    	
+    	List<List<AltLayer>> sortedAltLayers = getSortedAltLayers();
+    	int[][][] steps = new int[getLength()][][];
+    	for (int segment=0; segment < getLength(); segment++) {
+    		String[] layersForSegment = getLayersForSegment(segment, sortedAltLayers);
+    		steps[segment] = new int[layersForSegment.length][];
+    		for (int layer=0; layer < layersForSegment.length; layer++) {
+    			String rhythm = layersForSegment[layer];
+    			int[] stepEntries = stepsForLayer.get(rhythm);
+    			if (stepEntries == null) {
+    				stepEntries = new int[rhythm.length()];
+    				for (int i=0; i < rhythm.length(); i++) {
+    					char ch = rhythm.charAt(i);
+    					Integer entryIndex = entryIndexes.get(ch);
+    					if (entryIndex == null) {
+    						String staccato = rhythmKit.get(ch);
+    						if (staccato == null) {
+    							throw new RuntimeException("The character '"+ch+"' used in the rhythm layer \""+rhythm+"\" is not associated with a Staccato music string in the RhythmKit "+rhythmKit);
+    						}
+    						entryCompiler.compile(staccato);
+    						entryIndex = entryNotes.size();
+    						entryNotes.add(entryCompiler.getNotes());
+    						entryDurations.add(entryCompiler.getDurations());
+    						entryIndexes.put(ch, entryIndex);
+    					}
+    					stepEntries[i] = entryIndex;
+    				}
+    				stepsForLayer.put(rhythm, stepEntries);
+    			}
+    			steps[segment][layer] = stepEntries;
+    		}
+    	}
+    	return new CompiledRhythm(entryNotes.toArray(new long[0][]), entryDurations.toArray(new double[0][]), steps);
+    }
+    
     /** 
      * Returns the full rhythm, including alt layers, but not translated into Staccato music strings by looking up rhythm entries into the RhythmKit
      * @return
@@ -341,8 +449,12 @@ public class Rhythm implements PatternProducer
     	StringBuilder[] builders = new StringBuilder[this.layers.size()];
     	for (int i=0; i < layers.size(); i++) {
     		builders[i] = new StringBuilder();
-    		for (int segment=0; segment < getLength(); segment++) {
-    			builders[i].append(getLayersForSegment(segment)[i]);
+    	}
+    	List<List<AltLayer>> sortedAltLayers = getSortedAltLayers();
+    	for (int segment=0; segment < getLength(); segment++) {
+    		String[] layersForSegment = getLayersForSegment(segment, sortedAltLayers);
+    		for (int i=0; i < layers.size(); i++) {
+    			builders[i].append(layersForSegment[i]);
     		}
     	}
     	
@@ -355,6 +467,59 @@ public class Rhythm implements PatternProducer
     	return retVal;
     }
     
+    /** Parses RhythmKit entries into packed notes */
+    private static class KitEntryCompiler extends ParserListenerAdapter implements PackedNoteParserListener {
+    	private StaccatoParser parser;
+    	private String staccato;
+    	private long[] notes = new long[4];
+    	private double[] durations = new double[4];
+    	private int size;
+    	
+    	public KitEntryCompiler() {
+    		this.parser = new StaccatoParser();
+    		this.parser.addParserListener(this);
+    	}
+    	
+    	public void compile(String staccato) {
+    		this.staccato = staccato;
+    		this.size = 0;
+    		try {
+    			parser.parse(staccato);
+    		} catch (ParserException e) {
+    			throw new RuntimeException(e);
+    		}
+    	}
+    	
+    	public long[] getNotes() {
+    		return Arrays.copyOf(notes, size);
+    	}
+    	
+    	public double[] getDurations() {
+    		return Arrays.copyOf(durations, size);
+    	}
+    	
+    	@Override
+    	public void onNoteParsed(Note note) {
+    		onPackedNoteParsed(PackedNote.pack(note), note.getDuration());
+    	}
+    	
+    	@Override
+    	public void onPackedNoteParsed(long packedNote, double duration) {
+    		if (size == notes.length) {
+    			notes = Arrays.copyOf(notes, size * 2);
+    			durations = Arrays.copyOf(durations, size * 2);
+    		}
+    		notes[size] = packedNote;
+    		durations[size] = duration;
+    		size++;
+    	}
+    	
+    	@Override
+    	public void onChordParsed(Chord chord) {
+    		throw new RuntimeException("Only notes and rests can be compiled from the RhythmKit, but the entry \""+staccato+"\" has a chord");
+    	}
+    }
+    
     class AltLayer {
     	public String rhythmString;
     	public RhythmAltLayerProvider altLayerProvider;
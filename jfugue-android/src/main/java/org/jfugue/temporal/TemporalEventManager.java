@@ -19,13 +19,13 @@
 
 package org.jfugue.temporal;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import org.jfugue.midi.MidiDefaults;
+import org.jfugue.util.StableSort;
 
 /**
  * Places musical data into the MIDI sequence.
@@ -35,8 +35,16 @@ import org.jfugue.midi.MidiDefaults;
  */
 final class TemporalEventManager
 {
-	private Map<Long, List<TemporalEvent>> timeToEventMap = new TreeMap<Long, List<TemporalEvent>>(); 
-    private int tempoBeatsPerMinute = MidiDefaults.DEFAULT_TEMPO_BEATS_PER_MINUTE;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final double MICROS_PER_MINUTE = 60000000.0D;
+    private double[] eventBeatTimes = new double[INITIAL_CAPACITY];
+    private TemporalEvent[] events = new TemporalEvent[INITIAL_CAPACITY];
+    private int eventCount;
+    private double[] tempoBeatTimes = new double[8];
+    private int[] tempos = new int[8];
+    private int tempoCount;
+    private long timeQuantumInMicros = 1L;
+    private TemporalTimeline timeline;
     private int beatsPerWhole = MidiDefaults.DEFAULT_TEMPO_BEATS_PER_WHOLE;
     private byte currentTrack = 0;
     private byte[] currentLayer = new byte[MidiDefaults.TRACKS];
@@ -47,18 +55,49 @@ final class TemporalEventManager
     
     public void reset() {
         this.bookmarkedTrackTimeMap = new HashMap<String, Double>();
-        this.tempoBeatsPerMinute = MidiDefaults.DEFAULT_TEMPO_BEATS_PER_MINUTE;
+        this.tempoCount = 0;
         this.currentTrack = 0;
         for (int i=0; i < MidiDefaults.TRACKS; i++) {
             this.currentLayer[i] = 0;
         }
-        this.timeToEventMap.clear();
+        Arrays.fill(this.events, 0, this.eventCount, null);
+        this.eventCount = 0;
+        this.timeline = null;
     }
     
-    public void finish() { }
+    public void finish() { 
+        this.timeline = compileTimeline();
+    }
     
+    /**
+     * Records a tempo change at the current track time. Like a MIDI tempo message,
+     * the new tempo applies to all tracks from that time on.
+     */
     public void setTempo(int tempoBPM) {
-    	this.tempoBeatsPerMinute = tempoBPM;
+        if (tempoCount == tempos.length) {
+            tempoBeatTimes = Arrays.copyOf(tempoBeatTimes, tempoCount * 2);
+            tempos = Arrays.copyOf(tempos, tempoCount * 2);
+        }
+        tempoBeatTimes[tempoCount] = getTrackBeatTime();
+        tempos[tempoCount] = tempoBPM;
+        tempoCount++;
+        this.timeline = null;
+    }
+    
+    /**
+     * Sets the resolution to which event times are rounded when the timeline is compiled.
+     * The default is one microsecond.
+     */
+    public void setTimeQuantumInMicros(long timeQuantumInMicros) {
+        if (timeQuantumInMicros <= 0L) {
+            throw new IllegalArgumentException("Time quantum must be greater than zero; provided value is "+timeQuantumInMicros);
+        }
+        this.timeQuantumInMicros = timeQuantumInMicros;
+        this.timeline = null;
+    }
+    
+    public long getTimeQuantumInMicros() {
+        return this.timeQuantumInMicros;
     }
     
     /**
@@ -117,19 +156,73 @@ final class TemporalEventManager
     }
 
     public void addRealTimeEvent(TemporalEvent event) {
-        List<TemporalEvent> eventList = timeToEventMap.get(convertBeatsToMillis(getTrackBeatTime()));
-        if (eventList == null) {
-            eventList = new ArrayList<TemporalEvent>();
-            timeToEventMap.put(convertBeatsToMillis(getTrackBeatTime()), eventList);
+        if (eventCount == eventBeatTimes.length) {
+            eventBeatTimes = Arrays.copyOf(eventBeatTimes, eventCount * 2);
+            events = Arrays.copyOf(events, eventCount * 2);
         }
-        eventList.add(event);
+        eventBeatTimes[eventCount] = getTrackBeatTime();
+        events[eventCount] = event;
+        eventCount++;
+        this.timeline = null;
     }
     
+    public TemporalTimeline getTimeline() {
+        if (this.timeline == null) {
+            this.timeline = compileTimeline();
+        }
+        return this.timeline;
+    }
+
     public Map<Long, List<TemporalEvent>> getTimeToEventMap() {
-        return this.timeToEventMap;
+        return getTimeline().toTimeToEventMap();
     }
 
-    private long convertBeatsToMillis(double beats) {
-        return (long)((beats * beatsPerWhole * 60000.0D) / tempoBeatsPerMinute);
+    /**
+     * Sorts the events added so far by beat time, then converts beat times to
+     * microseconds using the tempo map. Both sorts are stable, so events at the
+     * same time are executed in the order in which they were parsed.
+     */
+    private TemporalTimeline compileTimeline() {
+        double[] beats = Arrays.copyOf(eventBeatTimes, eventCount);
+        TemporalEvent[] sortedEvents = Arrays.copyOf(events, eventCount);
+        if (!StableSort.isSorted(beats, eventCount)) {
+            int[] order = StableSort.order(eventBeatTimes, eventCount);
+            for (int i=0; i < eventCount; i++) {
+                beats[i] = eventBeatTimes[order[i]];
+                sortedEvents[i] = events[order[i]];
+            }
+        }
+        
+        double[] tempoBeats = Arrays.copyOf(tempoBeatTimes, tempoCount);
+        int[] sortedTempos = Arrays.copyOf(tempos, tempoCount);
+        if (!StableSort.isSorted(tempoBeats, tempoCount)) {
+            int[] order = StableSort.order(tempoBeatTimes, tempoCount);
+            for (int i=0; i < tempoCount; i++) {
+                tempoBeats[i] = tempoBeatTimes[order[i]];
+                sortedTempos[i] = tempos[order[i]];
+            }
+        }
+
+        // Walk the events and the tempo map together, accumulating time at each tempo change
+        long[] times = new long[eventCount];
+        int tempoIndex = 0;
+        double segmentStartBeat = 0.0D;
+        double segmentStartMicros = 0.0D;
+        int segmentTempo = MidiDefaults.DEFAULT_TEMPO_BEATS_PER_MINUTE;
+        for (int i=0; i < eventCount; i++) {
+            while ((tempoIndex < tempoCount) && (tempoBeats[tempoIndex] <= beats[i])) {
+                segmentStartMicros += convertBeatsToMicros(tempoBeats[tempoIndex] - segmentStartBeat, segmentTempo);
+                segmentStartBeat = tempoBeats[tempoIndex];
+                segmentTempo = sortedTempos[tempoIndex];
+                tempoIndex++;
+            }
+            double micros = segmentStartMicros + convertBeatsToMicros(beats[i] - segmentStartBeat, segmentTempo);
+            times[i] = Math.round(micros / timeQuantumInMicros) * timeQuantumInMicros;
+        }
+        return new TemporalTimeline(times, sortedEvents);
+    }
+    
+    private double convertBeatsToMicros(double beats, int tempoBPM) {
+        return (beats * beatsPerWhole * MICROS_PER_MINUTE) / tempoBPM;
     }
-}
\ No newline at end of file
+}
@@ -21,7 +21,7 @@ package org.jfugue.temporal;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
 
 import org.jfugue.parser.Parser;
 import org.jfugue.parser.ParserListener;
@@ -30,19 +30,94 @@ import org.jfugue.theory.Note;
 
 public class TemporalPLP extends Parser implements ParserListener
 {
+    private static final long NANOS_PER_MICRO = 1000L;
+    private static final long MICROS_PER_MILLI = 1000L;
+    private static final long NO_SEEK_REQUESTED = Long.MIN_VALUE;
+    
+    /** Longest single wait, so that seeks and rate changes made during playback take effect promptly */
+    private static final long MAX_WAIT_IN_NANOS = 10000000L;
+    
     private TemporalEventManager eventManager;
     private TemporalEvents events;
+    private TemporalPlaybackStatistics statistics;
+    private volatile double playbackRate = 1.0D;
+    private volatile long requestedSeekTime = NO_SEEK_REQUESTED;
+    private volatile long currentTimeInMicros;
     
     public TemporalPLP() {
     	super();
     	this.events = new TemporalEvents();
         this.eventManager = new TemporalEventManager();
+        this.statistics = new TemporalPlaybackStatistics();
     } 
     
     public Map<Long, List<TemporalEvent>> getTimeToEventMap() {
     	return eventManager.getTimeToEventMap();
     }
     
+    public TemporalTimeline getTimeline() {
+        return eventManager.getTimeline();
+    }
+    
+    /**
+     * Sets the resolution to which event times are rounded; the default is one microsecond.
+     * Takes effect the next time the timeline is compiled.
+     */
+    public void setTimeQuantumInMicros(long timeQuantumInMicros) {
+        eventManager.setTimeQuantumInMicros(timeQuantumInMicros);
+    }
+    
+    /**
+     * Sets the speed of playback relative to the parsed tempo; 2.0 plays twice as fast.
+     * May be called while parse() is running.
+     */
+    public void setPlaybackRate(double playbackRate) {
+        if (playbackRate <= 0.0D) {
+            throw new IllegalArgumentException("Playback rate must be greater than zero; provided value is "+playbackRate);
+        }
+        this.playbackRate = playbackRate;
+    }
+    
+    public double getPlaybackRate() {
+        return this.playbackRate;
+    }
+    
+    /**
+     * Moves playback to the given time, in milliseconds, in the timeline. If called before parse(),
+     * playback starts from this time; if called while parse() is running, playback
+     * continues from this time. Events before the new position are not executed.
+     * @see #seekMicros(long)
+     */
+    public void seek(long timeInMillis) {
+        seekMicros(Math.max(0L, timeInMillis) * MICROS_PER_MILLI);
+    }
+    
+    /**
+     * Moves playback to the given time, in microseconds, in the timeline
+     * @see #seek(long)
+     */
+    public void seekMicros(long timeInMicros) {
+        this.requestedSeekTime = Math.max(0L, timeInMicros);
+    }
+    
+    /**
+     * Returns the timeline position, in milliseconds, of the most recently executed events
+     */
+    public long getCurrentTime() {
+        return this.currentTimeInMicros / MICROS_PER_MILLI;
+    }
+    
+    /**
+     * Returns the timeline position, in microseconds, of the most recently executed events
+     */
+    public long getCurrentTimeInMicros() {
+        return this.currentTimeInMicros;
+    }
+    
+    public TemporalPlaybackStatistics getStatistics() {
+        return this.statistics;
+    }
+    
     /* ParserListener Events */
     
     @Override
@@ -159,26 +234,53 @@ public class TemporalPLP extends Parser implements ParserListener
         this.eventManager.addRealTimeEvent(events.new ChordEvent(chord));
     }
 
-    private void delay(long millis) {
-    	try {
-    		Thread.sleep(millis);
-    	} catch (Exception e) {
-    		// An exception? Ain't no one got time for that!
-    	}
-    }
-    
+    /**
+     * Plays back the timeline, firing each event to this parser's listeners at its time.
+     * Each event is scheduled against an absolute deadline computed from a single
+     * starting point, so time spent executing events does not accumulate as drift.
+     */
     public void parse() {
 		fireBeforeParsingStarts();
+		this.statistics.reset();
+        
+        TemporalTimeline timeline = this.eventManager.getTimeline();
+        long anchorTime = 0L;
+        long anchorNanos = System.nanoTime();
+        double rate = this.playbackRate;
+        int index = 0;
         
-        long oldTime = 0;
-        Set<Long> times = this.eventManager.getTimeToEventMap().keySet();
-        for (long time : times) {
-        	delay(time - oldTime);
-        	oldTime = time;
-        	
-        	for (TemporalEvent event : this.eventManager.getTimeToEventMap().get(time)) {
-        		event.execute(this);
-        	}
+        while (index < timeline.size()) {
+            long seekTime = this.requestedSeekTime;
+            if (seekTime != NO_SEEK_REQUESTED) {
+                this.requestedSeekTime = NO_SEEK_REQUESTED;
+                anchorTime = seekTime;
+                anchorNanos = System.nanoTime();
+                index = timeline.indexOf(seekTime);
+                continue;
+            }
+            
+            // Re-anchor at the current position so a rate change only affects the remaining events
+            if (rate != this.playbackRate) {
+                long now = System.nanoTime();
+                anchorTime += (long)((now - anchorNanos) * rate / NANOS_PER_MICRO);
+                anchorNanos = now;
+                rate = this.playbackRate;
+            }
+            
+            long time = timeline.getTime(index);
+            long deadline = anchorNanos + (long)((time - anchorTime) * NANOS_PER_MICRO / rate);
+            long wait = deadline - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(Math.min(wait, MAX_WAIT_IN_NANOS));
+                continue;
+            }
+            
+            this.currentTimeInMicros = time;
+            this.statistics.record(-wait);
+            while ((index < timeline.size()) && (timeline.getTime(index) == time)) {
+                timeline.getEvent(index).execute(this);
+                index++;
+            }
         }
 
 		fireAfterParsingFinished();
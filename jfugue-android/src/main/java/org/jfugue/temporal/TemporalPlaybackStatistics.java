@@ -0,0 +1,62 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.temporal;
+
+/**
+ * Records how late each event was delivered relative to its scheduled deadline
+ * during a TemporalPLP playback.
+ */
+public class TemporalPlaybackStatistics
+{
+    private long eventCount;
+    private long totalLatenessInNanos;
+    private long maxLatenessInNanos;
+
+    public synchronized void reset() {
+        this.eventCount = 0L;
+        this.totalLatenessInNanos = 0L;
+        this.maxLatenessInNanos = 0L;
+    }
+
+    synchronized void record(long latenessInNanos) {
+        this.eventCount++;
+        this.totalLatenessInNanos += latenessInNanos;
+        if (latenessInNanos > this.maxLatenessInNanos) {
+            this.maxLatenessInNanos = latenessInNanos;
+        }
+    }
+
+    public synchronized long getEventCount() {
+        return this.eventCount;
+    }
+
+    public synchronized long getMaxLatenessInNanos() {
+        return this.maxLatenessInNanos;
+    }
+
+    public synchronized double getAverageLatenessInNanos() {
+        return (eventCount == 0L) ? 0.0D : (double)totalLatenessInNanos / eventCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TemporalPlaybackStatistics: events="+eventCount+", averageLatenessInNanos="+getAverageLatenessInNanos()+", maxLatenessInNanos="+maxLatenessInNanos;
+    }
+}
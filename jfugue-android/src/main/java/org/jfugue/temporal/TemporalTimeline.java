@@ -0,0 +1,101 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.temporal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable, compiled list of temporal events, sorted by time.
+ * Times are in microseconds and are kept in a primitive array with the events
+ * in a parallel array; events that share a time stay in the order in which
+ * they were added.
+ *
+ * @see TemporalPLP#getTimeline()
+ */
+public final class TemporalTimeline
+{
+    private final long[] times;
+    private final TemporalEvent[] events;
+
+    TemporalTimeline(long[] times, TemporalEvent[] events) {
+        this.times = times;
+        this.events = events;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public TemporalEvent getEvent(int index) {
+        return events[index];
+    }
+
+    /**
+     * Returns the time of the last event in the timeline, or 0 if the timeline is empty
+     */
+    public long getEndTime() {
+        return times.length == 0 ? 0L : times[times.length-1];
+    }
+
+    /**
+     * Returns the index of the first event whose time is at or after the given time,
+     * or size() if every event happens before the given time
+     */
+    public int indexOf(long time) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Builds the map representation used before timelines were compiled, keyed
+     * by time in milliseconds. This is provided for compatibility; playback does not use it.
+     */
+    public Map<Long, List<TemporalEvent>> toTimeToEventMap() {
+        Map<Long, List<TemporalEvent>> map = new TreeMap<Long, List<TemporalEvent>>();
+        List<TemporalEvent> eventList = null;
+        long lastMillis = -1L;
+        for (int i=0; i < times.length; i++) {
+            long millis = times[i] / 1000L;
+            if ((eventList == null) || (millis != lastMillis)) {
+                eventList = new ArrayList<TemporalEvent>();
+                map.put(millis, eventList);
+                lastMillis = millis;
+            }
+            eventList.add(events[i]);
+        }
+        return map;
+    }
+}
@@ -111,6 +111,7 @@ public class Chord implements PatternProducer
 	
 	public static void addChord(String name, Intervals intervalPattern) {
 		chordMap.put(name, intervalPattern);
+		ChordIndex.invalidate();
 	}
 	
 	public static Intervals getIntervals(String name) {
@@ -119,6 +120,48 @@ public class Chord implements PatternProducer
 	
 	public static void removeChord(String name) {
 		chordMap.remove(name);
+		ChordIndex.invalidate();
+	}
+	
+	/**
+	 * Returns the name of the chord with the given intervals, or null if it has no name.
+	 * Only chords added with addChord (or present initially) are found. 
+	 */
+	public static String getChordName(Intervals intervals) {
+		return ChordIndex.getInstance().getName(intervals);
+	}
+	
+	/**
+	 * Returns the names of all chords with the given notes, relative to the root, 
+	 * ignoring octaves (so "1 3 5 9" and "1 2 3 5" have the same pitch classes)
+	 */
+	public static String[] getChordNamesForPitchClasses(Intervals intervals) {
+		String[] names = ChordIndex.getInstance().getNames(ChordIndex.toMask(intervals));
+		return (names == null) ? new String[0] : names.clone();
+	}
+	
+	/**
+	 * Identifies the named chord made by the given simultaneous notes, ignoring octaves
+	 * and doubled notes. The lowest note is taken as the bass note, which determines the
+	 * inversion. The root note copies the settings (duration, velocity, and so on) of the first note. 
+	 * This can be used, for example, to turn simultaneous notes from a MIDI file back into chords.
+	 * 
+	 * @return the identified chord, or null if the notes do not make a known chord
+	 */
+	public static Chord identify(Note... notes) {
+		byte[] values = new byte[notes.length];
+		for (int i=0; i < notes.length; i++) {
+			values[i] = notes[i].getValue();
+		}
+		return ChordIndex.getInstance().identify(values, values.length, (notes.length > 0) ? notes[0] : null);
+	}
+
+	/**
+	 * Identifies the named chord made by the first <code>length</code> note values in the array
+	 * @see #identify(Note...) 
+	 */
+	public static Chord identify(byte[] noteValues, int length) {
+		return ChordIndex.getInstance().identify(noteValues, length, null);
 	}
 	
 	private Note rootNote;
@@ -171,8 +214,9 @@ public class Chord implements PatternProducer
 			return this; 
 		}
 		
+		int bass = newBass.getValue() % 12;
 		for (int i=0; i < intervals.size(); i++) {
-			if (newBass.getValue() % 12 == (rootNote.getValue() + Intervals.getHalfsteps(intervals.getNthInterval(i))) % 12) {
+			if (bass == (rootNote.getValue() + intervals.getNthHalfsteps(i)) % 12) {
 				this.inversion = i;
 			}
 		}
@@ -181,48 +225,74 @@ public class Chord implements PatternProducer
 	}
 	
 	public Note[] getNotes() {
-		int[] halfsteps = this.intervals.toHalfstepArray();
-		Note[] retVal = new Note[halfsteps.length];
-		retVal[0] = new Note(this.getRoot());
-		for (int i=0; i < halfsteps.length-1; i++) {
-			retVal[i+1] = new Note(retVal[i].getValue() + halfsteps[i+1] - halfsteps[i]).setFirstNote(false).setMelodicNote(false).setHarmonicNote(true).useSameDurationAs(getRoot());
-		}
-		
-		// For notes Now calculate inversion
-		for (int i=0; i < this.inversion; i++) {
-			if (i < retVal.length) {
-				retVal[i].setValue((byte)(retVal[i].getValue() + OCTAVE));
-			}
+		byte[] values = getSharedNoteValues();
+		Note[] retVal = new Note[values.length];
+		retVal[0] = new Note(this.getRoot()).setValue(values[0]);
+		for (int i=1; i < values.length; i++) {
+			retVal[i] = new Note(values[i]).setFirstNote(false).setMelodicNote(false).setHarmonicNote(true).useSameDurationAs(getRoot());
 		}
-		
 		return retVal;
 	}
+	
+	/**
+	 * Returns the MIDI note values of this chord, including its inversion, without creating
+	 * any Notes. The returned array is a copy, so the caller may modify it. 
+	 * @see #fillNoteValues(byte[])
+	 */
+	public byte[] getNoteValues() {
+		return getSharedNoteValues().clone();
+	}
+	
+	/**
+	 * Copies the MIDI note values of this chord, including its inversion, into the given array, 
+	 * which must have room for getNoteCount() values.
+	 * @return the number of values copied, which is the number of notes in the chord 
+	 */
+	public int fillNoteValues(byte[] out) {
+		byte[] values = getSharedNoteValues();
+		System.arraycopy(values, 0, out, 0, values.length);
+		return values.length;
+	}
+	
+	public int getNoteCount() {
+		return getSharedNoteValues().length;
+	}
+	
+	// The values come from the shared ChordVoicingCache, so this array must never be modified or handed out
+	private byte[] getSharedNoteValues() {
+		return ChordVoicingCache.getVoicing(this.rootNote.getValue(), this.intervals, this.inversion);
+	}
 
 	public String insertChordNameIntoNote(Note note, String chordName) {
-		StringBuilder buddy = new StringBuilder();
+		return appendChordName(new StringBuilder(), note, chordName).toString();
+	}
+	
+	private static StringBuilder appendChordName(StringBuilder buddy, Note note, String chordName) {
 		buddy.append(Note.getToneString(note.getValue()));
 		buddy.append(chordName);
 		if (note.isDurationExplicitlySet()) {
 			buddy.append(Note.getDurationString(note.getDuration()));
 		}
 		buddy.append(note.getVelocityString());
-		return buddy.toString();
+		return buddy;
 	}
 	
 	@Override
 	public Pattern getPattern() {
-		Pattern pattern = new Pattern();
-		boolean foundChord = false;
-		for (Map.Entry<String, Intervals> entry : chordMap.entrySet()) {
-			if (this.getIntervals().equals(entry.getValue())) {
-				pattern.add(insertChordNameIntoNote(this.rootNote, entry.getKey()));
-				foundChord = true;
-			}
-		}
-		if (!foundChord) {
+		String chordName = getChordName(this.getIntervals());
+		if (chordName == null) {
 			return getPatternWithNotes();
 		} 
-		return pattern;
+		return new Pattern(insertChordNameIntoNote(this.rootNote, chordName));
+	}
+	
+	/** Appends what getPattern() would return to the given StringBuilder, without creating a Pattern for a named chord */
+	public StringBuilder appendPattern(StringBuilder buddy) {
+		String chordName = getChordName(this.getIntervals());
+		if (chordName == null) {
+			return buddy.append(getPatternWithNotes().toString());
+		}
+		return appendChordName(buddy, this.rootNote, chordName);
 	}
 	
 	public Pattern getPatternWithNotes() {
@@ -0,0 +1,192 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.theory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reverse index of Chord.chordMap, from the pitch classes of a chord to the names
+ * of the chords with those pitch classes. Pitch classes are represented as a 12-bit
+ * mask relative to the root: bit n is set if the chord contains a note n halfsteps
+ * (modulo an octave) above the root. Names for a mask are kept in chordMap order.
+ * The index is rebuilt when chords are added or removed through Chord.
+ * Package scope, final class.
+ */
+final class ChordIndex 
+{
+	private static final int PITCH_CLASSES = 12;
+	private static final int ALL_PITCH_CLASSES = (1 << PITCH_CLASSES) - 1;
+	private static volatile ChordIndex instance;
+	private static int generation;
+	
+	private String[][] namesByMask;
+	private Intervals[][] intervalsByMask;
+	
+	private ChordIndex(Map<String, Intervals> chordMap) {
+		List<List<String>> names = new ArrayList<List<String>>(ALL_PITCH_CLASSES + 1);
+		for (int i=0; i <= ALL_PITCH_CLASSES; i++) {
+			names.add(null);
+		}
+		for (Map.Entry<String, Intervals> entry : chordMap.entrySet()) {
+			int mask = toMask(entry.getValue());
+			if (names.get(mask) == null) {
+				names.set(mask, new ArrayList<String>());
+			}
+			names.get(mask).add(entry.getKey());
+		}
+		
+		this.namesByMask = new String[ALL_PITCH_CLASSES + 1][];
+		this.intervalsByMask = new Intervals[ALL_PITCH_CLASSES + 1][];
+		for (int mask=0; mask <= ALL_PITCH_CLASSES; mask++) {
+			if (names.get(mask) != null) {
+				this.namesByMask[mask] = names.get(mask).toArray(new String[0]);
+				this.intervalsByMask[mask] = new Intervals[namesByMask[mask].length];
+				for (int i=0; i < namesByMask[mask].length; i++) {
+					this.intervalsByMask[mask][i] = chordMap.get(namesByMask[mask][i]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the index, building it if needed. The index is built outside of the lock, and 
+	 * is only kept if no invalidate() happened while it was being built.
+	 */
+	public static ChordIndex getInstance() {
+		ChordIndex index = instance;
+		if (index == null) {
+			int buildGeneration;
+			synchronized (ChordIndex.class) {
+				buildGeneration = generation;
+			}
+			index = new ChordIndex(Chord.chordMap);
+			synchronized (ChordIndex.class) {
+				if ((buildGeneration == generation) && (instance == null)) {
+					instance = index;
+				}
+			}
+		}
+		return index;
+	}
+	
+	public static synchronized void invalidate() {
+		generation++;
+		instance = null;
+	}
+
+	public static int toMask(Intervals intervals) {
+		int mask = 0;
+		for (int i=0; i < intervals.size(); i++) {
+			mask |= 1 << toPitchClass(intervals.getNthHalfsteps(i));
+		}
+		return mask;
+	}
+	
+	/** Returns the mask as seen from the given pitch class, which becomes bit 0 */
+	public static int rotate(int mask, int pitchClass) {
+		return ((mask >>> pitchClass) | (mask << (PITCH_CLASSES - pitchClass))) & ALL_PITCH_CLASSES;
+	}
+	
+	public static int toPitchClass(int value) {
+		return ((value % PITCH_CLASSES) + PITCH_CLASSES) % PITCH_CLASSES;
+	}
+
+	/** Returns the names of the chords with exactly the given pitch classes relative to the root, or null if there are none */
+	public String[] getNames(int mask) {
+		return namesByMask[mask];
+	}
+	
+	/** Returns the first name in chordMap order whose intervals equal the given intervals, or null if there is none */
+	public String getName(Intervals intervals) {
+		int mask = toMask(intervals);
+		if (namesByMask[mask] == null) {
+			return null;
+		}
+		for (int i=0; i < namesByMask[mask].length; i++) {
+			if (intervalsByMask[mask][i].equals(intervals)) {
+				return namesByMask[mask][i];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Finds a chord with exactly the pitch classes of the given note values. Roots are tried 
+	 * starting with the pitch class of the bass (lowest) note, so a chord in root position is
+	 * preferred over an inversion of another chord with the same pitch classes.
+	 * @return the identified chord, or null if no chord in the index has these pitch classes
+	 */
+	public Chord identify(byte[] values, int length, Note noteSettings) {
+		if (length < 2) {
+			return null;
+		}
+		
+		int mask = 0;
+		byte bass = values[0];
+		for (int i=0; i < length; i++) {
+			mask |= 1 << toPitchClass(values[i]);
+			if (values[i] < bass) {
+				bass = values[i];
+			}
+		}
+		
+		int bassPitchClass = toPitchClass(bass);
+		for (int n=0; n < PITCH_CLASSES; n++) {
+			int rootPitchClass = (bassPitchClass + n) % PITCH_CLASSES;
+			if ((mask & (1 << rootPitchClass)) == 0) {
+				continue;
+			}
+			String[] names = namesByMask[rotate(mask, rootPitchClass)];
+			if (names == null) {
+				continue;
+			}
+			
+			Intervals intervals = intervalsByMask[rotate(mask, rootPitchClass)][0];
+			int inversion = 0;
+			for (int i=0; (n != 0) && (i < intervals.size()); i++) {
+				if (toPitchClass(rootPitchClass + intervals.getNthHalfsteps(i)) == bassPitchClass) {
+					inversion = i;
+				}
+			}
+			
+			// Chord inversions raise notes by an octave, so an inverted chord's root is an octave below its sounding root
+			int rootValue = Integer.MAX_VALUE;
+			for (int i=0; i < length; i++) {
+				if ((toPitchClass(values[i]) == rootPitchClass) && (values[i] < rootValue)) {
+					rootValue = values[i];
+				}
+			}
+			// If the root cannot go down an octave, the chord is given in root position instead
+			if (inversion > 0) {
+				if (rootValue >= Chord.OCTAVE) {
+					rootValue -= Chord.OCTAVE;
+				} else {
+					inversion = 0;
+				}
+			}
+			
+			Note root = (noteSettings == null) ? new Note(rootValue) : new Note(noteSettings).setValue((byte)rootValue);
+			return new Chord(root, intervals).setInversion(inversion);
+		}
+		return null;
+	}
+}
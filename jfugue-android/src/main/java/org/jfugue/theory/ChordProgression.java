@@ -19,14 +19,21 @@
 
 package org.jfugue.theory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
 import org.jfugue.pattern.Pattern;
 import org.jfugue.pattern.PatternProducer;
 import org.jfugue.provider.KeyProviderFactory;
-import org.jfugue.provider.NoteProviderFactory;
+import org.jfugue.util.ParallelTasks;
 import org.staccato.StaccatoUtil;
 
 public class ChordProgression implements PatternProducer {
     private String[] progressionElements;
+    private int[] scaleDegrees;
+    private Intervals[] chordIntervals;
     private Chord[] knownChords = null;
     private Key key;
     private String allSequence;
@@ -47,9 +54,33 @@ public class ChordProgression implements PatternProducer {
 		createProgression(progressionElements);
 	}
 	
+	/** 
+	 * Creates a chord progression from zero-based scale degrees (0 for I, 4 for V) and the intervals
+	 * of the chord to build on each degree, without any Roman numerals to parse. 
+	 */
+	public ChordProgression(int[] scaleDegrees, Intervals[] chordIntervals) {
+		if (scaleDegrees.length != chordIntervals.length) {
+			throw new IllegalArgumentException("ChordProgression needs one set of chord intervals for each scale degree, but was given "+scaleDegrees.length+" degrees and "+chordIntervals.length+" intervals");
+		}
+		this.scaleDegrees = scaleDegrees.clone();
+		this.chordIntervals = chordIntervals.clone();
+		this.key = Key.DEFAULT_KEY;
+	}
+	
 	private void createProgression(String[] progressionElements) {
 		this.progressionElements = progressionElements;
 		this.key = Key.DEFAULT_KEY;
+		compileProgression();
+	}
+	
+	/** Converts each progression element into a scale degree and chord intervals once, so building chords needs no parsing */
+	private void compileProgression() {
+		this.scaleDegrees = new int[progressionElements.length];
+		this.chordIntervals = new Intervals[progressionElements.length];
+		for (int i=0; i < progressionElements.length; i++) {
+			scaleDegrees[i] = romanNumeralToIndex(progressionElements[i]);
+			chordIntervals[i] = getIntervalsForProgressionElement(progressionElements[i]);
+		}
 	}
 
 	public static ChordProgression fromChords(String knownChords) {
@@ -80,25 +111,39 @@ public class ChordProgression implements PatternProducer {
 	
 	@Override
 	public Pattern getPattern() {
-	    Pattern pattern = new Pattern();
-	    for (Chord chord : getChords()) {
-	        pattern.add(chord);
-	    }
-
+	    Chord[] chords = getChords();
+	    
 	    if (allSequence != null) {
-	    	pattern = replaceDollarsWithCandidates(allSequence, getChords(), new Pattern(getChords()));
+	    	Pattern pattern = replaceDollarsWithCandidates(allSequence, chords, new Pattern(chords));
+	    	if (eachSequence == null) {
+	    		return pattern;
+	    	}
+	    	// The sequence may have added anything to the chords, so the chords have to be read back from it
+	    	chords = toChords(pattern.toString().split(" ")); // TODO Should be " +"
 	    }
 	    
 	    if (eachSequence != null) {
-	    	Pattern p2 = new Pattern();
-	    	for (String chordString : pattern.toString().split(" ")) { // TODO Should be " +"
-	    		Chord chord = new Chord(chordString);
-	    		p2.add(replaceDollarsWithCandidates(eachSequence, chord.getNotes(), chord));
+	    	Pattern pattern = new Pattern();
+	    	for (Chord chord : chords) {
+	    		Note[] notes = chord.getNotes();
+	    		for (Note note : notes) {
+	    			// Spell each note from its value, as the chord's own pattern does
+	    			note.setOriginalString(null);
+	    		}
+	    		pattern.add(replaceDollarsWithCandidates(eachSequence, notes, chord));
 	    	}
-	    	pattern = p2;
+	    	return pattern;
 	    }
 	    
-	    return pattern;
+	    return new Pattern(chords);
+	}
+	
+	private static Chord[] toChords(String[] chordStrings) {
+		Chord[] chords = new Chord[chordStrings.length];
+		for (int i=0; i < chordStrings.length; i++) {
+			chords[i] = new Chord(chordStrings[i]);
+		}
+		return chords;
 	}
 	
 	/**
@@ -108,50 +153,92 @@ public class ChordProgression implements PatternProducer {
 		if (knownChords != null) {
 			return knownChords;
 		}
-		Chord[] chords = new Chord[progressionElements.length];
-	    Pattern scalePattern = key.getScale().getIntervals().setRoot(key.getRoot()).getPattern();
-	    String[] scaleNotes = scalePattern.toString().split(" ");
-	    int counter = 0;
-	    for (String progressionElement : progressionElements) {
-	        Note rootNote = NoteProviderFactory.getNoteProvider().createNote(scaleNotes[romanNumeralToIndex(progressionElement)]);
-	        rootNote.useSameDurationAs(key.getRoot());
-	        Intervals intervals = Chord.MAJOR_INTERVALS;
-	        if ((progressionElement.charAt(0) == 'i') || (progressionElement.charAt(0) == 'v')) {
-	        	// Checking to see if the progression element is lowercase 
-	            intervals = Chord.MINOR_INTERVALS;
-	        }
-	        if ((progressionElement.toLowerCase().indexOf("o") > 0) || (progressionElement.toLowerCase().indexOf("d") > 0)) {
-	        	// Checking to see if the progression element is diminished
-	            intervals = Chord.DIMINISHED_INTERVALS; 
-	        }
-	        if (progressionElement.endsWith("7")) {
-	            if (intervals.equals(Chord.MAJOR_INTERVALS)) {
-	                intervals = Chord.MAJOR_SEVENTH_INTERVALS;
-	            } else if (intervals.equals(Chord.MINOR_INTERVALS)) {
-                    intervals = Chord.MINOR_SEVENTH_INTERVALS;
-	            } else if (intervals.equals(Chord.DIMINISHED_INTERVALS)) {
-                    intervals = Chord.DIMINISHED_SEVENTH_INTERVALS;
-	            }
+		return getChords(this.key);
+	}
+	
+	/**
+	 * Returns the chords of this progression in the given key, without changing the key of the progression.
+	 * Chords given to fromChords() are already in a key, so they are returned unchanged.
+	 */
+	public Chord[] getChords(Key key) {
+		if (knownChords != null) {
+			return knownChords;
+		}
+		Intervals scaleIntervals = key.getScale().getIntervals();
+		Chord[] chords = new Chord[scaleDegrees.length];
+		for (int i=0; i < scaleDegrees.length; i++) {
+			Note rootNote = new Note((byte)(key.getRoot().getValue() + scaleIntervals.getNthHalfsteps(scaleDegrees[i])));
+			rootNote.useSameDurationAs(key.getRoot());
+			chords[i] = new Chord(rootNote, chordIntervals[i]);
+		}
+		return chords;
+	}
+	
+	/**
+	 * Returns the chords of each progression in each key, indexed by progression and then by key.
+	 * Each progression and key is handled by a separate task on the given executor, or all of them
+	 * on the calling thread if the executor is null; the results are the same either way.
+	 * 
+	 * @see Key#getAllMajorAndMinorKeys()
+	 */
+	public static Chord[][][] getChords(ChordProgression[] progressions, Key[] keys, ExecutorService executor) {
+		final Chord[][][] chords = new Chord[progressions.length][keys.length][];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(progressions.length * keys.length);
+		for (int p=0; p < progressions.length; p++) {
+			for (int k=0; k < keys.length; k++) {
+				final ChordProgression progression = progressions[p];
+				final Key key = keys[k];
+				final int progressionIndex = p;
+				final int keyIndex = k;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						chords[progressionIndex][keyIndex] = progression.getChords(key);
+						return null;
+					}
+				});
+			}
+		}
+		
+		ParallelTasks.runAll(tasks, executor);
+		return chords;
+	}
+	
+	private static Intervals getIntervalsForProgressionElement(String progressionElement) {
+	    Intervals intervals = Chord.MAJOR_INTERVALS;
+	    if ((progressionElement.charAt(0) == 'i') || (progressionElement.charAt(0) == 'v')) {
+	    	// Checking to see if the progression element is lowercase 
+	        intervals = Chord.MINOR_INTERVALS;
+	    }
+	    if ((progressionElement.toLowerCase().indexOf("o") > 0) || (progressionElement.toLowerCase().indexOf("d") > 0)) {
+	    	// Checking to see if the progression element is diminished
+	        intervals = Chord.DIMINISHED_INTERVALS; 
+	    }
+	    if (progressionElement.endsWith("7")) {
+	        if (intervals.equals(Chord.MAJOR_INTERVALS)) {
+	            intervals = Chord.MAJOR_SEVENTH_INTERVALS;
+	        } else if (intervals.equals(Chord.MINOR_INTERVALS)) {
+                intervals = Chord.MINOR_SEVENTH_INTERVALS;
+	        } else if (intervals.equals(Chord.DIMINISHED_INTERVALS)) {
+                intervals = Chord.DIMINISHED_SEVENTH_INTERVALS;
 	        }
-	        if (progressionElement.endsWith("7%6")) {
-	            if (intervals.equals(Chord.MAJOR_INTERVALS)) {
-	                intervals = Chord.MAJOR_SEVENTH_SIXTH_INTERVALS;
-	            } else if (intervals.equals(Chord.MINOR_INTERVALS)) {
-                    intervals = Chord.MINOR_SEVENTH_SIXTH_INTERVALS;
-	            }
+	    }
+	    if (progressionElement.endsWith("7%6")) {
+	        if (intervals.equals(Chord.MAJOR_INTERVALS)) {
+	            intervals = Chord.MAJOR_SEVENTH_SIXTH_INTERVALS;
+	        } else if (intervals.equals(Chord.MINOR_INTERVALS)) {
+                intervals = Chord.MINOR_SEVENTH_SIXTH_INTERVALS;
 	        }
-
-	        chords[counter] = new Chord(rootNote, intervals);
-	        counter++;
 	    }
-	    return chords;
+
+	    return intervals;
 	}
 	
 	/** 
 	 * Only converts Roman numerals I through VII, because that's all we need in music theory... 
 	 * VIII would be the octave and equal I!
 	 */
-	private int romanNumeralToIndex(String romanNumeral) {
+	private static int romanNumeralToIndex(String romanNumeral) {
 	    String s = romanNumeral.toLowerCase();
 	    
 	    // Notice if we are dealing with a diminished interval
@@ -250,9 +337,13 @@ public class ChordProgression implements PatternProducer {
 	}
 	
 	public ChordProgression distribute(String distribute) {
+		if (progressionElements == null) {
+			throw new IllegalStateException("distribute() needs a ChordProgression created from Roman numerals");
+		}
 		for (int i=0; i < progressionElements.length; i++) {
 			progressionElements[i] = progressionElements[i] + distribute;
 		}
+		compileProgression();
 		return this;
 	}
 }
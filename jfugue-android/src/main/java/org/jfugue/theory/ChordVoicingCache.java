@@ -0,0 +1,72 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.theory;
+
+/**
+ * Caches the MIDI note values of chord voicings, keyed by root note value, intervals
+ * and inversion (which is how a bass note is represented; see Chord.setBassNote).
+ * The cache is direct-mapped: each key has one slot, and a newer voicing replaces
+ * whatever was in its slot. Entries are immutable and are published with a single
+ * array write, so the cache may be shared between threads without locking.
+ * Package scope, final class.
+ */
+final class ChordVoicingCache 
+{
+	private static final int SIZE = 4096;
+	private static final Voicing[] voicings = new Voicing[SIZE];
+	
+	private ChordVoicingCache() { }
+	
+	/**
+	 * Returns the note values for the given chord. The returned array is shared and must not be modified. 
+	 */
+	public static byte[] getVoicing(byte root, Intervals intervals, int inversion) {
+		long key = ((long)intervals.getId() << 32) | ((long)(inversion & 0xFFFF) << 8) | (root & 0xFF);
+		int slot = (int)((key ^ (key >>> 29)) * 0x9E3779B1L >>> 20) & (SIZE - 1);
+		Voicing voicing = voicings[slot];
+		if ((voicing == null) || (voicing.key != key)) {
+			voicing = new Voicing(key, computeVoicing(root, intervals, inversion));
+			voicings[slot] = voicing;
+		}
+		return voicing.values;
+	}
+	
+	private static byte[] computeVoicing(byte root, Intervals intervals, int inversion) {
+		byte[] values = new byte[intervals.size()];
+		values[0] = root;
+		for (int i=1; i < values.length; i++) {
+			values[i] = (byte)(values[i-1] + intervals.getNthHalfsteps(i) - intervals.getNthHalfsteps(i-1));
+		}
+		for (int i=0; (i < inversion) && (i < values.length); i++) {
+			values[i] = (byte)(values[i] + Chord.OCTAVE);
+		}
+		return values;
+	}
+	
+	private static final class Voicing {
+		private final long key;
+		private final byte[] values;
+		
+		public Voicing(long key, byte[] values) {
+			this.key = key;
+			this.values = values;
+		}
+	}
+}
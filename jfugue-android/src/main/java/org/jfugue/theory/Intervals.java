@@ -23,7 +23,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jfugue.pattern.NotesProducer;
 import org.jfugue.pattern.Pattern;
@@ -33,27 +34,9 @@ import org.staccato.NoteSubparser;
 
 public class Intervals implements PatternProducer, NotesProducer
 {
-	private static Map<Integer, Integer> wholeNumberDegreeToHalfsteps;
 	private static Map<Integer, Integer> halfstepsToWholeNumberDegree;
 
 	static {
-		wholeNumberDegreeToHalfsteps = new HashMap<Integer, Integer>();
-		wholeNumberDegreeToHalfsteps.put(1, 0);
-		wholeNumberDegreeToHalfsteps.put(2, 2);
-		wholeNumberDegreeToHalfsteps.put(3, 4);
-		wholeNumberDegreeToHalfsteps.put(4, 5);
-		wholeNumberDegreeToHalfsteps.put(5, 7);
-		wholeNumberDegreeToHalfsteps.put(6, 9);
-		wholeNumberDegreeToHalfsteps.put(7, 11);
-		wholeNumberDegreeToHalfsteps.put(8, 12);
-		wholeNumberDegreeToHalfsteps.put(9, 14);
-		wholeNumberDegreeToHalfsteps.put(10, 16);
-		wholeNumberDegreeToHalfsteps.put(11, 17);
-		wholeNumberDegreeToHalfsteps.put(12, 19);
-		wholeNumberDegreeToHalfsteps.put(13, 21);
-		wholeNumberDegreeToHalfsteps.put(14, 23);
-		wholeNumberDegreeToHalfsteps.put(15, 24);
-
 		halfstepsToWholeNumberDegree = new HashMap<Integer, Integer>();
 		halfstepsToWholeNumberDegree.put(0, 1);
 		halfstepsToWholeNumberDegree.put(2, 2);
@@ -72,14 +55,32 @@ public class Intervals implements PatternProducer, NotesProducer
 		halfstepsToWholeNumberDegree.put(24, 15);
 	};
 	
-	private String intervalPattern;
+	/** Halfsteps for each whole number degree, indexed by degree; -1 where there is no such degree */
+	private static final int[] DEGREE_TO_HALFSTEPS = new int[] { -1, 0, 2, 4, 5, 7, 9, 11, 12, 14, 16, 17, 19, 21, 23, 24 };
+
+	/** Interval strings seen so far, compiled once and shared by every Intervals with the same string */
+	private static final int MAX_INTERNED_INTERVALS = 4096;
+	private static final Map<String, CompiledIntervals> internedIntervals = new ConcurrentHashMap<String, CompiledIntervals>();
+	private static final AtomicInteger nextCompiledId = new AtomicInteger();
+	
+	private CompiledIntervals compiled;
 	private Note rootNote;
-	private static java.util.regex.Pattern numberPattern = java.util.regex.Pattern.compile("\\d+");
 	private String[] splitEachSequence;
 	private String[] splitAllSequence;
 
 	public Intervals(String intervalPattern) {
-		this.intervalPattern = intervalPattern;
+		this.compiled = compile(intervalPattern);
+	}
+	
+	private static CompiledIntervals compile(String intervalPattern) {
+		CompiledIntervals compiled = internedIntervals.get(intervalPattern);
+		if (compiled == null) {
+			compiled = new CompiledIntervals(intervalPattern);
+			if (internedIntervals.size() < MAX_INTERNED_INTERVALS) {
+				internedIntervals.put(intervalPattern, compiled);
+			}
+		}
+		return compiled;
 	}
 
 	public Intervals setRoot(String root) {
@@ -95,11 +96,10 @@ public class Intervals implements PatternProducer, NotesProducer
 	public org.jfugue.pattern.Pattern getPattern() {
 		assert (rootNote != null);
 		
-		String[] intervals = intervalPattern.split(" ");
 		int allSequenceCounter = 0;
 		org.jfugue.pattern.Pattern pattern = new org.jfugue.pattern.Pattern();
-		for (String interval : intervals) {
-		    Note note = new Note((byte)(rootNote.getValue() + Intervals.getHalfsteps(interval)));
+		for (int halfsteps : compiled.halfsteps) {
+		    Note note = new Note((byte)(rootNote.getValue() + halfsteps));
 			if (splitEachSequence != null) {
 			    for (String add : splitEachSequence) {
 			        pattern.add(note.toString() + add);
@@ -131,24 +131,38 @@ public class Intervals implements PatternProducer, NotesProducer
 	}
 	
 	public String getNthInterval(int n) {
-		return intervalPattern.split(" ")[n];
+		return compiled.tokens[n];
+	}
+
+	/**
+	 * Returns the number of halfsteps above the root for the nth interval
+	 */
+	public int getNthHalfsteps(int n) {
+		return compiled.halfsteps[n];
 	}
 
 	public int size() {
-		return intervalPattern.split(" ").length;
+		return compiled.halfsteps.length;
+	}
+	
+	/**
+	 * Returns a number that identifies the compiled interval string; Intervals with 
+	 * equal strings usually share an id, and Intervals with different strings never do
+	 */
+	int getId() {
+		return compiled.id;
 	}
 
 	public static int getHalfsteps(String interval) {
-		return wholeNumberDegreeToHalfsteps.get(getNumberPortionOfInterval(interval)) + calculateHalfstepsFromFlatsAndSharps(interval);
+		int degree = getNumberPortionOfInterval(interval);
+		if ((degree >= DEGREE_TO_HALFSTEPS.length) || (DEGREE_TO_HALFSTEPS[degree] == -1)) {
+			throw new IllegalArgumentException("The interval '"+interval+"' does not have a degree between 1 and "+(DEGREE_TO_HALFSTEPS.length-1));
+		}
+		return DEGREE_TO_HALFSTEPS[degree] + calculateHalfstepsFromFlatsAndSharps(interval);
 	}
 	
 	public int[] toHalfstepArray() {
-		String[] intervals = intervalPattern.split(" ");
-		int[] halfSteps = new int[intervals.length];
-		for (int i=0; i < intervals.length; i++) {
-			halfSteps[i] = Intervals.getHalfsteps(intervals[i]); 
-		}
-		return halfSteps;
+		return compiled.halfsteps.clone();
 	}
 
 	/**
@@ -158,8 +172,9 @@ public class Intervals implements PatternProducer, NotesProducer
 	 */
 	private static int calculateHalfstepsFromFlatsAndSharps(String interval) {
 		int numHalfsteps = 0;
-		for (char ch : interval.toUpperCase().toCharArray()) {
-			if (ch == 'B') {
+		for (int i=0; i < interval.length(); i++) {
+			char ch = interval.charAt(i);
+			if ((ch == 'b') || (ch == 'B')) {
 				numHalfsteps -= 1;
 			} else if (ch == '#') {
 				numHalfsteps += 1;
@@ -178,12 +193,18 @@ public class Intervals implements PatternProducer, NotesProducer
 	 * returns 0.
 	 */
 	private static int getNumberPortionOfInterval(String interval) {
-		Matcher m = numberPattern.matcher(interval);
-		if (m.find()) {
-			return Integer.parseInt(m.group());
-		} else {
-			return 0;
+		int number = 0;
+		boolean inNumber = false;
+		for (int i=0; i < interval.length(); i++) {
+			char ch = interval.charAt(i);
+			if ((ch >= '0') && (ch <= '9')) {
+				number = Math.min(number * 10 + (ch - '0'), DEGREE_TO_HALFSTEPS.length);
+				inNumber = true;
+			} else if (inNumber) {
+				break;
+			}
 		}
+		return number;
 	}
 	
 	/**
@@ -192,7 +213,7 @@ public class Intervals implements PatternProducer, NotesProducer
 	 * this would return "3 5 1" (not "5 1 3").
 	 */
 	public Intervals rotate(int n) {
-		String[] intervals = intervalPattern.split(" ");
+		String[] intervals = compiled.tokens;
 		n %= intervals.length;
 		StringBuilder buddy = new StringBuilder();
 		for (int i=0; i < intervals.length-n; i++) {
@@ -203,7 +224,7 @@ public class Intervals implements PatternProducer, NotesProducer
 			buddy.append(intervals[i]);
 			buddy.append(" ");
 		}
-		this.intervalPattern = buddy.toString().trim();
+		this.compiled = compile(buddy.toString().trim());
 		return this;
 	}
 	
@@ -218,7 +239,7 @@ public class Intervals implements PatternProducer, NotesProducer
 	}
 
 	public String toString() {
-		return this.intervalPattern;
+		return compiled.pattern;
 	}
 	
 	@Override
@@ -260,4 +281,25 @@ public class Intervals implements PatternProducer, NotesProducer
 		}
 		return new Intervals(buddy.toString().trim());
 	}
+
+	/**
+	 * The parsed form of an interval string: its tokens, kept for display, and the
+	 * number of halfsteps above the root for each token. Never modified once created.
+	 */
+	private static final class CompiledIntervals {
+		private final int id;
+		private final String pattern;
+		private final String[] tokens;
+		private final int[] halfsteps;
+		
+		public CompiledIntervals(String pattern) {
+			this.id = nextCompiledId.getAndIncrement();
+			this.pattern = pattern;
+			this.tokens = pattern.split(" ");
+			this.halfsteps = new int[tokens.length];
+			for (int i=0; i < tokens.length; i++) {
+				this.halfsteps[i] = Intervals.getHalfsteps(tokens[i]);
+			}
+		}
+	}
 }
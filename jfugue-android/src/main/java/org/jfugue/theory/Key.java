@@ -63,4 +63,14 @@ public class Key
     }
     
     public static final Key DEFAULT_KEY = new Key("C4maj");
+
+    /** Returns the 12 major keys followed by the 12 minor keys, with roots from C4 to B4 */
+    public static Key[] getAllMajorAndMinorKeys() {
+    	Key[] keys = new Key[24];
+    	for (int i=0; i < 12; i++) {
+    		keys[i] = new Key(new Note(DEFAULT_KEY.getRoot().getValue() + i), Scale.MAJOR);
+    		keys[i+12] = new Key(new Note(DEFAULT_KEY.getRoot().getValue() + i), Scale.MINOR);
+    	}
+    	return keys;
+    }
 }
@@ -114,6 +114,13 @@ public class Note implements PatternProducer
 	    return this;
 	}
 
+	/** Sets the duration without deciding for the caller whether it was explicitly set; used when unpacking a PackedNote */
+	Note setDuration(double d, boolean wasDurationExplicitlySet) {
+		this.duration = d;
+		this.wasDurationExplicitlySet = wasDurationExplicitlySet;
+		return this;
+	}
+
 	public Note useDefaultDuration() {
 		this.duration = DefaultNoteSettingsManager.getInstance().getDefaultDuration();
 		// And do not set wasDurationExplicitlySet
@@ -262,6 +269,13 @@ public class Note implements PatternProducer
      * @return a MusicString value, like C5
      */
     public static String getToneString(byte noteValue) {
+    	if (noteValue >= 0) {
+    		return TONE_STRINGS[noteValue];
+    	}
+    	return createToneString(noteValue);
+    }
+    
+    private static String createToneString(byte noteValue) {
         StringBuilder buddy = new StringBuilder();
         buddy.append(getToneStringWithoutOctave(noteValue));
         buddy.append(noteValue / 12); // Octave: this should say "-1" if octaves are -1..9
@@ -331,8 +345,27 @@ public class Note implements PatternProducer
      * @return frequency in Hertz
      */
     public static double getFrequencyForNote(int noteValue) {
+    	if ((noteValue >= 0) && (noteValue < FREQUENCIES.length)) {
+    		return FREQUENCIES[noteValue];
+    	}
         return truncateTo3DecimalPlaces(getPreciseFrequencyForNote(noteValue));
     }
+    
+    /**
+     * Returns the frequency, in Hertz, for the given note value in the given tuning
+     * @see Tuning
+     */
+    public static double getFrequencyForNote(int noteValue, Tuning tuning) {
+    	return tuning.getFrequency(noteValue);
+    }
+    
+    /** Frequencies for each MIDI note value, computed once */
+    private static final double[] FREQUENCIES = new double[Tuning.NOTE_COUNT];
+    static {
+    	for (int i=0; i < FREQUENCIES.length; i++) {
+    		FREQUENCIES[i] = truncateTo3DecimalPlaces(getPreciseFrequencyForNote(i));
+    	}
+    }
 
     private static double truncateTo3DecimalPlaces(double preciseNumber) {
     	return Math.rint(preciseNumber * 10000.0) / 10000.0;
@@ -364,6 +397,19 @@ public class Note implements PatternProducer
      * @return a MusicString fragment representing the duration
      */
     public static String getDurationString(double decimalDuration) {
+    	long bits = Double.doubleToLongBits(decimalDuration);
+    	int hash = (int)(bits ^ (bits >>> 32));
+    	int index = (hash ^ (hash >>> 16)) & (DURATION_STRING_CACHE_SIZE - 1);
+    	DurationString cached = durationStringCache[index];
+    	if ((cached != null) && (cached.duration == decimalDuration)) {
+    		return cached.string;
+    	}
+    	String durationString = createDurationString(decimalDuration);
+    	durationStringCache[index] = new DurationString(decimalDuration, durationString);
+    	return durationString;
+    }
+    
+    private static String createDurationString(double decimalDuration) {
         double originalDecimalDuration = decimalDuration;
         StringBuilder buddy = new StringBuilder();
         if (decimalDuration >= 1.0) {
@@ -406,14 +452,20 @@ public class Note implements PatternProducer
     }
 
     public String getVelocityString() {
-    	StringBuilder buddy = new StringBuilder();
+    	if ((this.onVelocity == MidiDefaults.MIDI_DEFAULT_ON_VELOCITY) && (this.offVelocity == MidiDefaults.MIDI_DEFAULT_OFF_VELOCITY)) {
+    		return "";
+    	}
+    	return appendVelocity(new StringBuilder()).toString();
+    }
+    
+    private StringBuilder appendVelocity(StringBuilder buddy) {
 	    if (this.onVelocity != MidiDefaults.MIDI_DEFAULT_ON_VELOCITY) {
-	        buddy.append("a"+this.onVelocity);
+	        buddy.append('a').append(this.onVelocity);
 	    }
         if (this.offVelocity != MidiDefaults.MIDI_DEFAULT_OFF_VELOCITY) {
-            buddy.append("d"+this.offVelocity);
+            buddy.append('d').append(this.offVelocity);
         }
-        return buddy.toString();
+        return buddy;
     }
     
     /**
@@ -423,22 +475,28 @@ public class Note implements PatternProducer
      */
     @Override
 	public Pattern getPattern() {
-	    StringBuilder buddy = new StringBuilder();
-	    buddy.append(toStringWithoutDuration());
-	    buddy.append(getDecoratorString());
-	    return new Pattern(buddy.toString()); 
+	    return new Pattern(appendPattern(new StringBuilder()).toString()); 
 	}
 
     public Pattern getPercussionPattern() {
-    	if (getValue() < MidiDefaults.MIN_PERCUSSION_NOTE || getValue() > MidiDefaults.MAX_PERCUSSION_NOTE) return getPattern(); 
-    	StringBuilder buddy = new StringBuilder();
+	    return new Pattern(appendPercussionPattern(new StringBuilder()).toString()); 
+    }
+    
+    /** Appends what getPattern() would return to the given StringBuilder, without creating a Pattern */
+    public StringBuilder appendPattern(StringBuilder buddy) {
+	    buddy.append(toStringWithoutDuration());
+	    return appendDecorators(buddy);
+    }
+    
+    /** Appends what getPercussionPattern() would return to the given StringBuilder, without creating a Pattern */
+    public StringBuilder appendPercussionPattern(StringBuilder buddy) {
+    	if (getValue() < MidiDefaults.MIN_PERCUSSION_NOTE || getValue() > MidiDefaults.MAX_PERCUSSION_NOTE) return appendPattern(buddy); 
 	    buddy.append(Note.getPercussionString(getValue()));
-	    buddy.append(getDecoratorString());
-	    return new Pattern(buddy.toString()); 
+	    return appendDecorators(buddy);
     }
     
 	public String toString() {
-		return getPattern().toString();
+		return appendPattern(new StringBuilder()).toString();
 	}
 	
 	public String toStringWithoutDuration() {
@@ -455,12 +513,14 @@ public class Note implements PatternProducer
 	 * Returns the "decorators" to the base note, which includes the duration if one is explicitly specified, and velocity dynamics if provided
 	 */
 	public String getDecoratorString() {
-	    StringBuilder buddy = new StringBuilder();
+	    return appendDecorators(new StringBuilder()).toString(); 
+	}
+	
+	private StringBuilder appendDecorators(StringBuilder buddy) {
 	    if (isDurationExplicitlySet()) {
 	    	buddy.append(Note.getDurationString(this.duration));
 	    }
-	    buddy.append(getVelocityString());
-	    return buddy.toString(); 
+	    return appendVelocity(buddy);
 	}
 	
 	public boolean equals(Object o) {
@@ -508,6 +568,28 @@ public class Note implements PatternProducer
     public final static String[] NOTE_NAMES_SHARP = new String[] { "C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B" };
     public final static String[] NOTE_NAMES_FLAT = new String[] { "C", "Db", "D", "Eb", "E", "F", "Gb", "G", "Ab", "A", "Bb", "B" };
 
+    /** Tone strings for all 128 note values, computed once; must follow NOTE_NAMES_COMMON */
+    private static final String[] TONE_STRINGS = new String[128];
+    static {
+    	for (int i=0; i < TONE_STRINGS.length; i++) {
+    		TONE_STRINGS[i] = createToneString((byte)i);
+    	}
+    }
+    
+    /** Recently used duration strings, in a direct-mapped cache of immutable entries */
+    private static final int DURATION_STRING_CACHE_SIZE = 256;
+    private static final DurationString[] durationStringCache = new DurationString[DURATION_STRING_CACHE_SIZE];
+    
+    private static final class DurationString {
+    	final double duration;
+    	final String string;
+    	
+    	DurationString(double duration, String string) {
+    		this.duration = duration;
+    		this.string = string;
+    	}
+    }
+
     public static String[] PERCUSSION_NAMES = new String[] {
     	// Percussion Name		// MIDI Note Value
     	"ACOUSTIC_BASS_DRUM", 	//       35
@@ -0,0 +1,111 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.theory;
+
+import org.jfugue.midi.MidiDefaults;
+
+/**
+ * Packs everything about a Note except its duration and original string into a long,
+ * so notes can be passed along without creating a Note for each one. The duration
+ * travels next to the packed note as a double. Packed notes are plain values,
+ * so unlike Notes they can be shared freely.
+ * 
+ * Bits 0-7 hold the note value, bits 8-15 the on velocity, bits 16-23 the off velocity,
+ * and bits 24-31 the flags below.
+ * 
+ * @see org.jfugue.parser.PackedNoteParserListener
+ */
+public final class PackedNote 
+{
+	public static final long DURATION_EXPLICITLY_SET = 1L << 24;
+	public static final long REST_FLAG = 1L << 25;
+	public static final long START_OF_TIE = 1L << 26;
+	public static final long END_OF_TIE = 1L << 27;
+	public static final long FIRST_NOTE = 1L << 28;
+	public static final long MELODIC_NOTE = 1L << 29;
+	public static final long HARMONIC_NOTE = 1L << 30;
+	public static final long PERCUSSION_NOTE = 1L << 31;
+	
+	/** A rest with the standard MIDI velocities; unlike Note.REST, it cannot be changed by mistake */
+	public static final long REST = pack((byte)0, MidiDefaults.MIDI_DEFAULT_ON_VELOCITY, MidiDefaults.MIDI_DEFAULT_OFF_VELOCITY, REST_FLAG | FIRST_NOTE);
+	
+	private PackedNote() { }
+	
+	/**
+	 * @param flags any of the flag constants in this class, combined with |
+	 */
+	public static long pack(byte value, byte onVelocity, byte offVelocity, long flags) {
+		return (value & 0xFFL) | ((onVelocity & 0xFFL) << 8) | ((offVelocity & 0xFFL) << 16) | flags;
+	}
+	
+	public static long pack(Note note) {
+		long flags = 0L;
+		if (note.isDurationExplicitlySet()) flags |= DURATION_EXPLICITLY_SET;
+		if (note.isRest()) flags |= REST_FLAG;
+		if (note.isStartOfTie()) flags |= START_OF_TIE;
+		if (note.isEndOfTie()) flags |= END_OF_TIE;
+		if (note.isFirstNote()) flags |= FIRST_NOTE;
+		if (note.isMelodicNote()) flags |= MELODIC_NOTE;
+		if (note.isHarmonicNote()) flags |= HARMONIC_NOTE;
+		if (note.isPercussionNote()) flags |= PERCUSSION_NOTE;
+		return pack(note.getValue(), note.getOnVelocity(), note.getOffVelocity(), flags);
+	}
+	
+	/** Creates a Note from a packed note and its duration */
+	public static Note toNote(long packedNote, double duration) {
+		Note note = new Note();
+		note.setValue(getValue(packedNote));
+		note.setDuration(duration, hasFlag(packedNote, DURATION_EXPLICITLY_SET));
+		note.setOnVelocity(getOnVelocity(packedNote));
+		note.setOffVelocity(getOffVelocity(packedNote));
+		note.setRest(hasFlag(packedNote, REST_FLAG));
+		note.setStartOfTie(hasFlag(packedNote, START_OF_TIE));
+		note.setEndOfTie(hasFlag(packedNote, END_OF_TIE));
+		note.setFirstNote(hasFlag(packedNote, FIRST_NOTE));
+		note.setMelodicNote(hasFlag(packedNote, MELODIC_NOTE));
+		note.setHarmonicNote(hasFlag(packedNote, HARMONIC_NOTE));
+		note.setPercussionNote(hasFlag(packedNote, PERCUSSION_NOTE));
+		return note;
+	}
+	
+	public static byte getValue(long packedNote) {
+		return (byte)(packedNote & 0xFF);
+	}
+	
+	public static byte getOnVelocity(long packedNote) {
+		return (byte)((packedNote >>> 8) & 0xFF);
+	}
+	
+	public static byte getOffVelocity(long packedNote) {
+		return (byte)((packedNote >>> 16) & 0xFF);
+	}
+	
+	public static boolean hasFlag(long packedNote, long flag) {
+		return (packedNote & flag) != 0L;
+	}
+	
+	public static long setValue(long packedNote, byte value) {
+		return (packedNote & ~0xFFL) | (value & 0xFFL);
+	}
+	
+	public static long setFlag(long packedNote, long flag, boolean on) {
+		return on ? (packedNote | flag) : (packedNote & ~flag);
+	}
+}
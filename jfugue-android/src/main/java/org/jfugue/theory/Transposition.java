@@ -0,0 +1,165 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.theory;
+
+/**
+ * Moves notes chromatically, diatonically within a key, or from one key or mode to another. 
+ * The move is worked out once for all 128 note values, so transposing a note is a single
+ * table lookup and transposing an array of notes is one pass over it. Results outside
+ * the MIDI range are clamped to 0 and 127.
+ * 
+ * For moves between keys, each note keeps its scale degree: in C Major to G Major, E (the
+ * third) becomes B, and in C Major to C Minor, E becomes Eb. A note outside the scale keeps
+ * its distance from the scale note below it. 
+ * 
+ * @see org.jfugue.tools.TransposeTool
+ */
+public final class Transposition 
+{
+	private final byte[] noteMap = new byte[128];
+	private final int halfsteps;
+	private final Key targetKey;
+	
+	private Transposition(int halfsteps, Key targetKey) {
+		this.halfsteps = halfsteps;
+		this.targetKey = targetKey;
+	}
+	
+	/** Moves every note by the given number of halfsteps */
+	public static Transposition chromatic(int halfsteps) {
+		Transposition transposition = new Transposition(halfsteps, null);
+		for (int value=0; value < 128; value++) {
+			transposition.setMapping(value, value + halfsteps);
+		}
+		return transposition;
+	}
+	
+	/** Moves every note by the given number of scale degrees within the key; for example, 2 moves C to E in C Major */
+	public static Transposition diatonic(Key key, int steps) {
+		return toKey(key, key, steps);
+	}
+	
+	/** Moves every note from its scale degree in one key to the same degree in another key; the keys' scales must have the same number of notes */
+	public static Transposition toKey(Key fromKey, Key toKey) {
+		return toKey(fromKey, toKey, 0);
+	}
+	
+	/** Keeps the root of the key and changes its scale, for example from Ionian (Major) to Dorian */
+	public static Transposition toMode(Key fromKey, Scale mode) {
+		return toKey(fromKey, new Key(fromKey.getRoot(), mode), 0);
+	}
+	
+	/** Moves every note from its scale degree in one key to the degree the given number of steps away in another key */
+	public static Transposition toKey(Key fromKey, Key toKey, int steps) {
+		int[] fromHalfsteps = getHalfstepsWithinOctave(fromKey.getScale());
+		int[] toHalfsteps = getHalfstepsWithinOctave(toKey.getScale());
+		if (fromHalfsteps.length != toHalfsteps.length) {
+			throw new IllegalArgumentException("Transposition can only move between scales with the same number of notes, but the scales have "+fromHalfsteps.length+" and "+toHalfsteps.length+" notes");
+		}
+		
+		int degreeCount = fromHalfsteps.length;
+		int fromRoot = fromKey.getRoot().getValue();
+		int rootShift = toKey.getRoot().getValue() - fromRoot;
+		Transposition transposition = new Transposition(rootShift, toKey);
+		for (int value=0; value < 128; value++) {
+			int positionInKey = ((value - fromRoot) % 12 + 12) % 12;
+			int degree = 0;
+			while ((degree+1 < degreeCount) && (fromHalfsteps[degree+1] <= positionInKey)) {
+				degree++;
+			}
+			int chromaticOffset = positionInKey - fromHalfsteps[degree];
+			int targetDegree = degree + steps;
+			int octaveShift = (int)Math.floor((double)targetDegree / degreeCount);
+			targetDegree -= octaveShift * degreeCount;
+			transposition.setMapping(value, value - positionInKey + rootShift + octaveShift * 12 + toHalfsteps[targetDegree] + chromaticOffset);
+		}
+		return transposition;
+	}
+	
+	private static int[] getHalfstepsWithinOctave(Scale scale) {
+		int[] halfsteps = scale.getIntervals().toHalfstepArray();
+		for (int i=0; i < halfsteps.length; i++) {
+			if ((halfsteps[i] < 0) || (halfsteps[i] >= 12) || ((i > 0) && (halfsteps[i] <= halfsteps[i-1]))) {
+				throw new IllegalArgumentException("Transposition needs a scale whose notes rise within one octave, but the scale has '"+scale.getIntervals()+"'");
+			}
+		}
+		return halfsteps;
+	}
+	
+	private void setMapping(int value, int transposedValue) {
+		noteMap[value] = (byte)Math.max(0, Math.min(127, transposedValue));
+	}
+	
+	public byte transpose(byte noteValue) {
+		return noteMap[noteValue];
+	}
+	
+	/** Transposes the given range of note values in place */
+	public void transpose(byte[] noteValues, int offset, int length) {
+		for (int i=offset; i < offset + length; i++) {
+			noteValues[i] = noteMap[noteValues[i]];
+		}
+	}
+	
+	/** Returns a transposed copy of the note. Rests and percussion notes are not changed. */
+	public Note transpose(Note note) {
+		if (note.isRest() || note.isPercussionNote()) {
+			return note;
+		}
+		return new Note(note).setValue(noteMap[note.getValue()]).setOriginalString(null);
+	}
+	
+	/** 
+	 * Returns the transposed chord. A chromatic transposition keeps the chord's intervals and inversion;
+	 * other transpositions may change the chord's quality, so the chord is identified again from its
+	 * transposed notes, and null is returned if the new notes are not a known chord. 
+	 */
+	public Chord transpose(Chord chord) {
+		if (isChromatic()) {
+			Note root = new Note(chord.getRoot()).setValue(noteMap[chord.getRoot().getValue()]).setOriginalString(null);
+			return new Chord(root, chord.getIntervals()).setInversion(chord.getInversion());
+		}
+		byte[] values = chord.getNoteValues();
+		transpose(values, 0, values.length);
+		Chord transposed = Chord.identify(values, values.length);
+		if (transposed == null) {
+			return null;
+		}
+		transposed.getRoot().useSameDurationAs(chord.getRoot());
+		transposed.getRoot().setOnVelocity(chord.getRoot().getOnVelocity());
+		transposed.getRoot().setOffVelocity(chord.getRoot().getOffVelocity());
+		return transposed;
+	}
+	
+	/** Returns true if every note moves by the same number of halfsteps */
+	public boolean isChromatic() {
+		return targetKey == null;
+	}
+	
+	/** Returns the number of halfsteps the root of the key moves by */
+	public int getHalfsteps() {
+		return this.halfsteps;
+	}
+	
+	/** Returns the key that transposed notes are in, or null for a chromatic transposition */
+	public Key getTargetKey() {
+		return this.targetKey;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.theory;
+
+/**
+ * The frequency of each of the 128 MIDI note values, kept in a table so converting 
+ * between notes and frequencies needs no logarithms or powers. EQUAL_TEMPERAMENT is 
+ * the usual tuning with A5 (MIDI note 69) at 440 Hz; other reference frequencies and
+ * other divisions of the octave can be created.
+ * 
+ * Going from a frequency to a note is a binary search of the table, and the cents
+ * between the frequency and the note come from a short series that is exact to 
+ * double precision within a semitone of the note.
+ */
+public final class Tuning 
+{
+	public static final int NOTE_COUNT = 128;
+	public static final int REFERENCE_NOTE = 69;
+	public static final double DEFAULT_REFERENCE_FREQUENCY = 440.0;
+	public static final double CENTS_PER_OCTAVE = 1200.0;
+	private static final double LN_2 = Math.log(2.0);
+	private static final double MAX_SERIES_RATIO = 0.06;
+	
+	public static final Tuning EQUAL_TEMPERAMENT = createEqualTemperament(DEFAULT_REFERENCE_FREQUENCY);
+	
+	private final double[] frequencies;
+	
+	private Tuning(double[] frequencies) {
+		this.frequencies = frequencies;
+	}
+	
+	/** Creates an equal-tempered tuning with the given frequency for A5 (MIDI note 69) */
+	public static Tuning createEqualTemperament(double referenceFrequency) {
+		double[] centsAboveC = new double[12];
+		for (int i=0; i < 12; i++) {
+			centsAboveC[i] = i * 100.0;
+		}
+		return createFromCents(referenceFrequency, centsAboveC);
+	}
+	
+	/**
+	 * Creates a tuning from the cents above C of each of the 12 notes in an octave,
+	 * like { 0, 111.73, 203.91, ... } for a just intonation. Each octave repeats the
+	 * same cents, and A5 (MIDI note 69) sounds at the given reference frequency.
+	 * 
+	 * @param centsAboveC 12 increasing values, starting at 0 and below 1200
+	 */
+	public static Tuning createFromCents(double referenceFrequency, double[] centsAboveC) {
+		if (centsAboveC.length != 12) {
+			throw new IllegalArgumentException("A tuning needs cents for 12 notes, but "+centsAboveC.length+" were given");
+		}
+		for (int i=0; i < 12; i++) {
+			if ((centsAboveC[i] < 0.0) || (centsAboveC[i] >= CENTS_PER_OCTAVE) || ((i > 0) && (centsAboveC[i] <= centsAboveC[i-1]))) {
+				throw new IllegalArgumentException("The cents for a tuning must increase from 0 to less than 1200, but note "+i+" has "+centsAboveC[i]);
+			}
+		}
+		if (referenceFrequency <= 0.0) {
+			throw new IllegalArgumentException("The reference frequency must be greater than 0, but was "+referenceFrequency);
+		}
+		
+		double referenceCents = getCents(REFERENCE_NOTE, centsAboveC);
+		double[] frequencies = new double[NOTE_COUNT];
+		for (int i=0; i < NOTE_COUNT; i++) {
+			frequencies[i] = (i == REFERENCE_NOTE) ? referenceFrequency : referenceFrequency * Math.pow(2.0, (getCents(i, centsAboveC) - referenceCents) / CENTS_PER_OCTAVE);
+		}
+		return new Tuning(frequencies);
+	}
+	
+	private static double getCents(int noteValue, double[] centsAboveC) {
+		return (noteValue / 12) * CENTS_PER_OCTAVE + centsAboveC[noteValue % 12];
+	}
+	
+	public double getFrequency(int noteValue) {
+		return frequencies[noteValue];
+	}
+	
+	/** Puts the frequency of each note value into the frequencies array, which must be at least as long as noteValues */
+	public void getFrequencies(byte[] noteValues, double[] frequencies) {
+		for (int i=0; i < noteValues.length; i++) {
+			frequencies[i] = this.frequencies[noteValues[i]];
+		}
+	}
+	
+	/** Returns the note value whose frequency is nearest, in cents, to the given frequency */
+	public int getNearestNoteValue(double frequency) {
+		int low = 0;
+		int high = NOTE_COUNT;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (frequencies[mid] < frequency) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		if (low == 0) {
+			return 0;
+		}
+		if (low == NOTE_COUNT) {
+			return NOTE_COUNT - 1;
+		}
+		// The midpoint in cents between two notes is the geometric mean of their frequencies
+		return (frequency * frequency < frequencies[low-1] * frequencies[low]) ? low - 1 : low;
+	}
+	
+	/** Returns the cents from the given note to the given frequency; negative if the frequency is below the note */
+	public double getCentsFromNote(double frequency, int noteValue) {
+		double ratio = frequency / frequencies[noteValue];
+		double x = ratio - 1.0;
+		if (Math.abs(x) >= MAX_SERIES_RATIO) {
+			return CENTS_PER_OCTAVE * Math.log(ratio) / LN_2;
+		}
+		// ln(1+x) = 2 atanh(x/(2+x)); the series converges quickly because x is small
+		double u = x / (2.0 + x);
+		double u2 = u * u;
+		double ln = 2.0 * u * (1.0 + u2 * (1.0/3.0 + u2 * (1.0/5.0 + u2 * (1.0/7.0 + u2 / 9.0))));
+		return CENTS_PER_OCTAVE * ln / LN_2;
+	}
+	
+	/** 
+	 * Finds the nearest note, and the cents from that note, for each of the given frequencies.
+	 * The noteValues and centsFromNotes arrays must be at least as long as the frequencies array. 
+	 */
+	public void getNearestNoteValues(double[] frequencies, int[] noteValues, double[] centsFromNotes) {
+		for (int i=0; i < frequencies.length; i++) {
+			noteValues[i] = getNearestNoteValue(frequencies[i]);
+			centsFromNotes[i] = getCentsFromNote(frequencies[i], noteValues[i]);
+		}
+	}
+}
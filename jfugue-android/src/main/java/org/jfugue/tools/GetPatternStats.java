@@ -29,7 +29,6 @@ import org.staccato.StaccatoParser;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -52,8 +51,6 @@ public class GetPatternStats {
     private List<Number> interOI = new ArrayList<Number>();
     private List<Number> durations = new ArrayList<Number>();
     private List<Number> restDurations = new ArrayList<Number>();
-    private List<Byte> attacks = new ArrayList<Byte>();
-    private List<Byte> decays = new ArrayList<Byte>();
     private List<TimeEvent> musicEvents= new ArrayList<TimeEvent>();
     private int rhythm, measures = 0;
     private double tickPos = 0;
@@ -76,6 +73,7 @@ public class GetPatternStats {
         sp.addParserListener(l);
         sp.parse(pattern.toString());   
         processEvents();
+        musicEvents.clear();
     }
     
    /** Parses MIDI file to calculate statistics for all descriptors
@@ -102,8 +100,6 @@ public class GetPatternStats {
         interOI.clear();
         durations.clear();
         restDurations.clear();
-        attacks.clear();
-        decays.clear();
         musicEvents.clear();
         measures = 0;
         rhythm = 0;
@@ -273,173 +269,39 @@ public class GetPatternStats {
               }}});
    }
     
-    /** Checks pitch value of note against Key Signature to determine whether value is "non-diatonic"
-     * 
-     * @param note The note to be checked
-     * @return True if note is non-diatonic
-     */
-    private boolean checkHarmonics(Note note){ 
-        
-        List keyScale;
-        List<List> majors = new ArrayList<List>();
-        List<List> minors = new ArrayList<List>();
-        majors.add(Arrays.asList(0,2,4,5,7,9,11));   //C D E F G A B no flats or sharps
-        majors.add(Arrays.asList(1,3,5,5,8,10,0));   //Db Eb F Gb Ab Bb C 5 flats //C# D# E# F# G# A# B# 7 sharps     
-        majors.add(Arrays.asList(2,4,6,7,9,11,1 ));  //D E F# G A B C# 2 sharps
-        majors.add(Arrays.asList(3,4,7,8,10,0,2));   //Eb F G Ab Bb C	D 3 flats
-        majors.add(Arrays.asList(4,6,8,9,11,1,3));   //E F# G# A B C# D# 4 sharps
-        majors.add(Arrays.asList(5,7,9,10,0,1,4));   //F G A Bb C D E 1 flat
-        majors.add(Arrays.asList(6,8,10,11,1,3,5));  //Gb Ab Bb Cb Db Eb F 6 flats //F# G# A# B C# D# E# 6 sharps      
-        majors.add(Arrays.asList(7,9,11,0,2,4,6));   //G A B C D E F# 1 sharp
-        majors.add(Arrays.asList(8,10,0,1,3,5,7));   //Ab Bb C Db Eb F G 4 flats
-        majors.add(Arrays.asList(9,11,1,2,4,6,8));   //A B C# D E F# G# 3 sharps
-        majors.add(Arrays.asList(10,0,2,3,5,7,9));   //Bb C D Eb F G A 2 flats 
-        majors.add(Arrays.asList(11,1,3,4,6,8,10));  //Cb Db Eb Fb Gb Ab Bb 7 flats //B C# D# E F# G# A# 5 sharps        
-        
-        minors.add(Arrays.asList(3,4,7,8,10,0,2));   //C D Eb F G Ab Bb 3 flats
-        minors.add(Arrays.asList(4,6,8,9,11,1,3));   // C# D# E F# G# A B 4 sharps
-        minors.add(Arrays.asList(5,7,9,10,0,1,4));   // D E F G A Bb C 1 flat
-        minors.add(Arrays.asList(6,8,10,11,1,3,5));  //Eb F Gb Ab Bb Cb Db 6 flats /D# E# F# G# A# B C# 6 sharps
-        minors.add(Arrays.asList(7,9,11,0,2,4,6));   // E F# G A B C D 1 sharp
-        minors.add(Arrays.asList(8,10,0,1,3,5,7));   //F G Ab Bb C Db Eb 4 flats
-        minors.add(Arrays.asList(9,11,1,2,4,6,8));   //F# G# A	B C# D E 3 sharps
-        minors.add(Arrays.asList(10,0,2,3,5,7,9));   // G A Bb C D Eb F	2 flats
-        minors.add(Arrays.asList(11,1,3,4,6,8,10));  //G# A# B C# D# E F# 5 sharps /Ab Bb Cb Db Eb Fb Gb 7 flats 
-        minors.add(Arrays.asList(0,2,4,5,7,9,11));   // A B C D E F G no flats or sharps 
-        minors.add(Arrays.asList(1,3,5,5,8,10,0));   //Bb C Db Eb F Gb Ab 5 flats /A# B# C# D# E# F# G# 7 sharps  
-        minors.add(Arrays.asList(2,4,6,7,9,11,1 ));  //B C# D E F# G A 2 sharps 
-       
-        if (key.getScale().getMajorOrMinorIndicator()==0){ //0 for major
-            keyScale = majors.get(reduceValue(key.getRoot().getValue()));         
-        }
-        else{
-            keyScale = minors.get(reduceValue(key.getRoot().getValue())); 
-        }
-        if (!keyScale.contains(reduceValue(note.getValue()))){
-            return true;
-         } 
-        
-        return false;
-    }
-    
-    /** Reduces a note value (0-128) to its equivalent in the lowest octave.
-     * 
-     * @param v The note value to be reduced
-     * @return  The reduced value
-     */
-    private int reduceValue(int v) {
-        return v % 12;
-    }
-    
-    /** Checks the degree of non-diatonics and adds the degree to list
-     * 
-     * @param n The note to have it's value checked
-     */
-    private void checkDegree(Number n){
-        Integer rootValue = reduceValue(key.getRoot().getValue());
-        int noteValue = n.intValue();   
-        //degrees are: 0: ♭II, 1: ♭III (♮III for minor key), 2: ♭V, 3: ♭VI, 4: ♭VII.
-        if (noteValue < rootValue){
-            noteValue += 12;
-        }
-        int difference = noteValue - rootValue;
-        switch (difference){
-            case 0: case 1: 
-                degreeNonDiatonic.add(0);
-                break;
-            case 2: case 3: case 4:
-                degreeNonDiatonic.add(1);
-                break;
-            case 5: case 6:
-                degreeNonDiatonic.add(2);
-                break;
-            case 7: case 8:
-                degreeNonDiatonic.add(3);
-                break;
-            case 9: case 10: case 11:
-                degreeNonDiatonic.add(4);
-                break;
-            default:
-                break;
-        }
-                             
-    }
-    
     /** Process all events in chronological order.
      *   - add pitch, duration, etc. to lists for further statistical processing
      */
     private void processEvents(){
         sortTimeEvents();
-        double lastTime = 0;
-        double ioi = 0.0;
-        int ticks = 0;
-        byte interval = 60; 
-        sortTimeEvents();
-        
-        //Find first note event and get first stats for relative calculations
-        for (TimeEvent t : musicEvents){
-            if (t.getEvent() instanceof Note || t.getEvent() instanceof org.jfugue.theory.Chord){
-                Note note = (Note)t.getEvent(); 
-                interval = note.getValue(); //set interval to fist note value
-                lastTime = t.time; //get first time 
-                durations.add(note.getDuration()); //add first duration 
-                ioi = (int)convertDecimalToTicks(note.getDuration());
-                break;
+        PatternStatsAccumulator accumulator = new PatternStatsAccumulator() {
+            @Override
+            protected void valueAdded(Descriptor descriptor, double value) {
+                switch (descriptor) {
+                    case PITCH: pitches.add((int)value); break;
+                    case DURATION: durations.add(value); break;
+                    case REST_DURATION: restDurations.add(value); break;
+                    case INTERVAL: intervals.add((int)value); break;
+                    case INTER_ONSET_INTERVAL: interOI.add(value); break;
+                    case NON_DIATONIC_DEGREE: degreeNonDiatonic.add((int)value); break;
+                    default: break;
+                }
             }
-        }    
+        };
+        accumulator.setKey(key);
         for (TimeEvent t : musicEvents){
-            Note note;
-            //If event is note, collect stats
-            if (t.getEvent() instanceof Note || t.getEvent() instanceof org.jfugue.theory.Chord){
-                if (t.getEvent() instanceof org.jfugue.theory.Chord){
-                    org.jfugue.theory.Chord c = (org.jfugue.theory.Chord)t.getEvent();
-                    note = c.getRoot();
-                }
-                else{
-                    note = (Note)t.getEvent();
-                }
-                int noteTicks = (int)convertDecimalToTicks(note.getDuration());
-                if (!note.isRest()){
-                    pitches.add(note.getValue()); 
-                    attacks.add(note.getOnVelocity());
-                    decays.add(note.getOffVelocity());
-                    //check for non-diatonics
-                    if (checkHarmonics(note)){
-                        checkDegree(reduceValue(note.getValue()));
-                    }
-                    //check for syncopations
-                    if (ticks%128 > 15 && ticks%128 < 112
-                        && noteTicks > (142 - ticks%128)){ //16 TICKS IS 32ND NOTE 16+128 = 142
-                        rhythm++;
-                    } 
-                    
-                    ticks = ticks + noteTicks;
-                    interval = (byte)(Math.abs(note.getValue() - interval));
-                    intervals.add(interval);
-                    interval = note.getValue();
-                    if (lastTime != t.time) {
-                        durations.add(note.getDuration()); //ADD NOTE IF IT IS NOT SYNCRONOUS 
-                        interOI.add(ioi);
-                        ioi = noteTicks;
-                    }
-                    lastTime = t.time;
-                }
-                else {
-                    ioi = ioi + noteTicks;
-                    ticks = ticks + noteTicks;
-                    lastTime = t.time;
-                    if (note.getDuration() > .0615){
-                        restDurations.add(note.getDuration());
-                    } 
-               }
+            if (t.getEvent() instanceof Note){
+                accumulator.addNote(t.time, (Note)t.getEvent());
+            }
+            else if (t.getEvent() instanceof org.jfugue.theory.Chord){
+                accumulator.addNote(t.time, ((org.jfugue.theory.Chord)t.getEvent()).getRoot());
             }
             else if (t.getEvent() instanceof Key){
                 key = (Key)t.getEvent();
+                accumulator.setKey(key);
             }   
         } 
-        if (intervals.size() > 0){
-        intervals.remove(0); //remove first interval (first note value)
-        }     
+        rhythm += accumulator.getSyncopationCount();
     }
     
     private long convertBeatsToTicks(double time) {
@@ -451,64 +313,15 @@ public class GetPatternStats {
         double wholeNoteinTicks = 512; //128*4
         return decimalDuration * wholeNoteinTicks;    
     }
-        
-    private double calcAverage(List<Number> list){
-        //AVERAGES: computed as (mean-min)
-        if (calcN(list)==0){
-            return 0;
-        }
-        Double average;
-        Double total = 0.0;
-        Double min = list.get(0).doubleValue();
-        for (Number n : list){
-            Double d = n.doubleValue();
-            total = total + d;
-            if(min > d){
-                min = d;
-        }}
-       average = (total/list.size()) - min; 
-       return average; 
-    }    
-        
-    private double calcSD(List<Number> list){
-        if (calcN(list)==0){
-            return 0;
-        }
-        double average;
-        List<Number> squares = new ArrayList<Number>();
-        
-        average = computeAverage(list);
-        for (Number n : list){       
-            squares.add(Math.pow(n.doubleValue()-average, 2));
-        }
-        average = Math.sqrt(computeAverage(squares));
-        return average;
-    }    
     
-    private double calcRange(List<Number> list){
-        if (calcN(list)==0){
-            return 0;
-        }
-        Double max = list.get(0).doubleValue();
-        Double min = list.get(0).doubleValue();
-        Double range;
+    private RunningStats calcStats(List<Number> list){
+        RunningStats stats = new RunningStats();
         for (Number n : list){
-            double d = n.doubleValue();
-            if(min > d){
-                min = d;
-            }
-            if(max < d){
-                max = d;
-        }}
-        range = max - min;
-        return range;
-    }
-    
-    private int  calcN(List<Number> list){
-        int n = list.size();
-        return n;
+            stats.add(n.doubleValue());
+        }
+        return stats;
     }
-
+        
     private double computeAverage(List<Number> list){
         Double total = 0.0;
         for (Number n : list){
@@ -566,17 +379,15 @@ public class GetPatternStats {
        private double average;
       
       private Stats(List<Number> list){
-           n = calcN(list);
-           range = calcRange(list);
-           sd = calcSD(list);
-           average = calcAverage(list);
+           this(calcStats(list));
        }
        
-       private Stats(List<Number> list1, List<Number> list2){
-           n = calcN(list1);
-           range = calcRange(list1);
-           sd = calcSD(list1);
-           average = calcAverage(list2);
+      private Stats(RunningStats stats){
+           //AVERAGES: computed as (mean-min)
+           n = (int)stats.getN();
+           range = stats.getRange();
+           sd = stats.getSD();
+           average = (n == 0) ? 0 : stats.getMean() - stats.getMin();
        }
        
        public int getN(){
@@ -623,46 +434,32 @@ public class GetPatternStats {
 
     @Override
     public void onTrackChanged(byte t) {
-        musicEvents.add(new TimeEvent<Byte>(tickPos, t));
     }
 
     @Override
     public void onLayerChanged(byte layerNum) {
-        musicEvents.add(new TimeEvent<Byte>(tickPos, layerNum));
         tickPos = 0;
     }
 
     @Override
     public void onInstrumentParsed(byte i) {
-       musicEvents.add(new TimeEvent<Byte>(tickPos, i));
     }
 
     @Override
     public void onTempoChanged(int tBPM) {  
-        musicEvents.add(new TimeEvent<Integer>(tickPos, tBPM));
     }
 
     @Override
     public void onKeySignatureParsed(byte keyB, byte scale) {    
-        Key k;
-        String maj = ("maj"), min = ("min");
-        if (scale == 0){
-            k = new Key(new Note(keyB).toString() + maj);
-        }
-        else{
-            k = new Key(new Note(keyB).toString() + min);
-        }
-        musicEvents.add(new TimeEvent<Key>(tickPos, k));
+        musicEvents.add(new TimeEvent<Key>(tickPos, PatternStatsAccumulator.createKey(keyB, scale)));
     }
 
     @Override
     public void onTimeSignatureParsed(byte bDuration, byte bNumber) {
-        musicEvents.add(new TimeEvent<Byte[]>(tickPos, new Byte[]{bDuration,bNumber}));
     }
 
     @Override
     public void onBarLineParsed(long m) {     
-        musicEvents.add(new TimeEvent<Long>(tickPos, m));
         ++measures;
     }
 
@@ -683,17 +480,14 @@ public class GetPatternStats {
 
     @Override
     public void onPitchWheelParsed(byte b, byte b1) {
-        musicEvents.add(new TimeEvent<Byte[]>(tickPos, new Byte[]{b,b1}));
     }
 
     @Override
     public void onChannelPressureParsed(byte b) {
-       musicEvents.add(new TimeEvent<Byte>(tickPos, b));
     }
 
     @Override
     public void onPolyphonicPressureParsed(byte b, byte b1) {
-        musicEvents.add(new TimeEvent<Byte[]>(tickPos, new Byte[]{b,b1}));
     }
 
     @Override
@@ -716,22 +510,18 @@ public class GetPatternStats {
 
     @Override
     public void onControllerEventParsed(byte b, byte b1) {
-        musicEvents.add(new TimeEvent<Byte[]>(tickPos, new Byte[]{b,b1}));
     }
 
     @Override
     public void onLyricParsed(String lyric) {
-        musicEvents.add(new TimeEvent<String>(tickPos, lyric));
     }
 
     @Override
     public void onMarkerParsed(String string) {
-        musicEvents.add(new TimeEvent<String>(tickPos, string));
     }
 
     @Override
     public void onFunctionParsed(String string, Object o) {
-        musicEvents.add(new TimeEvent<Object>(tickPos, o));
     }
     
     @Override
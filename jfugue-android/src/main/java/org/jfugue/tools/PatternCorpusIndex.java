@@ -0,0 +1,386 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+import org.jfugue.midi.MidiParser;
+import org.jfugue.parser.ParserException;
+import org.jfugue.pattern.PatternProducer;
+import org.jfugue.util.ParallelTasks;
+import org.staccato.StaccatoParser;
+
+import jp.kshoji.javax.sound.midi.InvalidMidiDataException;
+import jp.kshoji.javax.sound.midi.MidiSystem;
+import jp.kshoji.javax.sound.midi.Sequence;
+
+/**
+ * An index of a corpus of music, like a library of MIDI files, for finding the pieces 
+ * that are most similar to a given piece. Each piece is described by a feature vector of
+ * FEATURE_COUNT numbers made from the statistics of a PatternStatsAccumulator: histograms 
+ * of pitch classes, intervals, durations, inter-onset intervals and non-diatonic degrees, 
+ * each as a fraction of the notes, and a few overall measures. Similarity is the Euclidean 
+ * distance between feature vectors.
+ * 
+ * Pieces are analyzed in parallel when the index is created, and the index can be saved to
+ * a compact file and loaded again, so a corpus only needs to be analyzed once.
+ * 
+ * @see PatternStatsAccumulator
+ */
+public class PatternCorpusIndex 
+{
+	public static final int FEATURE_COUNT = 48;
+	
+	private static final int MAGIC_NUMBER = 0x4A464349; // "JFCI"
+	private static final int FILE_VERSION = 1;
+	
+	private static final int PITCH_CLASS_OFFSET = 0;
+	private static final int INTERVAL_OFFSET = 12;
+	private static final int INTERVAL_BINS = 13;
+	private static final int DURATION_OFFSET = INTERVAL_OFFSET + INTERVAL_BINS;
+	private static final int DURATION_BINS = 7;
+	private static final int INTER_ONSET_OFFSET = DURATION_OFFSET + DURATION_BINS;
+	private static final int NON_DIATONIC_OFFSET = INTER_ONSET_OFFSET + DURATION_BINS;
+	private static final int SUMMARY_OFFSET = NON_DIATONIC_OFFSET + 5;
+	
+	private static Logger logger = Logger.getLogger("org.jfugue");
+	
+	private final String[] names;
+	private final float[] features;
+	
+	private PatternCorpusIndex(String[] names, float[] features) {
+		this.names = names;
+		this.features = features;
+	}
+	
+	/**
+	 * Creates an index of the given patterns, analyzing them on the given executor, or on 
+	 * the calling thread if the executor is null. Each pattern is known in the index by the 
+	 * name at the same position.
+	 */
+	public static PatternCorpusIndex create(String[] names, final PatternProducer[] patterns, ExecutorService executor) {
+		if (names.length != patterns.length) {
+			throw new IllegalArgumentException("PatternCorpusIndex needs one name for each pattern, but was given "+names.length+" names and "+patterns.length+" patterns");
+		}
+		final float[] features = new float[patterns.length * FEATURE_COUNT];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(patterns.length);
+		for (int i=0; i < patterns.length; i++) {
+			final int index = i;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					System.arraycopy(getFeatures(patterns[index]), 0, features, index * FEATURE_COUNT, FEATURE_COUNT);
+					return null;
+				}
+			});
+		}
+		ParallelTasks.runAll(tasks, executor);
+		return new PatternCorpusIndex(names.clone(), features);
+	}
+	
+	/**
+	 * Creates an index of the given MIDI files, named by their paths, analyzing them on the 
+	 * given executor, or on the calling thread if the executor is null. Files that can not be 
+	 * read or analyzed are logged and left out of the index.
+	 */
+	public static PatternCorpusIndex create(final File[] midiFiles, ExecutorService executor) {
+		final float[][] fileFeatures = new float[midiFiles.length][];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(midiFiles.length);
+		for (int i=0; i < midiFiles.length; i++) {
+			final int index = i;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					try {
+						fileFeatures[index] = getFeatures(midiFiles[index]);
+					} catch (IOException e) {
+						logger.warning("Could not read "+midiFiles[index]+" into the corpus index: "+e);
+					} catch (InvalidMidiDataException e) {
+						logger.warning("Could not read "+midiFiles[index]+" into the corpus index: "+e);
+					} catch (RuntimeException e) {
+						// One malformed file should not stop the rest of the corpus from being indexed
+						logger.warning("Could not analyze "+midiFiles[index]+" for the corpus index: "+e);
+					}
+					return null;
+				}
+			});
+		}
+		ParallelTasks.runAll(tasks, executor);
+		
+		List<String> names = new ArrayList<String>(midiFiles.length);
+		float[] features = new float[midiFiles.length * FEATURE_COUNT];
+		for (int i=0; i < midiFiles.length; i++) {
+			if (fileFeatures[i] != null) {
+				System.arraycopy(fileFeatures[i], 0, features, names.size() * FEATURE_COUNT, FEATURE_COUNT);
+				names.add(midiFiles[i].getPath());
+			}
+		}
+		return new PatternCorpusIndex(names.toArray(new String[names.size()]), Arrays.copyOf(features, names.size() * FEATURE_COUNT));
+	}
+	
+	public static float[] getFeatures(PatternProducer patternProducer) {
+		StaccatoParser parser = new StaccatoParser();
+		FeatureAccumulator accumulator = new FeatureAccumulator();
+		parser.addParserListener(accumulator);
+		try {
+			parser.parse(patternProducer);
+		} catch (ParserException e) {
+			throw new RuntimeException(e);
+		}
+		return accumulator.getFeatures();
+	}
+	
+	public static float[] getFeatures(Sequence sequence) {
+		MidiParser parser = new MidiParser();
+		FeatureAccumulator accumulator = new MidiFeatureAccumulator();
+		parser.addParserListener(accumulator);
+		parser.parse(sequence);
+		return accumulator.getFeatures();
+	}
+	
+	public static float[] getFeatures(File midiFile) throws IOException, InvalidMidiDataException {
+		InputStream in = new BufferedInputStream(new FileInputStream(midiFile));
+		try {
+			return getFeatures(MidiSystem.getSequence(in));
+		} finally {
+			in.close();
+		}
+	}
+	
+	public int size() {
+		return names.length;
+	}
+	
+	public String getName(int index) {
+		return names[index];
+	}
+	
+	public float[] getFeatures(int index) {
+		return Arrays.copyOfRange(features, index * FEATURE_COUNT, (index + 1) * FEATURE_COUNT);
+	}
+	
+	/** Returns the k pieces most similar to the given pattern, most similar first */
+	public Match[] findNearest(PatternProducer patternProducer, int k) {
+		return findNearest(getFeatures(patternProducer), k);
+	}
+	
+	/** Returns the k pieces whose features are nearest to the given features, nearest first; if k is not positive, no pieces are returned */
+	public Match[] findNearest(float[] query, int k) {
+		if (query.length != FEATURE_COUNT) {
+			throw new IllegalArgumentException("A PatternCorpusIndex query needs "+FEATURE_COUNT+" features, but was given "+query.length);
+		}
+		k = Math.min(k, names.length);
+		if (k <= 0) {
+			return new Match[0];
+		}
+		int[] bestIndexes = new int[k];
+		float[] bestDistances = new float[k];
+		int found = 0;
+		for (int i=0; i < names.length; i++) {
+			// Stop adding to the distance once it is too far to be among the best
+			float limit = (found < k) ? Float.MAX_VALUE : bestDistances[k-1];
+			float distance = 0.0f;
+			int offset = i * FEATURE_COUNT;
+			for (int f=0; (f < FEATURE_COUNT) && (distance < limit); f++) {
+				float difference = features[offset + f] - query[f];
+				distance += difference * difference;
+			}
+			if (distance >= limit) {
+				continue;
+			}
+			
+			int position = (found < k) ? found++ : k-1;
+			while ((position > 0) && (bestDistances[position-1] > distance)) {
+				bestDistances[position] = bestDistances[position-1];
+				bestIndexes[position] = bestIndexes[position-1];
+				position--;
+			}
+			bestDistances[position] = distance;
+			bestIndexes[position] = i;
+		}
+		
+		Match[] matches = new Match[found];
+		for (int i=0; i < found; i++) {
+			matches[i] = new Match(bestIndexes[i], names[bestIndexes[i]], (float)Math.sqrt(bestDistances[i]));
+		}
+		return matches;
+	}
+	
+	public void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC_NUMBER);
+			out.writeInt(FILE_VERSION);
+			out.writeInt(FEATURE_COUNT);
+			out.writeInt(names.length);
+			for (String name : names) {
+				out.writeUTF(name);
+			}
+			for (float feature : features) {
+				out.writeFloat(feature);
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	public static PatternCorpusIndex load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if ((in.readInt() != MAGIC_NUMBER) || (in.readInt() != FILE_VERSION)) {
+				throw new IOException(file+" is not a PatternCorpusIndex file that this version can read");
+			}
+			if (in.readInt() != FEATURE_COUNT) {
+				throw new IOException(file+" was made with a different number of features");
+			}
+			String[] names = new String[in.readInt()];
+			for (int i=0; i < names.length; i++) {
+				names[i] = in.readUTF();
+			}
+			float[] features = new float[names.length * FEATURE_COUNT];
+			for (int i=0; i < features.length; i++) {
+				features[i] = in.readFloat();
+			}
+			return new PatternCorpusIndex(names, features);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/** One result of a similarity query */
+	public static final class Match {
+		private final int index;
+		private final String name;
+		private final float distance;
+		
+		private Match(int index, String name, float distance) {
+			this.index = index;
+			this.name = name;
+			this.distance = distance;
+		}
+		
+		/** Returns the position of the piece in the index */
+		public int getIndex() {
+			return this.index;
+		}
+		
+		public String getName() {
+			return this.name;
+		}
+		
+		/** Returns the distance between the piece's features and the query's; 0 means they are the same */
+		public float getDistance() {
+			return this.distance;
+		}
+		
+		@Override
+		public String toString() {
+			return name+" ("+distance+")";
+		}
+	}
+	
+	/** A FeatureAccumulator for the MIDI parser, which fires key signatures as the data of MIDI key signature messages */
+	private static class MidiFeatureAccumulator extends FeatureAccumulator {
+		@Override
+		public void onKeySignatureParsed(byte key, byte scale) { 
+			setKey(createKeyFromMidiKeySignature(key, scale));
+		}
+	}
+	
+	/** Adds histograms of durations and inter-onset intervals to the statistics */
+	private static class FeatureAccumulator extends PatternStatsAccumulator {
+		private final long[] durationHistogram = new long[DURATION_BINS];
+		private final long[] interOnsetHistogram = new long[DURATION_BINS];
+		
+		@Override
+		protected void valueAdded(Descriptor descriptor, double value) {
+			if (descriptor == Descriptor.DURATION) {
+				durationHistogram[getDurationBin(value)]++;
+			} else if (descriptor == Descriptor.INTER_ONSET_INTERVAL) {
+				// Inter-onset intervals are in ticks of 1/512 of a whole note
+				interOnsetHistogram[getDurationBin(value / 512.0)]++;
+			}
+		}
+		
+		/** Bins are 32nd notes or shorter, 16th, 8th, quarter, half, whole, and longer than a whole note */
+		private static int getDurationBin(double duration) {
+			if (duration <= 0.0) {
+				return 0;
+			}
+			int bin = (int)Math.round(Math.log(duration) / Math.log(2.0)) + 5;
+			return Math.max(0, Math.min(DURATION_BINS - 1, bin));
+		}
+		
+		public float[] getFeatures() {
+			float[] retVal = new float[FEATURE_COUNT];
+			long[] pitches = getPitchHistogram();
+			for (int i=0; i < pitches.length; i++) {
+				retVal[PITCH_CLASS_OFFSET + (i % 12)] += pitches[i];
+			}
+			long[] intervals = getIntervalHistogram();
+			for (int i=0; i < intervals.length; i++) {
+				retVal[INTERVAL_OFFSET + Math.min(i, INTERVAL_BINS - 1)] += intervals[i];
+			}
+			for (int i=0; i < DURATION_BINS; i++) {
+				retVal[DURATION_OFFSET + i] = durationHistogram[i];
+				retVal[INTER_ONSET_OFFSET + i] = interOnsetHistogram[i];
+			}
+			long[] degrees = getNonDiatonicDegreeHistogram();
+			for (int i=0; i < degrees.length; i++) {
+				retVal[NON_DIATONIC_OFFSET + i] = degrees[i];
+			}
+			normalize(retVal, PITCH_CLASS_OFFSET, 12, getNoteCount());
+			normalize(retVal, INTERVAL_OFFSET, INTERVAL_BINS, getStats(Descriptor.INTERVAL).getN());
+			normalize(retVal, DURATION_OFFSET, DURATION_BINS, getStats(Descriptor.DURATION).getN());
+			normalize(retVal, INTER_ONSET_OFFSET, DURATION_BINS, getStats(Descriptor.INTER_ONSET_INTERVAL).getN());
+			normalize(retVal, NON_DIATONIC_OFFSET, degrees.length, getNoteCount());
+			
+			long notesAndRests = getNoteCount() + getRestCount();
+			retVal[SUMMARY_OFFSET] = (notesAndRests == 0) ? 0.0f : (float)getRestCount() / notesAndRests;
+			retVal[SUMMARY_OFFSET + 1] = (getNoteCount() == 0) ? 0.0f : (float)getSyncopationCount() / getNoteCount();
+			retVal[SUMMARY_OFFSET + 2] = (float)(getStats(Descriptor.PITCH).getMean() / 128.0);
+			retVal[SUMMARY_OFFSET + 3] = (float)(getStats(Descriptor.PITCH).getSD() / 128.0);
+			return retVal;
+		}
+		
+		private static void normalize(float[] features, int offset, int count, long total) {
+			if (total == 0) {
+				return;
+			}
+			for (int i=offset; i < offset + count; i++) {
+				features[i] /= total;
+			}
+		}
+	}
+}
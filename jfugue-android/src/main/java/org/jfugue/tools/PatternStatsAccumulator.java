@@ -0,0 +1,336 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.tools;
+
+import java.util.Arrays;
+
+import org.jfugue.parser.ParserListenerAdapter;
+import org.jfugue.theory.Chord;
+import org.jfugue.theory.Intervals;
+import org.jfugue.theory.Key;
+import org.jfugue.theory.Note;
+import org.jfugue.theory.Scale;
+
+/**
+ * Computes the descriptors of GetPatternStats - pitch, duration, rest, interval, 
+ * inter-onset interval, non-diatonic and syncopation statistics - as parser events arrive,
+ * keeping only running totals and histograms, so the memory used does not grow with the 
+ * length of the music. 
+ * 
+ * Notes are taken in the order in which they arrive. For music in a single voice this is 
+ * the order in which they are played; GetPatternStats, which collects and sorts events 
+ * by time first, feeds its notes to this class in time order.
+ * 
+ * Accumulators filled by different workers, each from its own pieces of music, can be 
+ * combined with merge(). 
+ * 
+ * @see GetPatternStats
+ */
+public class PatternStatsAccumulator extends ParserListenerAdapter
+{
+	public enum Descriptor {
+		PITCH, DURATION, REST_DURATION, INTERVAL, INTER_ONSET_INTERVAL, NON_DIATONIC_DEGREE, ON_VELOCITY, OFF_VELOCITY;
+	}
+	
+	/** Rests of this duration or less are counted, but do not go into the rest duration statistics */
+	public static final double SHORTEST_COUNTED_REST = 0.0615;
+	
+	private static final int TICKS_PER_WHOLE_NOTE = 512;
+	
+	private final RunningStats[] stats = new RunningStats[Descriptor.values().length];
+	private final long[] pitchHistogram = new long[128];
+	private final long[] intervalHistogram = new long[128];
+	private final long[] nonDiatonicDegreeHistogram = new long[5];
+	private long notes;
+	private long rests;
+	private long measures;
+	private long syncopations;
+	
+	// State for the music being analyzed
+	private double tickPosition;
+	private int keyRoot;
+	private boolean isMinorKey;
+	private boolean hasFirstNote;
+	private boolean hasFirstInterval;
+	private double lastTime;
+	private double interOnsetTicks;
+	private int ticks;
+	private int previousValue;
+	
+	public PatternStatsAccumulator() {
+		for (int i=0; i < stats.length; i++) {
+			stats[i] = new RunningStats();
+		}
+		startMusic();
+	}
+	
+	/** 
+	 * Forgets where the previous music ended, so the next note is treated as the first note
+	 * of new music; the statistics collected so far are kept. This is called before parsing starts.
+	 */
+	public void startMusic() {
+		this.tickPosition = 0.0;
+		this.keyRoot = 0;
+		this.isMinorKey = false;
+		this.hasFirstNote = false;
+		this.hasFirstInterval = false;
+		this.lastTime = 0.0;
+		this.interOnsetTicks = 0.0;
+		this.ticks = 0;
+	}
+	
+	public void clear() {
+		for (RunningStats runningStats : stats) {
+			runningStats.clear();
+		}
+		Arrays.fill(pitchHistogram, 0L);
+		Arrays.fill(intervalHistogram, 0L);
+		Arrays.fill(nonDiatonicDegreeHistogram, 0L);
+		this.notes = 0;
+		this.rests = 0;
+		this.measures = 0;
+		this.syncopations = 0;
+		startMusic();
+	}
+	
+	/** Adds the statistics of another accumulator to this one */
+	public PatternStatsAccumulator merge(PatternStatsAccumulator other) {
+		for (int i=0; i < stats.length; i++) {
+			stats[i].merge(other.stats[i]);
+		}
+		addHistogram(pitchHistogram, other.pitchHistogram);
+		addHistogram(intervalHistogram, other.intervalHistogram);
+		addHistogram(nonDiatonicDegreeHistogram, other.nonDiatonicDegreeHistogram);
+		this.notes += other.notes;
+		this.rests += other.rests;
+		this.measures += other.measures;
+		this.syncopations += other.syncopations;
+		return this;
+	}
+	
+	private static void addHistogram(long[] histogram, long[] other) {
+		for (int i=0; i < histogram.length; i++) {
+			histogram[i] += other[i];
+		}
+	}
+	
+	public RunningStats getStats(Descriptor descriptor) {
+		return stats[descriptor.ordinal()];
+	}
+	
+	public long getNoteCount() {
+		return this.notes;
+	}
+	
+	public long getRestCount() {
+		return this.rests;
+	}
+	
+	public long getMeasureCount() {
+		return this.measures;
+	}
+	
+	/** 
+	 * Returns the number of syncopations: notes that begin between beats and last
+	 * beyond the next beat 
+	 */
+	public long getSyncopationCount() {
+		return this.syncopations;
+	}
+	
+	/** Returns how many times each note value was played; the returned array must not be changed */
+	public long[] getPitchHistogram() {
+		return this.pitchHistogram;
+	}
+	
+	/** Returns how many times each interval, in half-steps, was played; the returned array must not be changed */
+	public long[] getIntervalHistogram() {
+		return this.intervalHistogram;
+	}
+	
+	/** 
+	 * Returns how many non-diatonic notes of each degree were played, where the degrees are 
+	 * 0: bII, 1: bIII (natural III for minor keys), 2: bV, 3: bVI, 4: bVII; the returned array 
+	 * must not be changed 
+	 */
+	public long[] getNonDiatonicDegreeHistogram() {
+		return this.nonDiatonicDegreeHistogram;
+	}
+	
+	/** Called for each value that goes into the statistics; subclasses can use this to keep the values */
+	protected void valueAdded(Descriptor descriptor, double value) { }
+	
+	private void add(Descriptor descriptor, double value) {
+		stats[descriptor.ordinal()].add(value);
+		valueAdded(descriptor, value);
+	}
+	
+	/** Sets the key used to find non-diatonic notes */
+	public void setKey(Key key) {
+		this.keyRoot = key.getRoot().getValue() % 12;
+		this.isMinorKey = (key.getScale().getMajorOrMinorIndicator() == Scale.MINOR_INDICATOR);
+	}
+	
+	/** Adds a note or rest that starts at the given time, in ticks of 1/512 of a whole note */
+	public void addNote(double time, Note note) {
+		int noteTicks = (int)(note.getDuration() * TICKS_PER_WHOLE_NOTE);
+		if (!hasFirstNote) {
+			hasFirstNote = true;
+			previousValue = note.getValue();
+			lastTime = time;
+			add(Descriptor.DURATION, note.getDuration());
+			interOnsetTicks = noteTicks;
+		}
+		
+		if (!note.isRest()) {
+			notes++;
+			int value = note.getValue();
+			add(Descriptor.PITCH, value);
+			pitchHistogram[value & 0x7F]++;
+			add(Descriptor.ON_VELOCITY, note.getOnVelocity());
+			add(Descriptor.OFF_VELOCITY, note.getOffVelocity());
+			
+			// Check for non-diatonics
+			int pitchClass = value % 12;
+			int scaleMask = isMinorKey ? MINOR_SCALE_MASKS[keyRoot] : MAJOR_SCALE_MASKS[keyRoot];
+			if ((scaleMask & (1 << pitchClass)) == 0) {
+				int degree = NON_DIATONIC_DEGREES[(pitchClass - keyRoot + 12) % 12];
+				nonDiatonicDegreeHistogram[degree]++;
+				add(Descriptor.NON_DIATONIC_DEGREE, degree);
+			}
+			
+			// Check for syncopations; 16 ticks is a 32nd note, and 16+128 is 142
+			int beatTicks = ticks % 128;
+			if ((beatTicks > 15) && (beatTicks < 112) && (noteTicks > (142 - beatTicks))) {
+				syncopations++;
+			}
+			ticks += noteTicks;
+			
+			// The first interval is between the first note and itself, so it is not counted
+			int interval = Math.abs(value - previousValue);
+			if (hasFirstInterval) {
+				intervalHistogram[interval & 0x7F]++;
+				add(Descriptor.INTERVAL, interval);
+			}
+			hasFirstInterval = true;
+			previousValue = value;
+			
+			// Notes that start at the same time as the previous note are one onset
+			if (lastTime != time) {
+				add(Descriptor.DURATION, note.getDuration());
+				add(Descriptor.INTER_ONSET_INTERVAL, interOnsetTicks);
+				interOnsetTicks = noteTicks;
+			}
+			lastTime = time;
+		} else {
+			rests++;
+			interOnsetTicks += noteTicks;
+			ticks += noteTicks;
+			lastTime = time;
+			if (note.getDuration() > SHORTEST_COUNTED_REST) {
+				add(Descriptor.REST_DURATION, note.getDuration());
+			}
+		}
+	}
+	
+	public void addBarLine() {
+		measures++;
+	}
+	
+	@Override
+	public void beforeParsingStarts() { 
+		startMusic();
+	}
+	
+	@Override
+	public void onLayerChanged(byte layer) { 
+		tickPosition = 0.0;
+	}
+	
+	@Override
+	public void onKeySignatureParsed(byte key, byte scale) { 
+		setKey(createKey(key, scale));
+	}
+	
+	@Override
+	public void onBarLineParsed(long time) { 
+		addBarLine();
+	}
+	
+	@Override
+	public void onTrackBeatTimeRequested(double time) { 
+		tickPosition = (long)(time * TICKS_PER_WHOLE_NOTE);
+	}
+	
+	@Override
+	public void onNoteParsed(Note note) { 
+		addNote(tickPosition, note);
+		tickPosition += note.getDuration() * TICKS_PER_WHOLE_NOTE;
+	}
+	
+	@Override
+	public void onChordParsed(Chord chord) { 
+		addNote(tickPosition, chord.getRoot());
+		tickPosition += chord.getRoot().getDuration() * TICKS_PER_WHOLE_NOTE;
+	}
+	
+	/** 
+	 * Creates a Key from a key signature as the Staccato parser fires it: the position of the root
+	 * in the octave, and Scale.MAJOR_INDICATOR or Scale.MINOR_INDICATOR
+	 */
+	static Key createKey(byte key, byte scale) {
+		return new Key(new Note(key), (scale == Scale.MINOR_INDICATOR) ? Scale.MINOR : Scale.MAJOR);
+	}
+	
+	/** 
+	 * Creates a Key from a key signature as the MIDI parser fires it, which is the data of the MIDI
+	 * key signature message: the number of sharps (positive) or flats (negative), and 0 for a major
+	 * key or 1 for a minor key
+	 */
+	static Key createKeyFromMidiKeySignature(byte sharpsOrFlats, byte majorOrMinor) {
+		// Each sharp moves the major key up a fifth, and each flat moves it down a fifth; the relative minor is 9 half-steps above
+		int majorRoot = ((sharpsOrFlats * 7) % 12 + 12) % 12;
+		if (majorOrMinor == 1) {
+			return new Key(new Note((majorRoot + 9) % 12), Scale.MINOR);
+		}
+		return new Key(new Note(majorRoot), Scale.MAJOR);
+	}
+	
+	/** Returns, for each pitch class as the root, a bit mask of the pitch classes in the scale */
+	private static int[] createScaleMasks(Scale scale) {
+		Intervals intervals = scale.getIntervals();
+		int[] masks = new int[12];
+		for (int root=0; root < 12; root++) {
+			for (int n=0; n < intervals.size(); n++) {
+				masks[root] |= 1 << ((root + intervals.getNthHalfsteps(n)) % 12);
+			}
+		}
+		return masks;
+	}
+	
+	/** Pitch classes of each major key, by the pitch class of its root */
+	private static final int[] MAJOR_SCALE_MASKS = createScaleMasks(Scale.MAJOR);
+	
+	/** Pitch classes of each minor key, by the pitch class of its root */
+	private static final int[] MINOR_SCALE_MASKS = createScaleMasks(Scale.MINOR);
+	
+	/** Degree of a non-diatonic note, by the number of half-steps from the root of the key up to the note */
+	private static final int[] NON_DIATONIC_DEGREES = new int[] { 0, 0, 1, 1, 1, 2, 2, 3, 3, 4, 4, 4 };
+}
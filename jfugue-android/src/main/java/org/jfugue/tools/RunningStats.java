@@ -0,0 +1,120 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.tools;
+
+/**
+ * Keeps the count, mean, variance, minimum and maximum of a series of values without 
+ * keeping the values themselves. The mean and variance are updated with Welford's method, 
+ * which stays accurate over long series, and two RunningStats can be merged, so a series 
+ * can be split among several workers and their results combined.
+ */
+public class RunningStats 
+{
+	private long n;
+	private double mean;
+	private double sumOfSquaredDeviations;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	
+	public RunningStats add(double value) {
+		n++;
+		double delta = value - mean;
+		mean += delta / n;
+		sumOfSquaredDeviations += delta * (value - mean);
+		if ((n == 1) || (value < min)) {
+			min = value;
+		}
+		if ((n == 1) || (value > max)) {
+			max = value;
+		}
+		return this;
+	}
+	
+	/** Adds the values counted by another RunningStats to this one, as if they had been added here */
+	public RunningStats merge(RunningStats other) {
+		if (other.n == 0) {
+			return this;
+		}
+		if (this.n == 0) {
+			this.n = other.n;
+			this.mean = other.mean;
+			this.sumOfSquaredDeviations = other.sumOfSquaredDeviations;
+			this.min = other.min;
+			this.max = other.max;
+			return this;
+		}
+		long total = this.n + other.n;
+		double delta = other.mean - this.mean;
+		this.sumOfSquaredDeviations += other.sumOfSquaredDeviations + delta * delta * ((double)this.n * other.n / total);
+		this.mean += delta * other.n / total;
+		this.n = total;
+		this.min = Math.min(this.min, other.min);
+		this.max = Math.max(this.max, other.max);
+		return this;
+	}
+	
+	public RunningStats clear() {
+		this.n = 0;
+		this.mean = 0.0;
+		this.sumOfSquaredDeviations = 0.0;
+		this.min = Double.NaN;
+		this.max = Double.NaN;
+		return this;
+	}
+	
+	public long getN() {
+		return this.n;
+	}
+	
+	/** Returns the mean, or 0 if no values have been added */
+	public double getMean() {
+		return this.mean;
+	}
+	
+	/** Returns the smallest value, or NaN if no values have been added */
+	public double getMin() {
+		return this.min;
+	}
+	
+	/** Returns the largest value, or NaN if no values have been added */
+	public double getMax() {
+		return this.max;
+	}
+	
+	/** Returns the difference between the largest and smallest values, or 0 if no values have been added */
+	public double getRange() {
+		return (n == 0) ? 0.0 : max - min;
+	}
+	
+	/** Returns the population variance, or 0 if no values have been added */
+	public double getVariance() {
+		return (n == 0) ? 0.0 : sumOfSquaredDeviations / n;
+	}
+	
+	/** Returns the population standard deviation, or 0 if no values have been added */
+	public double getSD() {
+		return Math.sqrt(getVariance());
+	}
+	
+	@Override
+	public String toString() {
+		return "RunningStats: n="+n+", mean="+mean+", sd="+getSD()+", min="+min+", max="+max;
+	}
+}
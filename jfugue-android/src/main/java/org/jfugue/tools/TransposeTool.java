@@ -0,0 +1,117 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.tools;
+
+import org.jfugue.midi.MidiDefaults;
+import org.jfugue.parser.ChainingParserListenerAdapter;
+import org.jfugue.parser.ParserException;
+import org.jfugue.pattern.Pattern;
+import org.jfugue.pattern.PatternProducer;
+import org.jfugue.theory.Chord;
+import org.jfugue.theory.Note;
+import org.jfugue.theory.Transposition;
+import org.staccato.StaccatoParser;
+import org.staccato.StaccatoParserListener;
+
+/**
+ * Transposes notes and chords as they pass from a parser to the listeners of this tool,
+ * so a pattern can be transposed in the same pass that parses it. Notes on the percussion
+ * track are left alone. Key signatures, given as a note position and a major or minor 
+ * indicator as the StaccatoParser gives them, are replaced by the target key of the 
+ * transposition.
+ * 
+ * Each transposition has a fixed source key, so key changes within the music are not followed.
+ *
+ * @see Transposition
+ */
+public class TransposeTool extends ChainingParserListenerAdapter
+{
+	private Transposition transposition;
+	private byte currentTrack;
+	
+	public TransposeTool(Transposition transposition) {
+		super();
+		this.transposition = transposition;
+	}
+	
+	public static Pattern transpose(PatternProducer patternProducer, Transposition transposition) {
+		StaccatoParser parser = new StaccatoParser();
+		TransposeTool tool = new TransposeTool(transposition);
+		StaccatoParserListener listener = new StaccatoParserListener();
+		parser.addParserListener(tool);
+		tool.addParserListener(listener);
+		try {
+			parser.parse(patternProducer);
+		} catch (ParserException e) {
+			throw new RuntimeException(e);
+		}
+		return listener.getPattern();
+	}
+	
+	@Override
+	public void beforeParsingStarts() { 
+		this.currentTrack = 0;
+		super.beforeParsingStarts();
+	} 
+
+	@Override
+	public void onTrackChanged(byte track) { 
+		this.currentTrack = track;
+		super.onTrackChanged(track);
+	}
+
+	@Override
+	public void onKeySignatureParsed(byte key, byte scale) { 
+		if (transposition.isChromatic()) {
+			fireKeySignatureParsed((byte)(((key + transposition.getHalfsteps()) % 12 + 12) % 12), scale);
+		} else if (transposition.getTargetKey().getScale().getMajorOrMinorIndicator() != 0) {
+			fireKeySignatureParsed(transposition.getTargetKey().getRoot().getPositionInOctave(), transposition.getTargetKey().getScale().getMajorOrMinorIndicator());
+		} else {
+			// There is no key signature for other scales, so the original stays
+			fireKeySignatureParsed(key, scale);
+		}
+	}
+
+	@Override
+	public void onNoteParsed(Note note) { 
+		if (currentTrack == MidiDefaults.PERCUSSION_TRACK) {
+			fireNoteParsed(note);
+		} else {
+			fireNoteParsed(transposition.transpose(note));
+		}
+	}
+
+	@Override
+	public void onChordParsed(Chord chord) { 
+		if (currentTrack == MidiDefaults.PERCUSSION_TRACK) {
+			fireChordParsed(chord);
+			return;
+		}
+		Chord transposed = transposition.transpose(chord);
+		if (transposed != null) {
+			fireChordParsed(transposed);
+		} else {
+			// The transposed notes are not a known chord, so they are given as notes played together
+			for (Note note : chord.getNotes()) {
+				fireNoteParsed(transposition.transpose(note));
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a list of independent tasks, either on an ExecutorService or, if the executor 
+ * is null, one after another on the calling thread. A task that fails is rethrown as 
+ * a RuntimeException. If the calling thread is interrupted while waiting, its interrupt 
+ * flag is restored before the InterruptedException is rethrown as a RuntimeException.
+ */
+public final class ParallelTasks 
+{
+	private ParallelTasks() { }
+	
+	public static void runAll(List<? extends Callable<Void>> tasks, ExecutorService executor) {
+		if (executor == null) {
+			for (Callable<Void> task : tasks) {
+				try {
+					task.call();
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		} else {
+			try {
+				for (Future<Void> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.util;
+
+/**
+ * A stable sort for parallel arrays that are ordered by primitive keys, such as times. 
+ * Rather than moving the arrays itself, order() returns the indexes of the keys in sorted 
+ * order, which the caller uses to rearrange its keys and the arrays that go with them.
+ * Indexes whose keys are equal stay in increasing order, so items that happen at the 
+ * same time keep the order in which they were added.
+ */
+public final class StableSort 
+{
+	private StableSort() { }
+	
+	public static boolean isSorted(double[] keys, int length) {
+		for (int i=1; i < length; i++) {
+			if (keys[i] < keys[i-1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public static boolean isSorted(long[] keys, int length) {
+		for (int i=1; i < length; i++) {
+			if (keys[i] < keys[i-1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/** Returns the indexes from 0 up to, but not including, length, ordered by the given keys */
+	public static int[] order(final double[] keys, int length) {
+		return order(new KeyComparison() {
+			@Override
+			public boolean isAfter(int a, int b) {
+				return keys[a] > keys[b];
+			}
+		}, length);
+	}
+
+	/** Returns the indexes from 0 up to, but not including, length, ordered by the given keys */
+	public static int[] order(final long[] keys, int length) {
+		return order(new KeyComparison() {
+			@Override
+			public boolean isAfter(int a, int b) {
+				return keys[a] > keys[b];
+			}
+		}, length);
+	}
+	
+	private static int[] order(KeyComparison comparison, int length) {
+		int[] order = new int[length];
+		for (int i=0; i < length; i++) {
+			order[i] = i;
+		}
+		mergeSort(order.clone(), order, 0, length, comparison);
+		return order;
+	}
+	
+	private static void mergeSort(int[] src, int[] dest, int low, int high, KeyComparison comparison) {
+		if (high - low < 2) {
+			return;
+		}
+		int mid = (low + high) >>> 1;
+		mergeSort(dest, src, low, mid, comparison);
+		mergeSort(dest, src, mid, high, comparison);
+		for (int i = low, p = low, q = mid; i < high; i++) {
+			if ((q >= high) || ((p < mid) && !comparison.isAfter(src[p], src[q]))) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+	
+	private interface KeyComparison {
+		public boolean isAfter(int a, int b);
+	}
+}
@@ -19,16 +19,45 @@
 
 package org.staccato;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
+import org.jfugue.util.ParallelTasks;
 import org.staccato.functions.FunctionManager;
 
+/**
+ * Replaces calls to preprocessor functions, like ":TRILL(Cq)", with the result of 
+ * the function. The string is scanned once; each call runs from the function name 
+ * to its balancing close parenthesis, and calls may be nested in the parameters of 
+ * other calls, in which case the inner call is applied first. Calls to functions that 
+ * are not preprocessor functions (for example, subparser functions) are left in place.
+ * 
+ * Results of PurePreprocessorFunctions are cached. If an ExecutorService is set, 
+ * neighboring calls to PurePreprocessorFunctions are applied in parallel; any other 
+ * function is applied on the calling thread, in the order in which it appears.
+ */
 public class FunctionPreprocessor implements Preprocessor 
 {
 	private static FunctionPreprocessor instance;
 	
-	private FunctionPreprocessor() { } 
+	private ExecutorService executor;
+	private Map<String, String> cache;
+	private String cachedDefaults;
+	
+	private FunctionPreprocessor() { 
+		this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > MAX_CACHED_RESULTS;
+			}
+		};
+	} 
 	
 	public static FunctionPreprocessor getInstance() {
 		if (instance == null) {
@@ -37,41 +66,206 @@ public class FunctionPreprocessor implements Preprocessor
 		return instance;
 	}
 
-	private static Pattern functionPattern = Pattern.compile(":\\S+\\(\\p{ASCII}*\\)");
-	private static Pattern namePattern = Pattern.compile(":\\S+\\(");
-	private static Pattern paramPattern = Pattern.compile("\\(\\p{ASCII}*\\)");
+	/** 
+	 * Sets the executor on which calls to PurePreprocessorFunctions are applied. 
+	 * If the executor is null, which is the default, every function is applied on the calling thread. 
+	 */
+	public void setExecutorService(ExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	public ExecutorService getExecutorService() {
+		return this.executor;
+	}
+	
+	/** Forgets the cached results of PurePreprocessorFunctions */
+	public void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
 	
 	@Override
 	public String preprocess(String s, StaccatoParserContext context) {
-		StringBuilder buddy = new StringBuilder();
-		int posPrev = 0;
+		if (s.indexOf(FunctionSubparser.FUNCTION) == -1) {
+			return s;
+		}
 
-		Matcher m = functionPattern.matcher(s);
-		while (m.find()) {
-			String functionName = null;
-			String parameters = null;
-			
-			Matcher nameMatcher = namePattern.matcher(m.group());
-			while (nameMatcher.find()) {
-				functionName = nameMatcher.group().substring(1, nameMatcher.group().length()-1);
-			}
-			
-			PreprocessorFunction function = FunctionManager.getInstance().getPreprocessorFunction(functionName);
-			if (function == null) {
-				return s; // We don't recognize the function. No problem, it could be a subparser function
+		List<Object> parts = new ArrayList<Object>();
+		scan(s, 0, false, parts);
+		if ((parts.size() == 1) && (parts.get(0) instanceof String)) {
+			return s;
+		}
+		
+		checkDefaults();
+		final String[] results = new String[parts.size()];
+		List<Callable<Void>> pureCalls = new ArrayList<Callable<Void>>();
+		for (int i=0; i < parts.size(); i++) {
+			Object part = parts.get(i);
+			if (part instanceof String) {
+				results[i] = (String)part;
+			} else if ((executor != null) && ((FunctionCall)part).isPure()) {
+				final int index = i;
+				final FunctionCall call = (FunctionCall)part;
+				final StaccatoParserContext callContext = context;
+				pureCalls.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						results[index] = evaluate(call, callContext);
+						return null;
+					}
+				});
+			} else {
+				applyInParallel(pureCalls);
+				pureCalls.clear();
+				results[i] = evaluate((FunctionCall)part, context);
 			}
+		}
+		applyInParallel(pureCalls);
+		
+		StringBuilder buddy = new StringBuilder(s.length());
+		for (String result : results) {
+			buddy.append(result);
+		}
+		return buddy.toString();
+	}
 
-			Matcher paramMatcher = paramPattern.matcher(m.group());
-			while (paramMatcher.find()) {
-				parameters = paramMatcher.group().substring(1, paramMatcher.group().length()-1);
+	/**
+	 * Splits the string, starting at the given position, into Strings and FunctionCalls, 
+	 * which are added to parts. If inCall is true, scanning stops at the parenthesis that 
+	 * closes the call, and the position after that parenthesis is returned; if the end of 
+	 * the string is reached first, -1 is returned. If inCall is false, the whole string 
+	 * is scanned and its length is returned. 
+	 */
+	private int scan(String s, int pos, boolean inCall, List<Object> parts) {
+		int textStart = pos;
+		int depth = 0;
+		while (pos < s.length()) {
+			char ch = s.charAt(pos);
+			if (ch == FunctionSubparser.FUNCTION) {
+				int nameEnd = pos + 1;
+				while ((nameEnd < s.length()) && isNameChar(s.charAt(nameEnd))) {
+					nameEnd++;
+				}
+				if ((nameEnd > pos + 1) && (nameEnd < s.length()) && (s.charAt(nameEnd) == '(')) {
+					addText(s, textStart, pos, parts);
+					List<Object> parameterParts = new ArrayList<Object>();
+					int callEnd = scan(s, nameEnd + 1, true, parameterParts);
+					if (callEnd == -1) {
+						// The call is never closed, so it is just text; calls in what would have been its parameters still count
+						addText(s, pos, nameEnd + 1, parts);
+						parts.addAll(parameterParts);
+						pos = s.length();
+					} else {
+						String name = s.substring(pos + 1, nameEnd);
+						parts.add(new FunctionCall(name, FunctionManager.getInstance().getPreprocessorFunction(name), parameterParts));
+						pos = callEnd;
+					}
+					textStart = pos;
+					continue;
+				}
+			} else if (inCall && (ch == '(')) {
+				depth++;
+			} else if (inCall && (ch == ')')) {
+				if (depth == 0) {
+					addText(s, textStart, pos, parts);
+					return pos + 1;
+				}
+				depth--;
 			}
-			
-			buddy.append(s.substring(posPrev, m.start()));
-			buddy.append(function.apply(parameters, context));
-			posPrev = m.end();
+			pos++;
 		}
+		addText(s, textStart, pos, parts);
+		return inCall ? -1 : pos;
+	}
+	
+	private static boolean isNameChar(char ch) {
+		return !Character.isWhitespace(ch) && (ch != '(') && (ch != ')') && (ch != FunctionSubparser.FUNCTION);
+	}
 
-		buddy.append(s.substring(posPrev, s.length()));
-		return buddy.toString();
+	private static void addText(String s, int start, int end, List<Object> parts) {
+		if (end > start) {
+			parts.add(s.substring(start, end));
+		}
+	}
+	
+	private String evaluate(FunctionCall call, StaccatoParserContext context) {
+		StringBuilder buddy = new StringBuilder();
+		for (Object part : call.parameterParts) {
+			if (part instanceof String) {
+				buddy.append((String)part);
+			} else {
+				buddy.append(evaluate((FunctionCall)part, context));
+			}
+		}
+		String parameters = buddy.toString();
+		
+		if (call.function == null) {
+			// We don't recognize the function. No problem, it could be a subparser function
+			return FunctionSubparser.FUNCTION + call.name + "(" + parameters + ")";
+		}
+		
+		if (call.function instanceof PurePreprocessorFunction) {
+			String key = call.function.getClass().getName() + '(' + parameters;
+			String result;
+			synchronized (cache) {
+				result = cache.get(key);
+			}
+			if (result == null) {
+				result = call.function.apply(parameters, context);
+				synchronized (cache) {
+					cache.put(key, result);
+				}
+			}
+			return result;
+		}
+		
+		String result = call.function.apply(parameters, context);
+		checkDefaults();
+		return result;
 	}
+	
+	private void applyInParallel(List<Callable<Void>> calls) {
+		if (!calls.isEmpty()) {
+			ParallelTasks.runAll(calls, executor);
+		}
+	}
+	
+	/** Pure functions may depend on the default note settings, so cached results are dropped when those change */
+	private void checkDefaults() {
+		DefaultNoteSettingsManager defaults = DefaultNoteSettingsManager.getInstance();
+		String currentDefaults = defaults.getDefaultOctave() + "," + defaults.getDefaultBassOctave() + "," + defaults.getDefaultDuration() + "," + defaults.getDefaultOnVelocity() + "," + defaults.getDefaultOffVelocity();
+		if (!currentDefaults.equals(cachedDefaults)) {
+			clearCache();
+			cachedDefaults = currentDefaults;
+		}
+	}
+	
+	private static class FunctionCall 
+	{
+		private final String name;
+		private final PreprocessorFunction function;
+		private final List<Object> parameterParts;
+		
+		public FunctionCall(String name, PreprocessorFunction function, List<Object> parameterParts) {
+			this.name = name;
+			this.function = function;
+			this.parameterParts = parameterParts;
+		}
+		
+		/** Returns true if neither this call nor any call in its parameters has side effects */
+		public boolean isPure() {
+			if ((function != null) && !(function instanceof PurePreprocessorFunction)) {
+				return false;
+			}
+			for (Object part : parameterParts) {
+				if ((part instanceof FunctionCall) && !((FunctionCall)part).isPure()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
+	private static final int MAX_CACHED_RESULTS = 256;
 }
@@ -20,11 +20,6 @@
 package org.staccato;
 
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.jfugue.pattern.PatternProducer;
 
@@ -40,16 +35,20 @@ public class InstructionPreprocessor implements Preprocessor
 		return instance;
 	}
 
-    private static Pattern keyPattern = Pattern.compile("\\{\\p{ASCII}*?\\}");
-
-    private Map<String, Instruction> instructions;
+    // A trie of the instruction keys, so the longest key that starts an instruction is found in one walk
+    private TrieNode trie;
 	
     private InstructionPreprocessor() {
-        instructions = new HashMap<String, Instruction>();
+        trie = new TrieNode();
     }
 
     public void addInstruction(String key, Instruction value) {
-	    instructions.put(key, value);
+	    TrieNode node = trie;
+	    for (int i=0; i < key.length(); i++) {
+	    	node = node.getOrAddChild(key.charAt(i));
+	    }
+	    node.isKey = true;
+	    node.instruction = value;
 	}
 
     public void addInstruction(String key, final PatternProducer value) {
@@ -57,7 +56,7 @@ public class InstructionPreprocessor implements Preprocessor
     }
 
     public void addInstruction(String key, final String value) {
-        instructions.put(key, new Instruction() {
+        addInstruction(key, new Instruction() {
             @Override
             public String onInstructionReceived(String[] instructions) {
                 return value;
@@ -65,49 +64,93 @@ public class InstructionPreprocessor implements Preprocessor
         });
     }
 
+    /** 
+     * Replaces each instruction in braces, like {VOLUME ON}, with the value of the longest 
+     * instruction key that it starts with. Text in braces that does not start with 
+     * any instruction key is left as it is.
+     */
     @Override
     public String preprocess(String s, StaccatoParserContext context) {
-        StringBuilder buddy = new StringBuilder();
+        StringBuilder buddy = null;
         int posPrev = 0;
-    
-        // Sort all of the instruction keys by length, so we'll deal with the longer ones first
-        String[] sizeSortedInstructions = new String[instructions.size()];
-        Arrays.sort(instructions.keySet().toArray(sizeSortedInstructions), new Comparator<String>() {
-        	@Override
-        	public int compare(String s1, String s2) {
-        		if (s1.length() < s2.length()) return 1;
-        		if (s1.length() > s2.length()) return -1;
-        		return 0;
-        	}
-        });
-
-        boolean matchFound = false;
-        Matcher m = keyPattern.matcher(s);
-        while (m.find()) {
-            String key = m.group();
-            key = key.substring(1, key.length()-1); // Remove the braces
-            for (String possibleMatch : sizeSortedInstructions) {
-            	if (!matchFound) {
-	                if (key.startsWith(possibleMatch)) {
-	                    Instruction instruction = instructions.get(possibleMatch);
-	                    String value = key;
-	                    if (instruction != null) {
-	                        value = instruction.onInstructionReceived(key.split(" "));
-	                    }
-	            
-	                    buddy.append(s.substring(posPrev, m.start()));
-	                    buddy.append(value);
-	                    posPrev = m.end();
-	                    matchFound = true;
-	                }
-            	}
+        int open = s.indexOf('{');
+        while (open >= 0) {
+            // Find the closing brace as the expression \{\p{ASCII}*?\} would
+            int close = open + 1;
+            while ((close < s.length()) && (s.charAt(close) != '}') && (s.charAt(close) < 128)) {
+                close++;
             }
-            if (!matchFound) {
-            	posPrev = m.end();
+            if ((close >= s.length()) || (s.charAt(close) != '}')) {
+                open = s.indexOf('{', open + 1);
+                continue;
             }
+            
+            TrieNode match = findLongestKey(s, open + 1, close);
+            if (match != null) {
+                String key = s.substring(open + 1, close);
+                String value = key;
+                if (match.instruction != null) {
+                    value = match.instruction.onInstructionReceived(key.split(" "));
+                }
+                if (buddy == null) {
+                    buddy = new StringBuilder(s.length());
+                }
+                buddy.append(s, posPrev, open);
+                buddy.append(value);
+                posPrev = close + 1;
+            }
+            open = s.indexOf('{', close + 1);
         }
 
-        buddy.append(s.substring(posPrev, s.length()));
+        if (buddy == null) {
+            return s;
+        }
+        buddy.append(s, posPrev, s.length());
         return buddy.toString();
     }
+    
+    /** Returns the trie node of the longest instruction key that the given text starts with, or null if there is none */
+    private TrieNode findLongestKey(String s, int start, int end) {
+        TrieNode node = trie;
+        TrieNode longest = node.isKey ? node : null;
+        for (int i=start; (i < end) && (node != null); i++) {
+            node = node.getChild(s.charAt(i));
+            if ((node != null) && node.isKey) {
+                longest = node;
+            }
+        }
+        return longest;
+    }
+    
+    private static class TrieNode {
+        private char[] chars = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        boolean isKey;
+        Instruction instruction;
+        
+        /** Children are kept sorted by character, so a child is found with a binary search */
+        TrieNode getChild(char ch) {
+            int index = Arrays.binarySearch(chars, ch);
+            return (index >= 0) ? children[index] : null;
+        }
+        
+        TrieNode getOrAddChild(char ch) {
+            int index = Arrays.binarySearch(chars, ch);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -(index + 1);
+            char[] newChars = new char[chars.length + 1];
+            TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(chars, 0, newChars, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(chars, insertAt, newChars, insertAt + 1, chars.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            newChars[insertAt] = ch;
+            newChildren[insertAt] = new TrieNode();
+            chars = newChars;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+    }
 }
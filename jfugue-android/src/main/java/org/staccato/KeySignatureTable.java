@@ -0,0 +1,135 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.staccato;
+
+import org.jfugue.provider.KeyProviderFactory;
+import org.jfugue.theory.Intervals;
+import org.jfugue.theory.Key;
+import org.jfugue.theory.Note;
+import org.jfugue.theory.Scale;
+
+/**
+ * Says how a key changes each note within an octave. For example, in G Major, 
+ * F (5) becomes F# (6), and in C# Major, B (11) becomes C (0) in the next octave.
+ * Major and minor keys share the 15 tables for 7 flats through 7 sharps, which are
+ * computed once; keys built on other seven-note scales, like modes, get a table
+ * spelled from the scale itself.
+ * 
+ * @see StaccatoParserContext#getKeySignatureTable()
+ */
+public final class KeySignatureTable 
+{
+	public static final int MAX_ACCIDENTALS = 7;
+	
+	private static final int[] FLAT_ORDER = new int[] { 11, 4, 9, 2, 7, 0, 5 };  // B E A D G C F
+	private static final int[] SHARP_ORDER = new int[] { 5, 0, 7, 2, 9, 4, 11 }; // F C G D A E B
+	private static final int[] LETTER_POSITIONS = new int[] { 0, 2, 4, 5, 7, 9, 11 }; // C D E F G A B
+	private static final String LETTERS = "CDEFGAB";
+	
+	private static final KeySignatureTable[] KEY_SIGNATURE_TABLES = new KeySignatureTable[MAX_ACCIDENTALS * 2 + 1];
+	static {
+		for (int keySig = -MAX_ACCIDENTALS; keySig <= MAX_ACCIDENTALS; keySig++) {
+			KeySignatureTable table = new KeySignatureTable();
+			for (int i=0; i < Math.abs(keySig); i++) {
+				int position = (keySig < 0) ? FLAT_ORDER[i] : SHARP_ORDER[i];
+				table.setAdjustment(position, (keySig < 0) ? -1 : +1);
+			}
+			KEY_SIGNATURE_TABLES[keySig + MAX_ACCIDENTALS] = table;
+		}
+	}
+	
+	private final byte[] positions = new byte[12];
+	private final byte[] octaveDeltas = new byte[12];
+	
+	private KeySignatureTable() { 
+		for (int i=0; i < 12; i++) {
+			positions[i] = (byte)i;
+		}
+	}
+	
+	private void setAdjustment(int position, int halfsteps) {
+		int adjusted = position + halfsteps;
+		positions[position] = (byte)((adjusted + 12) % 12);
+		octaveDeltas[position] = (byte)((adjusted < 0) ? -1 : (adjusted > 11) ? 1 : 0);
+	}
+	
+	/** 
+	 * Returns the table for a key signature given as the number of accidentals,
+	 * negative for flats and positive for sharps
+	 */
+	public static KeySignatureTable getInstance(int keySig) {
+		if ((keySig < -MAX_ACCIDENTALS) || (keySig > MAX_ACCIDENTALS)) {
+			throw new IllegalArgumentException("A key signature has between "+MAX_ACCIDENTALS+" flats and "+MAX_ACCIDENTALS+" sharps, but "+keySig+" was given");
+		}
+		return KEY_SIGNATURE_TABLES[keySig + MAX_ACCIDENTALS];
+	}
+	
+	/** 
+	 * Returns the table for the given key. Major and minor keys use the key signature 
+	 * from the KeyProvider; other seven-note scales are spelled with one note per letter,
+	 * starting from whichever spelling of the root needs fewer accidentals.
+	 */
+	public static KeySignatureTable getInstance(Key key) {
+		Scale scale = key.getScale();
+		if (scale == null) {
+			return getInstance(0);
+		}
+		if ((scale.getMajorOrMinorIndicator() != 0) || (scale.getIntervals().size() != 7)) {
+			return getInstance(KeyProviderFactory.getKeyProvider().convertKeyToByte(key));
+		}
+		
+		byte root = key.getRoot().getValue();
+		KeySignatureTable flatTable = createFromScale(Note.NOTE_NAMES_FLAT[root % 12].charAt(0), root, scale.getIntervals());
+		KeySignatureTable sharpTable = createFromScale(Note.NOTE_NAMES_SHARP[root % 12].charAt(0), root, scale.getIntervals());
+		return (flatTable.countAccidentals() <= sharpTable.countAccidentals()) ? flatTable : sharpTable;
+	}
+	
+	private static KeySignatureTable createFromScale(char rootLetter, byte root, Intervals intervals) {
+		KeySignatureTable table = new KeySignatureTable();
+		int letter = LETTERS.indexOf(rootLetter);
+		for (int i=0; i < 7; i++) {
+			int natural = LETTER_POSITIONS[(letter + i) % 7];
+			int inScale = (root + intervals.getNthHalfsteps(i)) % 12;
+			int halfsteps = ((inScale - natural + 18) % 12) - 6; // between -6 and +5
+			if (halfsteps != 0) {
+				table.setAdjustment(natural, halfsteps);
+			}
+		}
+		return table;
+	}
+	
+	private int countAccidentals() {
+		int count = 0;
+		for (int i=0; i < 12; i++) {
+			count += Math.abs((positions[i] + octaveDeltas[i] * 12) - i);
+		}
+		return count;
+	}
+
+	/** Returns the position within the octave (C=0, B=11) of the given position after applying this key */
+	public byte getAdjustedPosition(int positionInOctave) {
+		return positions[positionInOctave];
+	}
+	
+	/** Returns -1, 0, or 1: the change in octave when applying this key to the given position within the octave, as when Cb is B in the octave below */
+	public byte getOctaveDelta(int positionInOctave) {
+		return octaveDeltas[positionInOctave];
+	}
+}
@@ -22,6 +22,8 @@ package org.staccato;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.jfugue.theory.Tuning;
+
 /**
  *  The MicrotonePreprocess lets a user express a microtone
  *  using 'm' followed by the frequency - e.g., m440. The MicrotonePreprocessor takes this String,
@@ -40,6 +42,18 @@ public class MicrotonePreprocessor implements Preprocessor
 		return instance;
 	}
 
+	private Tuning tuning = Tuning.EQUAL_TEMPERAMENT;
+	
+	/** Sets the tuning of the instrument that will play the microtones; the default is equal temperament with A5 at 440 Hz */
+	public MicrotonePreprocessor setTuning(Tuning tuning) {
+		this.tuning = tuning;
+		return this;
+	}
+	
+	public Tuning getTuning() {
+		return this.tuning;
+	}
+	
 	private static Pattern microtonePattern = Pattern.compile("(^|\\s)[Mm]\\S+");
 	private static Pattern frequencyPattern = Pattern.compile("[0-9.]+");
 	private static Pattern qualifierPattern = Pattern.compile("[WHQISTXOADwhqistxoad/]+[0-9.]*\\S*");
@@ -71,7 +85,7 @@ public class MicrotonePreprocessor implements Preprocessor
 			}
 			
 			buddy.append(" ");
-			buddy.append(convertFrequencyToStaccato(frequency, qualifier));
+			buddy.append(convertFrequencyToStaccato(frequency, qualifier, tuning));
 			
 			posPrev = m.end(); 
 		}
@@ -87,23 +101,44 @@ public class MicrotonePreprocessor implements Preprocessor
      */
     public static String convertFrequencyToStaccato(double frequency, String qualifier)
     {
-        double totalCents = 1200 * Math.log(frequency / 16.3515978312876) / Math.log(2);
-        double octave = Math.round(totalCents / 1200.0);
-        double semitoneCents = totalCents - (octave * 1200.0);
-        double semitone = Math.round(semitoneCents / 100.0);
-        double microtonalAdjustment = semitoneCents - (semitone * 100.0);
-        double pitches = 8192.0 + (microtonalAdjustment * 8192.0 / 100.0);
-
-        double note = ((octave+1)*12)+semitone; // This gives a MIDI value, 0 - 128
-        if (note > 127) note = 127;
+    	return convertFrequencyToStaccato(frequency, qualifier, Tuning.EQUAL_TEMPERAMENT);
+    }
+    
+    /**
+     * Converts the given frequency to a music string that plays the frequency on an instrument with the given tuning
+     */
+    public static String convertFrequencyToStaccato(double frequency, String qualifier, Tuning tuning)
+    {
+        int note = tuning.getNearestNoteValue(frequency); // This gives a MIDI value, 0 - 127
+        int pitches = getPitchWheelValue(tuning.getCentsFromNote(frequency, note));
 
         StringBuilder buddy = new StringBuilder();
         buddy.append(":PitchWheel(");
-        buddy.append((int)pitches);
+        buddy.append(pitches);
         buddy.append(") ");
-        buddy.append((int)note);
+        buddy.append(note);
         buddy.append(qualifier);
         buddy.append(" :PitchWheel(8192)"); // Reset the pitch wheel.  8192 = original pitch wheel position
         return buddy.toString();
     }
+    
+    /** 
+     * Returns the pitch wheel position that raises or lowers a note by the given cents, 
+     * where 8192 leaves the note unchanged and 100 cents moves the wheel by 8192
+     */
+    public static int getPitchWheelValue(double cents) {
+        double pitches = 8192.0 + (cents * 8192.0 / 100.0);
+        return (int)Math.max(0.0, Math.min(16383.0, pitches));
+    }
+    
+    /**
+     * Finds the note and pitch wheel position for each of the given frequencies, for an instrument with the given tuning.
+     * The noteValues and pitchWheelValues arrays must be at least as long as the frequencies array.
+     */
+    public static void convertFrequencies(double[] frequencies, Tuning tuning, int[] noteValues, int[] pitchWheelValues) {
+        for (int i=0; i < frequencies.length; i++) {
+            noteValues[i] = tuning.getNearestNoteValue(frequencies[i]);
+            pitchWheelValues[i] = getPitchWheelValue(tuning.getCentsFromNote(frequencies[i], noteValues[i]));
+        }
+    }
 }
@@ -26,7 +26,6 @@ import java.util.logging.Logger;
 
 import org.jfugue.parser.ParserException;
 import org.jfugue.provider.ChordProvider;
-import org.jfugue.provider.KeyProviderFactory;
 import org.jfugue.provider.NoteProvider;
 import org.jfugue.theory.Chord;
 import org.jfugue.theory.Intervals;
@@ -406,25 +405,11 @@ public class NoteSubparser implements Subparser, NoteProvider, ChordProvider {
         }
 
         // Adjust for Key Signature
-        if (parserContext.getKey() != null) {
-            int keySig = KeyProviderFactory.getKeyProvider().convertKeyToByte(parserContext.getKey());
-            if ((keySig != 0) && (!noteContext.isNatural)) {
-                if ((keySig <= -1) && (noteContext.noteNumber == 11)) noteContext.noteNumber = 10;
-                if ((keySig <= -2) && (noteContext.noteNumber == 4)) noteContext.noteNumber = 3;
-                if ((keySig <= -3) && (noteContext.noteNumber == 9)) noteContext.noteNumber = 8;
-                if ((keySig <= -4) && (noteContext.noteNumber == 2)) noteContext.noteNumber = 1;
-                if ((keySig <= -5) && (noteContext.noteNumber == 7)) noteContext.noteNumber = 6;
-                if ((keySig <= -6) && (noteContext.noteNumber == 0)) { noteContext.noteNumber = 11; noteContext.octaveNumber--; }
-                if ((keySig <= -7) && (noteContext.noteNumber == 5)) noteContext.noteNumber = 4;
-                if ((keySig >= +1) && (noteContext.noteNumber == 5)) noteContext.noteNumber = 6;
-                if ((keySig >= +2) && (noteContext.noteNumber == 0)) noteContext.noteNumber = 1;
-                if ((keySig >= +3) && (noteContext.noteNumber == 7)) noteContext.noteNumber = 8;
-                if ((keySig >= +4) && (noteContext.noteNumber == 2)) noteContext.noteNumber = 3;
-                if ((keySig >= +5) && (noteContext.noteNumber == 9)) noteContext.noteNumber = 10;
-                if ((keySig >= +6) && (noteContext.noteNumber == 4)) noteContext.noteNumber = 5;
-                if ((keySig >= +7) && (noteContext.noteNumber == 11)) { noteContext.noteNumber = 0; noteContext.octaveNumber++; }
-                logger.info("After adjusting for Key Signature, noteNumber=" + noteContext.noteNumber +" octave=" +  noteContext.octaveNumber);
-            }
+        KeySignatureTable keySignatureTable = parserContext.getKeySignatureTable();
+        if ((keySignatureTable != null) && (!noteContext.isNatural) && (noteContext.noteNumber >= 0) && (noteContext.noteNumber < 12)) {
+            noteContext.octaveNumber += keySignatureTable.getOctaveDelta(noteContext.noteNumber);
+            noteContext.noteNumber = keySignatureTable.getAdjustedPosition(noteContext.noteNumber);
+            logger.info("After adjusting for Key Signature, noteNumber=" + noteContext.noteNumber +" octave=" +  noteContext.octaveNumber);
         }
         
         // Compute the actual note number, based on octave and note
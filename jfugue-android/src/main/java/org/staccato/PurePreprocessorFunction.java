@@ -0,0 +1,30 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.staccato;
+
+/**
+ * A PreprocessorFunction whose result depends only on its parameters and on the
+ * default note settings, and which neither reads nor changes the parser context.
+ * FunctionPreprocessor caches the results of these functions and may apply them
+ * on several threads at once, so apply() must also be safe to call concurrently.
+ */
+public interface PurePreprocessorFunction extends PreprocessorFunction
+{
+}
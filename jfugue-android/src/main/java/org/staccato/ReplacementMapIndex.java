@@ -0,0 +1,119 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.staccato;
+
+import java.util.Map;
+
+/**
+ * A character trie of the keys of a replacement map, so a key can be looked up straight 
+ * from a region of the string being preprocessed, without creating a String for the key 
+ * or an upper-case copy of it. Edges are kept in one open-addressing table keyed by the 
+ * parent node and the character.
+ * 
+ * @see ReplacementMapPreprocessor
+ */
+final class ReplacementMapIndex 
+{
+	private long[] edgeKeys;
+	private int[] edgeChildren;
+	private int edgeMask;
+	private String[] values;
+	private int nodeCount = 1; // Node 0 is the root
+	
+	public ReplacementMapIndex(Map<String, String> map) {
+		int capacity = 16;
+		int totalKeyLength = 0;
+		for (String key : map.keySet()) {
+			totalKeyLength += key.length();
+		}
+		while (capacity < totalKeyLength * 2) {
+			capacity <<= 1;
+		}
+		this.edgeKeys = new long[capacity];
+		this.edgeChildren = new int[capacity];
+		this.edgeMask = capacity - 1;
+		this.values = new String[totalKeyLength + 1];
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			add(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	private void add(String key, String value) {
+		int node = 0;
+		for (int i=0; i < key.length(); i++) {
+			int child = getChild(node, key.charAt(i));
+			if (child < 0) {
+				child = nodeCount++;
+				putChild(node, key.charAt(i), child);
+			}
+			node = child;
+		}
+		values[node] = value;
+	}
+	
+	/** 
+	 * Returns the value for the key found in s from start up to, but not including, end, 
+	 * or null if there is none. If upperCase is true, the characters in s are converted 
+	 * to upper case as they are looked up.
+	 */
+	public String get(CharSequence s, int start, int end, boolean upperCase) {
+		int node = 0;
+		for (int i=start; i < end; i++) {
+			char ch = s.charAt(i);
+			node = getChild(node, upperCase ? Character.toUpperCase(ch) : ch);
+			if (node < 0) {
+				return null;
+			}
+		}
+		return values[node];
+	}
+	
+	private int getChild(int node, char ch) {
+		long edgeKey = toEdgeKey(node, ch);
+		for (int slot = hash(edgeKey); ; slot = (slot + 1) & edgeMask) {
+			if (edgeKeys[slot] == edgeKey) {
+				return edgeChildren[slot];
+			}
+			if (edgeKeys[slot] == 0L) {
+				return -1;
+			}
+		}
+	}
+	
+	private void putChild(int node, char ch, int child) {
+		long edgeKey = toEdgeKey(node, ch);
+		int slot = hash(edgeKey);
+		while (edgeKeys[slot] != 0L) {
+			slot = (slot + 1) & edgeMask;
+		}
+		edgeKeys[slot] = edgeKey;
+		edgeChildren[slot] = child;
+	}
+	
+	/** Edge keys are never 0, which marks an empty slot */
+	private static long toEdgeKey(int node, char ch) {
+		return (((long)node + 1) << 16) | ch;
+	}
+	
+	private int hash(long edgeKey) {
+		long h = edgeKey * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & edgeMask;
+	}
+}
@@ -19,10 +19,19 @@
 
 package org.staccato;
 
+import java.util.Arrays;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * Replaces keys in a music string with their values from a replacement map, like the 
+ * CarnaticReplacementMap or SolfegeReplacementMap. A key is either a whole element, 
+ * or, if angle brackets are required, the text in brackets, like &lt;Sa&gt;.
+ * 
+ * The keys of the map are put in an index the first time the map is used, and again 
+ * whenever the map has changed. With more than one iteration, only the parts of the string
+ * that changed in one iteration are looked at again in the next, and iterations stop early
+ * once nothing changes.
+ */
 public class ReplacementMapPreprocessor implements Preprocessor 
 {
 	private static ReplacementMapPreprocessor instance;
@@ -36,13 +45,15 @@ public class ReplacementMapPreprocessor implements Preprocessor
 		return instance;
 	}
 
-	private static Pattern replacementPatternWithBrackets = Pattern.compile("<\\S+>");
-	private static Pattern replacementPatternWithoutBrackets = Pattern.compile("\\S+");
 	private Map<String, String> map;
 	private boolean requiresAngleBrackets = true;
 	private boolean caseSensitive = false;
 	private int iterations = 1;
 	
+	private Map<String, String> indexedMap;
+	private int indexedMapHashCode;
+	private ReplacementMapIndex index;
+	
 	public ReplacementMapPreprocessor setRequireAngleBrackets(boolean require) {
 		this.requiresAngleBrackets = require;
 		return this;
@@ -80,34 +91,115 @@ public class ReplacementMapPreprocessor implements Preprocessor
 		return this.iterations;
 	}
 	
-	private Pattern getReplacementPattern() {
-		return requiresAngleBrackets() ? replacementPatternWithBrackets : replacementPatternWithoutBrackets;
+	private synchronized ReplacementMapIndex getIndex() {
+		// Checking the hash code finds changes made to the map since it was indexed
+		int hashCode = map.hashCode();
+		if ((index == null) || (indexedMap != map) || (indexedMapHashCode != hashCode)) {
+			index = new ReplacementMapIndex(map);
+			indexedMap = map;
+			indexedMapHashCode = hashCode;
+		}
+		return index;
 	}
 	
 	@Override
 	public String preprocess(String s, StaccatoParserContext context) {
+		if (map == null) {
+			return s;
+		}
+		ReplacementMapIndex index = getIndex();
+		
+		// Parts of the string to look at, as pairs of start and end positions; at first, the whole string
+		int[] regions = new int[] { 0, s.length() };
+		int regionCount = 1;
 		String iteratingString = s;
-		for (int i=0; i < iterations; i++) {
-			StringBuilder buddy = new StringBuilder();
+		for (int i=0; (i < iterations) && (regionCount > 0); i++) {
+			StringBuilder buddy = new StringBuilder(iteratingString.length() + 16);
+			int[] changedRegions = new int[8];
+			int changedCount = 0;
 			int posPrev = 0;
-		
-			Matcher m = getReplacementPattern().matcher(iteratingString);
-			while (m.find()) {
-				String foundKey = requiresAngleBrackets() ? m.group().substring(1, m.group().length()-1) : m.group();
-				buddy.append(iteratingString.substring(posPrev, m.start()));
-				String lookupKey = isCaseSensitive() ? foundKey : foundKey.toUpperCase();
-				String replacementValue = map.get(lookupKey);
-				if (replacementValue != null) {
-					buddy.append(map.get(lookupKey));
-				} else {
-					buddy.append(foundKey); // If the key doesn't have a value, just put the key back - it might be intended for another parser or purpose
+			for (int r=0; r < regionCount; r++) {
+				int regionStart = regions[2*r];
+				int regionEnd = regions[2*r+1];
+				buddy.append(iteratingString, posPrev, regionStart);
+				int pos = regionStart;
+				while (pos < regionEnd) {
+					// Find the next element, which is a run of characters other than whitespace
+					while ((pos < regionEnd) && isWhitespace(iteratingString.charAt(pos))) {
+						buddy.append(iteratingString.charAt(pos++));
+					}
+					int elementEnd = pos;
+					while ((elementEnd < regionEnd) && !isWhitespace(iteratingString.charAt(elementEnd))) {
+						elementEnd++;
+					}
+					
+					int changedStart = buddy.length();
+					boolean isChanged = requiresAngleBrackets() ? replaceBracketedKeys(iteratingString, pos, elementEnd, index, buddy) : replaceElement(iteratingString, pos, elementEnd, index, buddy);
+					if (isChanged) {
+						if (2*changedCount + 2 > changedRegions.length) {
+							changedRegions = Arrays.copyOf(changedRegions, changedRegions.length * 2);
+						}
+						changedRegions[2*changedCount] = changedStart;
+						changedRegions[2*changedCount+1] = buddy.length();
+						changedCount++;
+					}
+					pos = elementEnd;
 				}
-				posPrev = m.end();
+				posPrev = regionEnd;
 			}
-	
-			buddy.append(iteratingString.substring(posPrev, iteratingString.length()));
+			buddy.append(iteratingString, posPrev, iteratingString.length());
 			iteratingString = buddy.toString();
+			regions = changedRegions;
+			regionCount = changedCount;
 		}
 		return iteratingString;
 	}
+	
+	/** Replaces a whole element if it is a key; returns true if it was replaced */
+	private boolean replaceElement(String s, int start, int end, ReplacementMapIndex index, StringBuilder buddy) {
+		String replacementValue = index.get(s, start, end, !isCaseSensitive());
+		if (replacementValue != null) {
+			buddy.append(replacementValue);
+			return true;
+		} 
+		buddy.append(s, start, end);
+		return false;
+	}
+
+	/** 
+	 * Replaces keys in angle brackets within an element, finding them as the expression &lt;\S+&gt; would. 
+	 * If a key doesn't have a value, the key is put back without its brackets - it might be intended 
+	 * for another parser or purpose. Returns true if anything in the element changed.
+	 */
+	private boolean replaceBracketedKeys(String s, int start, int end, ReplacementMapIndex index, StringBuilder buddy) {
+		boolean isChanged = false;
+		int pos = start;
+		for (int open = pos; open < end - 2; open++) {
+			if (s.charAt(open) != '<') {
+				continue;
+			}
+			// The greedy expression ends at the last '>' in the element that leaves at least one character between the brackets
+			int close = s.lastIndexOf('>', end - 1);
+			if (close < open + 2) {
+				break;
+			}
+			buddy.append(s, pos, open);
+			String replacementValue = index.get(s, open + 1, close, !isCaseSensitive());
+			if (replacementValue != null) {
+				buddy.append(replacementValue);
+			} else {
+				buddy.append(s, open + 1, close); 
+			}
+			isChanged = true;
+			pos = close + 1;
+			open = close;
+		}
+		buddy.append(s, pos, end);
+		return isChanged;
+	}
+	
+	/** Whitespace as matched by \s in a regular expression */
+	private static boolean isWhitespace(char ch) {
+		return (ch == ' ') || (ch == '\t') || (ch == '\n') || (ch == '\u000B') || (ch == '\f') || (ch == '\r');
+	}
 }
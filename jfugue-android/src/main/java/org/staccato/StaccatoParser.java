@@ -104,7 +104,17 @@ public class StaccatoParser extends Parser {
 
 	public void parse(String s) {
 		fireBeforeParsingStarts();
-
+		parseFragment(s);
+		fireAfterParsingFinished();
+	}
+	
+	/**
+	 * Parses music that is one part of a larger piece, without telling the listeners that 
+	 * parsing starts and finishes, so a piece can be given to the parser in many small strings 
+	 * instead of one large one. Call fireBeforeParsingStarts() before the first fragment and 
+	 * fireAfterParsingFinished() after the last.
+	 */
+	public void parseFragment(String s) {
 		// First, run the pre-processors
 		s = preprocess(s);
 
@@ -126,7 +136,5 @@ public class StaccatoParser extends Parser {
 				}
 			}
 		}
-		
-		fireAfterParsingFinished();
 	}
 }
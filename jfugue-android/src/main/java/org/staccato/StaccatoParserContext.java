@@ -38,6 +38,7 @@ public class StaccatoParserContext {
 	private Parser parser;
 	private Map<String, Object> dictionary;
 	private Key currentKey = Key.DEFAULT_KEY;
+	private KeySignatureTable currentKeySignatureTable = KeySignatureTable.getInstance(0);
 	private TimeSignature currentTimeSignature = TimeSignature.DEFAULT_TIMESIG;
 
 	public StaccatoParserContext(Parser parser) {
@@ -84,6 +85,7 @@ public class StaccatoParserContext {
 	
 	public StaccatoParserContext setKey(Key key) {
 		this.currentKey = key;
+		this.currentKeySignatureTable = (key == null) ? null : KeySignatureTable.getInstance(key);
 		return this;
 	}
 	
@@ -91,6 +93,11 @@ public class StaccatoParserContext {
 		return this.currentKey;
 	}
 
+	/** Returns the table for the current key, which is computed when the key is set; null if there is no key */
+	public KeySignatureTable getKeySignatureTable() {
+		return this.currentKeySignatureTable;
+	}
+
 	public StaccatoParserContext setTimeSignature(TimeSignature timeSignature) {
 		this.currentTimeSignature = timeSignature;
 		return this;
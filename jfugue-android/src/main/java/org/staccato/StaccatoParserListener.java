@@ -28,10 +28,11 @@ import org.jfugue.theory.Note;
 
 public class StaccatoParserListener implements ParserListener, PatternProducer {
     private Pattern pattern;
+    private StaccatoWriter writer;
     private byte track;
     
     public StaccatoParserListener() {
-        pattern = new Pattern();
+        createPattern();
     }
     
     public Pattern getPattern() {
@@ -40,7 +41,20 @@ public class StaccatoParserListener implements ParserListener, PatternProducer {
     
     @Override
     public void beforeParsingStarts() { 
-        pattern = new Pattern();
+        createPattern();
+    }
+    
+    /** Elements are written straight into the pattern's contents instead of being added one String at a time */
+    private void createPattern() {
+        WrittenPattern writtenPattern = new WrittenPattern();
+        this.pattern = writtenPattern;
+        this.writer = new StaccatoWriter(writtenPattern.getContents());
+    }
+    
+    private static class WrittenPattern extends Pattern {
+        StringBuilder getContents() {
+            return this.patternSB;
+        }
     }
 
     @Override
@@ -48,102 +62,102 @@ public class StaccatoParserListener implements ParserListener, PatternProducer {
 
     @Override
     public void onTrackChanged(byte track) {
-        pattern.add(StaccatoUtil.createTrackElement(track));
+        writer.writeElement(StaccatoUtil.createTrackElement(track));
         this.track = track;
     }
 
     @Override
     public void onLayerChanged(byte layer) {
-        pattern.add(StaccatoUtil.createLayerElement(layer));
+        writer.writeElement(StaccatoUtil.createLayerElement(layer));
     }
 
     @Override
     public void onInstrumentParsed(byte instrument) {
-        pattern.add(StaccatoUtil.createInstrumentElement(instrument));
+        writer.writeElement(StaccatoUtil.createInstrumentElement(instrument));
     }
 
     @Override
     public void onTempoChanged(int tempoBPM) {
-        pattern.add(StaccatoUtil.createTempoElement(tempoBPM));
+        writer.writeElement(StaccatoUtil.createTempoElement(tempoBPM));
     }
 
     @Override
     public void onKeySignatureParsed(byte key, byte scale) {
-    	pattern.add(StaccatoUtil.createKeySignatureElement(key, scale));
+    	writer.writeElement(StaccatoUtil.createKeySignatureElement(key, scale));
     }
 
     @Override
     public void onTimeSignatureParsed(byte numerator, byte powerOfTwo) {
-        pattern.add(StaccatoUtil.createTimeSignatureElement(numerator, powerOfTwo));
+        writer.writeElement(StaccatoUtil.createTimeSignatureElement(numerator, powerOfTwo));
     }
 
     @Override
     public void onBarLineParsed(long time) {
-        pattern.add(StaccatoUtil.createBarLineElement(time));
+        writer.writeElement(StaccatoUtil.createBarLineElement(time));
     }
 
     @Override
     public void onTrackBeatTimeBookmarked(String timeBookmarkId) {
-        pattern.add(StaccatoUtil.createTrackBeatTimeBookmarkElement(timeBookmarkId));
+        writer.writeElement(StaccatoUtil.createTrackBeatTimeBookmarkElement(timeBookmarkId));
     }
 
     @Override
     public void onTrackBeatTimeBookmarkRequested(String timeBookmarkId) {
-        pattern.add(StaccatoUtil.createTrackBeatTimeBookmarkRequestElement(timeBookmarkId));
+        writer.writeElement(StaccatoUtil.createTrackBeatTimeBookmarkRequestElement(timeBookmarkId));
     }
 
     @Override
     public void onTrackBeatTimeRequested(double time) {
-        pattern.add(StaccatoUtil.createTrackBeatTimeRequestElement(time));
+        writer.writeElement(StaccatoUtil.createTrackBeatTimeRequestElement(time));
     }
 
     @Override
     public void onPitchWheelParsed(byte lsb, byte msb) {
-        pattern.add(StaccatoUtil.createPitchWheelElement(lsb, msb));
+        writer.writeElement(StaccatoUtil.createPitchWheelElement(lsb, msb));
     }
 
     @Override
     public void onChannelPressureParsed(byte pressure) {
-        pattern.add(StaccatoUtil.createChannelPressureElement(pressure));
+        writer.writeElement(StaccatoUtil.createChannelPressureElement(pressure));
     }
 
     @Override
     public void onPolyphonicPressureParsed(byte key, byte pressure) {
-        pattern.add(StaccatoUtil.createPolyphonicPressureElement(key, pressure));
+        writer.writeElement(StaccatoUtil.createPolyphonicPressureElement(key, pressure));
     }
 
     @Override
     public void onSystemExclusiveParsed(byte... bytes) {
-        pattern.add(StaccatoUtil.createSystemExclusiveElement(bytes));
+        writer.writeElement(StaccatoUtil.createSystemExclusiveElement(bytes));
     }
 
     @Override
     public void onControllerEventParsed(byte controller, byte value) {
-        pattern.add(StaccatoUtil.createControllerEventElement(controller, value));
+        writer.writeElement(StaccatoUtil.createControllerEventElement(controller, value));
     }
 
     @Override
     public void onLyricParsed(String lyric) {
-    	pattern.add(StaccatoUtil.createLyricElement(lyric));
+    	writer.writeElement(StaccatoUtil.createLyricElement(lyric));
     }
 
     @Override
     public void onMarkerParsed(String marker) {
-    	pattern.add(StaccatoUtil.createMarkerElement(marker));
+    	writer.writeElement(StaccatoUtil.createMarkerElement(marker));
     }
 
     @Override
     public void onFunctionParsed(String id, Object message) {
-    	pattern.add(StaccatoUtil.createFunctionElement(id, message));
+    	writer.writeElement(StaccatoUtil.createFunctionElement(id, message));
     }
 
     @Override
     public void onNoteParsed(Note note) {
-        pattern.add(StaccatoUtil.createNoteElement(note, track));
+        writer.writeNote(note, track);
     }
     
     @Override
     public void onChordParsed(Chord chord) {
-    	pattern.add(StaccatoUtil.createChordElement(chord));
+    	writer.writeChord(chord);
     }
 }
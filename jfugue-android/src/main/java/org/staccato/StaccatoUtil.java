@@ -143,15 +143,15 @@ public class StaccatoUtil
     }
 
     public static String createNoteElement(Note note) {
-        return note.getPattern().toString();
+        return note.toString();
     }
     
     public static String createNoteElement(Note note, byte track) {
-        return (track == MidiDefaults.PERCUSSION_TRACK) ? note.getPercussionPattern().toString() : createNoteElement(note);
+        return (track == MidiDefaults.PERCUSSION_TRACK) ? note.appendPercussionPattern(new StringBuilder()).toString() : createNoteElement(note);
     }
     
     public static String createChordElement(Chord chord) {
-    	return chord.getPattern().toString();
+    	return chord.appendPattern(new StringBuilder()).toString();
     }
 }
 
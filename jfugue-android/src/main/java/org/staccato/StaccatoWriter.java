@@ -0,0 +1,159 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.staccato;
+
+import java.io.Flushable;
+import java.io.IOException;
+
+import org.jfugue.midi.MidiDefaults;
+import org.jfugue.theory.Chord;
+import org.jfugue.theory.Note;
+import org.jfugue.theory.PackedNote;
+
+/**
+ * Writes Staccato elements, separated by spaces, straight into a StringBuilder, Writer, 
+ * or other Appendable, giving the same text as adding each element to a Pattern. 
+ * Notes and chords are written without creating a String or Pattern for each one.
+ * IOExceptions from the Appendable are rethrown as RuntimeExceptions.
+ */
+public class StaccatoWriter 
+{
+	private Appendable out;
+	private StringBuilder outBuilder;
+	private StringBuilder element;
+	private boolean hasContent;
+	
+	public StaccatoWriter(Appendable out) {
+		this.out = out;
+		if (out instanceof StringBuilder) {
+			this.outBuilder = (StringBuilder)out;
+			this.hasContent = (outBuilder.length() > 0);
+		} else {
+			this.element = new StringBuilder();
+		}
+	}
+	
+	public StaccatoWriter writeElement(CharSequence s) {
+		if (outBuilder != null) {
+			if (hasContent) {
+				outBuilder.append(' ');
+			}
+			outBuilder.append(s);
+			hasContent = (outBuilder.length() > 0);
+			return this;
+		}
+		try {
+			if (hasContent) {
+				out.append(' ');
+			}
+			out.append(s);
+			hasContent |= (s.length() > 0);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return this;
+	}
+	
+	/** Writes the note as StaccatoUtil.createNoteElement(note, track) would */
+	public StaccatoWriter writeNote(Note note, byte track) {
+		StringBuilder buddy = startElement();
+		if (track == MidiDefaults.PERCUSSION_TRACK) {
+			note.appendPercussionPattern(buddy);
+		} else {
+			note.appendPattern(buddy);
+		}
+		return endElement();
+	}
+	
+	/** Writes a packed note as writeNote() would write the Note it stands for */
+	public StaccatoWriter writePackedNote(long packedNote, double duration, byte track) {
+		appendPackedNote(startElement(), packedNote, duration, track);
+		return endElement();
+	}
+	
+	/** Writes notes that start at the same time as one element, joined with '+' */
+	public StaccatoWriter writePackedNotesTogether(long[] packedNotes, double[] durations, int count, byte track) {
+		StringBuilder buddy = startElement();
+		for (int i=0; i < count; i++) {
+			if (i > 0) {
+				buddy.append('+');
+			}
+			appendPackedNote(buddy, packedNotes[i], durations[i], track);
+		}
+		return endElement();
+	}
+	
+	private static void appendPackedNote(StringBuilder buddy, long packedNote, double duration, byte track) {
+		byte value = PackedNote.getValue(packedNote);
+		if (PackedNote.hasFlag(packedNote, PackedNote.REST_FLAG)) {
+			buddy.append('R');
+		} else if (PackedNote.hasFlag(packedNote, PackedNote.PERCUSSION_NOTE) || 
+				((track == MidiDefaults.PERCUSSION_TRACK) && (value >= MidiDefaults.MIN_PERCUSSION_NOTE) && (value <= MidiDefaults.MAX_PERCUSSION_NOTE))) {
+			buddy.append(Note.getPercussionString(value));
+		} else {
+			buddy.append(Note.getToneString(value));
+		}
+		if (PackedNote.hasFlag(packedNote, PackedNote.DURATION_EXPLICITLY_SET)) {
+			buddy.append(Note.getDurationString(duration));
+		}
+		if (PackedNote.getOnVelocity(packedNote) != MidiDefaults.MIDI_DEFAULT_ON_VELOCITY) {
+			buddy.append('a').append(PackedNote.getOnVelocity(packedNote));
+		}
+		if (PackedNote.getOffVelocity(packedNote) != MidiDefaults.MIDI_DEFAULT_OFF_VELOCITY) {
+			buddy.append('d').append(PackedNote.getOffVelocity(packedNote));
+		}
+	}
+	
+	/** Writes the chord as StaccatoUtil.createChordElement(chord) would */
+	public StaccatoWriter writeChord(Chord chord) {
+		chord.appendPattern(startElement());
+		return endElement();
+	}
+	
+	public void flush() {
+		if (out instanceof Flushable) {
+			try {
+				((Flushable)out).flush();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/** Returns the StringBuilder to write the next element into; when writing to a StringBuilder, that is the output itself */
+	private StringBuilder startElement() {
+		if (outBuilder != null) {
+			if (hasContent) {
+				outBuilder.append(' ');
+			}
+			return outBuilder;
+		}
+		element.setLength(0);
+		return element;
+	}
+	
+	private StaccatoWriter endElement() {
+		if (outBuilder != null) {
+			hasContent = (outBuilder.length() > 0);
+			return this;
+		}
+		return writeElement(element);
+	}
+}
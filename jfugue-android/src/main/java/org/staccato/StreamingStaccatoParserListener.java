@@ -0,0 +1,326 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.staccato;
+
+import java.util.Arrays;
+
+import org.jfugue.midi.MidiDefaults;
+import org.jfugue.parser.PackedNoteParserListener;
+import org.jfugue.theory.Chord;
+import org.jfugue.theory.Note;
+import org.jfugue.theory.PackedNote;
+
+/**
+ * Converts parser events, typically from a MidiParser, to Staccato written straight to
+ * a Writer or other Appendable, for converting large numbers of MIDI files. It takes notes 
+ * in packed form, so the MidiParser does not create a Note for each note, and it keeps no
+ * Pattern in memory. 
+ * 
+ * Options: 
+ * <ul>
+ * <li>Durations and beat times can be rounded to a multiple of a quantum, like 1/16 (0.0625) 
+ * of a whole note, which turns the uneven durations of a live performance into readable ones.
+ * A note never rounds to less than one quantum; a rest that rounds to nothing is dropped.</li>
+ * <li>Notes that start at the same time can be collapsed: the MidiParser gives them as notes 
+ * separated by beat time requests, like "C5q @0.0 E5q @0.0 G5q", and they become "C5MAJq" when 
+ * they make a known chord in close position with the same duration and velocities, or "C5q+E5q+G5q"
+ * otherwise.</li>
+ * </ul>
+ * Notes are always written from their note values, so an original spelling like "Eb" in 
+ * place of "D#" is not kept. Call flush() after parsing if the Appendable is buffered.
+ *
+ * @see StaccatoParserListener
+ */
+public class StreamingStaccatoParserListener implements PackedNoteParserListener 
+{
+	private StaccatoWriter writer;
+	private double durationQuantum;
+	private boolean collapseSimultaneousNotes;
+	
+	private byte track;
+	private double[] trackBeatTimes = new double[16];
+	
+	// Notes that start at the same time, waiting to be written together
+	private long[] groupNotes = new long[16];
+	private double[] groupDurations = new double[16];
+	private int groupSize;
+	private double groupStartTime;
+	private boolean isReturningToGroupStart;
+	
+	public StreamingStaccatoParserListener(Appendable out) {
+		this.writer = new StaccatoWriter(out);
+	}
+	
+	/** Rounds durations and beat times to multiples of the given duration; 0, the default, turns rounding off */
+	public StreamingStaccatoParserListener setDurationQuantum(double durationQuantum) {
+		if (durationQuantum < 0.0) {
+			throw new IllegalArgumentException("The duration quantum can not be negative, but was "+durationQuantum);
+		}
+		this.durationQuantum = durationQuantum;
+		return this;
+	}
+	
+	public StreamingStaccatoParserListener setCollapseSimultaneousNotes(boolean collapseSimultaneousNotes) {
+		this.collapseSimultaneousNotes = collapseSimultaneousNotes;
+		return this;
+	}
+	
+	public void flush() {
+		writer.flush();
+	}
+	
+	@Override
+	public void beforeParsingStarts() { 
+		Arrays.fill(trackBeatTimes, 0.0);
+		this.track = 0;
+		this.groupSize = 0;
+		this.isReturningToGroupStart = false;
+	}
+
+	@Override
+	public void afterParsingFinished() { 
+		writeGroup();
+	}
+
+	@Override
+	public void onTrackChanged(byte track) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createTrackElement(track));
+		this.track = track;
+	}
+
+	@Override
+	public void onLayerChanged(byte layer) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createLayerElement(layer));
+	}
+
+	@Override
+	public void onInstrumentParsed(byte instrument) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createInstrumentElement(instrument));
+	}
+
+	@Override
+	public void onTempoChanged(int tempoBPM) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createTempoElement(tempoBPM));
+	}
+
+	@Override
+	public void onKeySignatureParsed(byte key, byte scale) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createKeySignatureElement(key, scale));
+	}
+
+	@Override
+	public void onTimeSignatureParsed(byte numerator, byte powerOfTwo) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createTimeSignatureElement(numerator, powerOfTwo));
+	}
+
+	@Override
+	public void onBarLineParsed(long time) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createBarLineElement(time));
+	}
+
+	@Override
+	public void onTrackBeatTimeBookmarked(String timeBookmarkId) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createTrackBeatTimeBookmarkElement(timeBookmarkId));
+	}
+
+	@Override
+	public void onTrackBeatTimeBookmarkRequested(String timeBookmarkId) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createTrackBeatTimeBookmarkRequestElement(timeBookmarkId));
+	}
+
+	@Override
+	public void onTrackBeatTimeRequested(double time) {
+		time = quantizeTime(time);
+		if (collapseSimultaneousNotes && (groupSize > 0) && !isReturningToGroupStart && (time == groupStartTime)) {
+			// Hold on to this request; if a note comes next, it joins the group and the request is not needed
+			isReturningToGroupStart = true;
+		} else {
+			writeGroup();
+			writer.writeElement(StaccatoUtil.createTrackBeatTimeRequestElement(time));
+		}
+		trackBeatTimes[track] = time;
+	}
+
+	@Override
+	public void onPitchWheelParsed(byte lsb, byte msb) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createPitchWheelElement(lsb, msb));
+	}
+
+	@Override
+	public void onChannelPressureParsed(byte pressure) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createChannelPressureElement(pressure));
+	}
+
+	@Override
+	public void onPolyphonicPressureParsed(byte key, byte pressure) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createPolyphonicPressureElement(key, pressure));
+	}
+
+	@Override
+	public void onSystemExclusiveParsed(byte... bytes) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createSystemExclusiveElement(bytes));
+	}
+
+	@Override
+	public void onControllerEventParsed(byte controller, byte value) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createControllerEventElement(controller, value));
+	}
+
+	@Override
+	public void onLyricParsed(String lyric) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createLyricElement(lyric));
+	}
+
+	@Override
+	public void onMarkerParsed(String marker) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createMarkerElement(marker));
+	}
+
+	@Override
+	public void onFunctionParsed(String id, Object message) {
+		writeGroup();
+		writer.writeElement(StaccatoUtil.createFunctionElement(id, message));
+	}
+
+	@Override
+	public void onNoteParsed(Note note) {
+		onPackedNoteParsed(PackedNote.pack(note), note.getDuration());
+	}
+
+	@Override
+	public void onPackedNoteParsed(long packedNote, double duration) {
+		boolean isRest = PackedNote.hasFlag(packedNote, PackedNote.REST_FLAG);
+		if (durationQuantum > 0.0) {
+			double quantized = quantizeTime(duration);
+			if (isRest && (quantized == 0.0)) {
+				return;
+			}
+			duration = Math.max(quantized, durationQuantum);
+		}
+		
+		if (isRest || !collapseSimultaneousNotes) {
+			writeGroup();
+			writer.writePackedNote(packedNote, duration, track);
+		} else if ((groupSize > 0) && isReturningToGroupStart) {
+			isReturningToGroupStart = false;
+			addToGroup(packedNote, duration);
+		} else {
+			writeGroup();
+			groupStartTime = trackBeatTimes[track];
+			addToGroup(packedNote, duration);
+		}
+		trackBeatTimes[track] += duration;
+	}
+	
+	@Override
+	public void onChordParsed(Chord chord) {
+		writeGroup();
+		writer.writeChord(chord);
+		trackBeatTimes[track] += chord.getRoot().getDuration();
+	}
+
+	private double quantizeTime(double time) {
+		if (durationQuantum == 0.0) {
+			return time;
+		}
+		return Math.round(time / durationQuantum) * durationQuantum;
+	}
+	
+	private void addToGroup(long packedNote, double duration) {
+		if (groupSize == groupNotes.length) {
+			groupNotes = Arrays.copyOf(groupNotes, groupSize * 2);
+			groupDurations = Arrays.copyOf(groupDurations, groupSize * 2);
+		}
+		groupNotes[groupSize] = packedNote;
+		groupDurations[groupSize] = duration;
+		groupSize++;
+	}
+	
+	private void writeGroup() {
+		if (groupSize == 1) {
+			writer.writePackedNote(groupNotes[0], groupDurations[0], track);
+		} else if (groupSize > 1) {
+			Chord chord = getGroupAsChord();
+			if (chord != null) {
+				writer.writeChord(chord);
+			} else {
+				writer.writePackedNotesTogether(groupNotes, groupDurations, groupSize, track);
+			}
+		}
+		groupSize = 0;
+		
+		if (isReturningToGroupStart) {
+			isReturningToGroupStart = false;
+			writer.writeElement(StaccatoUtil.createTrackBeatTimeRequestElement(groupStartTime));
+		}
+	}
+	
+	/** 
+	 * Returns the group as a named chord, or null if the notes differ in anything but their values, 
+	 * or are not exactly the notes of a chord in root position; a chord's pattern does not say 
+	 * how its notes are voiced, so any other voicing would be lost. 
+	 */
+	private Chord getGroupAsChord() {
+		if (track == MidiDefaults.PERCUSSION_TRACK) {
+			return null;
+		}
+		long settings = PackedNote.setValue(groupNotes[0], (byte)0);
+		byte[] values = new byte[groupSize];
+		for (int i=0; i < groupSize; i++) {
+			if ((PackedNote.setValue(groupNotes[i], (byte)0) != settings) || (groupDurations[i] != groupDurations[0])) {
+				return null;
+			}
+			values[i] = PackedNote.getValue(groupNotes[i]);
+		}
+		if (PackedNote.hasFlag(settings, PackedNote.START_OF_TIE) || PackedNote.hasFlag(settings, PackedNote.END_OF_TIE)) {
+			return null;
+		}
+		
+		Chord chord = Chord.identify(values, groupSize);
+		if ((chord == null) || (chord.getInversion() != 0)) {
+			return null;
+		}
+		byte[] chordValues = chord.getNoteValues();
+		Arrays.sort(values);
+		Arrays.sort(chordValues);
+		if (!Arrays.equals(values, chordValues)) {
+			return null;
+		}
+		
+		Note root = PackedNote.toNote(PackedNote.setValue(groupNotes[0], chord.getRoot().getValue()), groupDurations[0]);
+		return new Chord(root, chord.getIntervals());
+	}
+}
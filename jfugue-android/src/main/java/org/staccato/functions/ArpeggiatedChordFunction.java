@@ -21,10 +21,10 @@ package org.staccato.functions;
 
 import org.jfugue.theory.Chord;
 import org.jfugue.theory.Note;
-import org.staccato.PreprocessorFunction;
+import org.staccato.PurePreprocessorFunction;
 import org.staccato.StaccatoParserContext;
 
-public class ArpeggiatedChordFunction implements PreprocessorFunction
+public class ArpeggiatedChordFunction implements PurePreprocessorFunction
 {
 	private static ArpeggiatedChordFunction instance;
 	
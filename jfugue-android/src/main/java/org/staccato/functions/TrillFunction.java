@@ -21,7 +21,7 @@ package org.staccato.functions;
 
 import org.jfugue.provider.NoteProviderFactory;
 import org.jfugue.theory.Note;
-import org.staccato.PreprocessorFunction;
+import org.staccato.PurePreprocessorFunction;
 import org.staccato.StaccatoParserContext;
 
 /**
@@ -30,7 +30,7 @@ import org.staccato.StaccatoParserContext;
  *
  * @author dkoelle
  */
-public class TrillFunction implements PreprocessorFunction
+public class TrillFunction implements PurePreprocessorFunction
 {
 	private static TrillFunction instance;
 	
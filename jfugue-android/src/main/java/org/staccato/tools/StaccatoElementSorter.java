@@ -19,8 +19,6 @@
 
 package org.staccato.tools;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,17 +31,26 @@ import org.staccato.StaccatoParser;
 import org.staccato.StaccatoUtil;
 
 public class StaccatoElementSorter extends TrackTimeManager implements ParserListener {
-	private Map<Double, List<ElementWithTrack>> timeMap;
+	private StaccatoElementTimeline.Builder timelineBuilder;
+	private StaccatoElementTimeline timeline;
     private double initialNoteBeatTime;  
 	
 	public StaccatoElementSorter() {
 		super();
-		timeMap = new HashMap<Double, List<ElementWithTrack>>();
+		timelineBuilder = new StaccatoElementTimeline.Builder();
 	}
 
-	/** Returns the map of sorted elements */
+	/** Returns the map of sorted elements, with beat times in ascending order */
 	public Map<Double, List<ElementWithTrack>> getSortedElements() {
-		return timeMap;
+		return getTimeline().toTimeToElementMap();
+	}
+	
+	/** Returns the elements sorted by beat time */
+	public StaccatoElementTimeline getTimeline() {
+		if (timeline == null) {
+			timeline = timelineBuilder.build();
+		}
+		return timeline;
 	}
 	
 	/** Static method to sort elements in a given Staccato pattern */
@@ -59,6 +66,20 @@ public class StaccatoElementSorter extends TrackTimeManager implements ParserLis
 		parser.parse(string);
 		return sorter.getSortedElements();
 	}
+	
+	/** Static method to sort elements in a given Staccato pattern into a timeline */
+	public static StaccatoElementTimeline createTimeline(PatternProducer patternProducer) {
+		return createTimeline(patternProducer.getPattern().toString());
+	}
+	
+	/** Static method to sort elements in a given Staccato string into a timeline */
+	public static StaccatoElementTimeline createTimeline(String string) {
+		StaccatoParser parser = new StaccatoParser();
+		StaccatoElementSorter sorter = new StaccatoElementSorter();
+		parser.addParserListener(sorter);
+		parser.parse(string);
+		return sorter.getTimeline();
+	}
 
 	@Override
 	public void beforeParsingStarts() { }
@@ -196,18 +217,14 @@ public class StaccatoElementSorter extends TrackTimeManager implements ParserLis
 			return;
 		}
 
-		addToTimeMap(StaccatoUtil.createNoteElement(note));
+		addToTimeMap(note);
 		advanceTrackBeatTime(note.getDuration());
 	}
 
-	private void addToTimeMap(String string) {
-		ElementWithTrack elementWithTrack = new ElementWithTrack(getCurrentTrack(), getCurrentLayer(), string);
-		List<ElementWithTrack> elementList = timeMap.get(getTrackBeatTime());
-		if (elementList == null) {
-			elementList = new ArrayList<ElementWithTrack>();
-			timeMap.put(getTrackBeatTime(), elementList);
-		}
-		elementList.add(elementWithTrack);
+	/** Adds a String, or a Note to be turned into a String when the timeline is read */
+	private void addToTimeMap(Object element) {
+		timelineBuilder.add(getTrackBeatTime(), getCurrentTrack(), getCurrentLayer(), element);
+		timeline = null;
 	}
 }
 
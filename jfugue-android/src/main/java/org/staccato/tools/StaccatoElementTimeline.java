@@ -0,0 +1,200 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.staccato.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jfugue.theory.Note;
+import org.jfugue.util.StableSort;
+import org.staccato.StaccatoUtil;
+
+/**
+ * Staccato elements with the track, layer and beat time at which they appear, sorted by
+ * beat time. Times are kept in a primitive array with the tracks, layers and elements in 
+ * parallel arrays; elements at the same time stay in the order in which they were added.
+ * Note elements are turned into Strings only when they are asked for.
+ *
+ * @see StaccatoElementSorter#getTimeline()
+ */
+public final class StaccatoElementTimeline
+{
+	private final double[] times;
+	private final byte[] tracks;
+	private final byte[] layers;
+	private final Object[] elements;
+	
+	private StaccatoElementTimeline(double[] times, byte[] tracks, byte[] layers, Object[] elements) {
+		this.times = times;
+		this.tracks = tracks;
+		this.layers = layers;
+		this.elements = elements;
+	}
+	
+	public int size() {
+		return times.length;
+	}
+	
+	public double getTime(int index) {
+		return times[index];
+	}
+	
+	public byte getTrack(int index) {
+		return tracks[index];
+	}
+	
+	public byte getLayer(int index) {
+		return layers[index];
+	}
+	
+	public String getElement(int index) {
+		Object element = elements[index];
+		if (element instanceof Note) {
+			element = StaccatoUtil.createNoteElement((Note)element);
+			elements[index] = element;
+		}
+		return (String)element;
+	}
+	
+	public ElementWithTrack getElementWithTrack(int index) {
+		return new ElementWithTrack(tracks[index], layers[index], getElement(index));
+	}
+	
+	/**
+	 * Returns the index of the first element whose time is at or after the given time,
+	 * or size() if every element comes before the given time
+	 */
+	public int indexOf(double time) {
+		int low = 0;
+		int high = times.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	/** Returns the elements whose times are at or after startTime and before endTime */
+	public StaccatoElementTimeline getRange(double startTime, double endTime) {
+		int start = indexOf(startTime);
+		int end = Math.max(start, indexOf(endTime));
+		return new StaccatoElementTimeline(Arrays.copyOfRange(times, start, end), Arrays.copyOfRange(tracks, start, end), 
+				Arrays.copyOfRange(layers, start, end), Arrays.copyOfRange(elements, start, end));
+	}
+	
+	/** 
+	 * Merges timelines into one sorted timeline. Elements at the same time are taken from the 
+	 * timelines in the order in which the timelines are given.
+	 */
+	public static StaccatoElementTimeline merge(StaccatoElementTimeline... timelines) {
+		int size = 0;
+		for (StaccatoElementTimeline timeline : timelines) {
+			size += timeline.size();
+		}
+		double[] times = new double[size];
+		byte[] tracks = new byte[size];
+		byte[] layers = new byte[size];
+		Object[] elements = new Object[size];
+		int[] positions = new int[timelines.length];
+		for (int i=0; i < size; i++) {
+			// Few timelines are merged at once, so the earliest is found by looking at each of them
+			int next = -1;
+			for (int t=0; t < timelines.length; t++) {
+				if ((positions[t] < timelines[t].size()) && ((next == -1) || (timelines[t].times[positions[t]] < timelines[next].times[positions[next]]))) {
+					next = t;
+				}
+			}
+			StaccatoElementTimeline source = timelines[next];
+			int p = positions[next]++;
+			times[i] = source.times[p];
+			tracks[i] = source.tracks[p];
+			layers[i] = source.layers[p];
+			elements[i] = source.elements[p];
+		}
+		return new StaccatoElementTimeline(times, tracks, layers, elements);
+	}
+	
+	/**
+	 * Builds the map representation used by StaccatoElementSorter.getSortedElements(),
+	 * with the times in ascending order.
+	 */
+	public Map<Double, List<ElementWithTrack>> toTimeToElementMap() {
+		Map<Double, List<ElementWithTrack>> map = new TreeMap<Double, List<ElementWithTrack>>();
+		List<ElementWithTrack> elementList = null;
+		for (int i=0; i < times.length; i++) {
+			if ((elementList == null) || (times[i] != times[i-1])) {
+				elementList = new ArrayList<ElementWithTrack>();
+				map.put(times[i], elementList);
+			}
+			elementList.add(getElementWithTrack(i));
+		}
+		return map;
+	}
+	
+	/** Collects elements in any order and sorts them once when the timeline is built */
+	static class Builder {
+		private double[] times = new double[64];
+		private byte[] tracks = new byte[64];
+		private byte[] layers = new byte[64];
+		private Object[] elements = new Object[64];
+		private int size;
+		
+		/** Adds an element, which is either a String or a Note to be turned into a String later */
+		public void add(double time, byte track, byte layer, Object element) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				tracks = Arrays.copyOf(tracks, size * 2);
+				layers = Arrays.copyOf(layers, size * 2);
+				elements = Arrays.copyOf(elements, size * 2);
+			}
+			times[size] = time;
+			tracks[size] = track;
+			layers[size] = layer;
+			elements[size] = element;
+			size++;
+		}
+		
+		public StaccatoElementTimeline build() {
+			if (StableSort.isSorted(times, size)) {
+				return new StaccatoElementTimeline(Arrays.copyOf(times, size), Arrays.copyOf(tracks, size), 
+						Arrays.copyOf(layers, size), Arrays.copyOf(elements, size));
+			}
+			int[] order = StableSort.order(times, size);
+			double[] sortedTimes = new double[size];
+			byte[] sortedTracks = new byte[size];
+			byte[] sortedLayers = new byte[size];
+			Object[] sortedElements = new Object[size];
+			for (int i=0; i < size; i++) {
+				sortedTimes[i] = times[order[i]];
+				sortedTracks[i] = tracks[order[i]];
+				sortedLayers[i] = layers[order[i]];
+				sortedElements[i] = elements[order[i]];
+			}
+			return new StaccatoElementTimeline(sortedTimes, sortedTracks, sortedLayers, sortedElements);
+		}
+	}
+}
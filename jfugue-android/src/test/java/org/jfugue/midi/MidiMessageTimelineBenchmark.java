@@ -0,0 +1,174 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jfugue.midi;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import jp.kshoji.javax.sound.midi.MidiDevice;
+import jp.kshoji.javax.sound.midi.MidiMessage;
+import jp.kshoji.javax.sound.midi.Receiver;
+import jp.kshoji.javax.sound.midi.Sequence;
+import jp.kshoji.javax.sound.midi.Transmitter;
+
+import org.jfugue.devices.MusicReceiver;
+import org.staccato.StaccatoParser;
+
+/**
+ * Measures the CPU time and timing drift of MusicReceiver.sendSequence, which sends
+ * through a MidiMessageTimeline. The sequence is sent in real time to a device that 
+ * records when each message arrives, so the benchmark takes as long as the music:
+ * 30 minutes by default, or the number of minutes given as the first argument.
+ * 
+ * For comparison, it also times the scan over every tick that the previous 
+ * implementation of MidiTools.sendSortedMidiMessagesToReceiver made, without its sleeps.
+ */
+public class MidiMessageTimelineBenchmark 
+{
+    private static final int TEMPO_BPM = 120;
+    private static final int NOTES_PER_BEAT = 4;
+    
+    public static void main(String[] args) throws Exception {
+        int minutes = (args.length > 0) ? Integer.parseInt(args[0]) : 30;
+        Sequence sequence = createSequence(minutes);
+        
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        MidiMessageTimeline timeline = MidiMessageTimeline.fromSequence(sequence);
+        System.out.println("Built a timeline of "+timeline.size()+" messages in "+(System.nanoTime() - start) / 1000000L+" ms");
+        
+        start = System.nanoTime();
+        Map<Long, List<MidiMessage>> sortedMessages = MidiTools.sortMessagesByTick(sequence);
+        long largestTick = MidiTools.getLargestKey(sortedMessages);
+        int occupiedTicks = 0;
+        for (long tick=0; tick <= largestTick; tick++) {
+            if (sortedMessages.get(tick) != null) {
+                occupiedTicks++;
+            }
+        }
+        System.out.println("Previous tick scan: "+(largestTick + 1)+" ticks probed for "+occupiedTicks+" occupied ticks in "+(System.nanoTime() - start) / 1000000L+" ms");
+        
+        for (boolean useTimestamps : new boolean[] { false, true }) {
+            RecordingDevice device = new RecordingDevice(timeline.size());
+            cpuStart = threads.getCurrentThreadCpuTime();
+            device.startNanos = System.nanoTime();
+            new MusicReceiver(device).sendSequence(sequence, useTimestamps);
+            long wallMicros = (System.nanoTime() - device.startNanos) / 1000L;
+            long cpuMicros = (threads.getCurrentThreadCpuTime() - cpuStart) / 1000L;
+            report(useTimestamps ? "Timestamped" : "Untimestamped", timeline, device, wallMicros, cpuMicros);
+        }
+    }
+    
+    /** Four voices of sixteenth notes at 120 BPM */
+    private static Sequence createSequence(int minutes) {
+        int notesPerVoice = minutes * TEMPO_BPM * NOTES_PER_BEAT;
+        StringBuilder pattern = new StringBuilder("T"+TEMPO_BPM);
+        for (int voice=0; voice < 4; voice++) {
+            pattern.append(" V").append(voice);
+            for (int i=0; i < notesPerVoice; i++) {
+                pattern.append(' ').append(48 + voice * 7 + i % 12).append('s');
+            }
+        }
+        StaccatoParser parser = new StaccatoParser();
+        MidiParserListener listener = new MidiParserListener();
+        parser.addParserListener(listener);
+        parser.parse(pattern.toString());
+        return listener.getSequence();
+    }
+    
+    private static void report(String name, MidiMessageTimeline timeline, RecordingDevice device, long wallMicros, long cpuMicros) {
+        // Messages arrive in timeline order, less the tempo messages, which are not sent.
+        // Untimestamped lateness is measured from the first message, so the time to build the timeline is not counted.
+        long[] lateness = new long[device.count];
+        int received = 0;
+        long firstDueMicros = 0L;
+        for (int i=0; (i < timeline.size()) && (received < device.count); i++) {
+            if (timeline.getMessage(i) != device.messages[received]) {
+                continue;
+            }
+            long arrivedMicros = (device.arrivalNanos[received] - device.startNanos) / 1000L;
+            if (device.timestamps[received] >= 0) {
+                lateness[received] = device.timestamps[received] - arrivedMicros;
+            } else {
+                if (received == 0) {
+                    firstDueMicros = timeline.getTimeInMicros(i);
+                }
+                long sinceFirstMicros = (device.arrivalNanos[received] - device.arrivalNanos[0]) / 1000L;
+                lateness[received] = sinceFirstMicros - (timeline.getTimeInMicros(i) - firstDueMicros);
+            }
+            received++;
+        }
+        long[] sorted = Arrays.copyOf(lateness, received);
+        Arrays.sort(sorted);
+        System.out.println(name+": "+received+" messages in "+wallMicros / 1000L+" ms, CPU "+cpuMicros / 1000L+" ms");
+        if (received > 0) {
+            String measure = (device.timestamps[0] >= 0) ? "sent ahead by" : "late by";
+            System.out.println("  "+measure+" (us): median "+sorted[received / 2]+", 99th "+sorted[(int)(received * 0.99)]
+                    +", max "+sorted[received - 1]+", last "+lateness[received - 1]);
+        }
+    }
+    
+    /** A device whose receiver records each message, its timestamp, and when it arrived */
+    private static class RecordingDevice implements MidiDevice, Receiver {
+        private long startNanos;
+        private final MidiMessage[] messages;
+        private final long[] timestamps;
+        private final long[] arrivalNanos;
+        private int count;
+        private boolean isOpen;
+        
+        RecordingDevice(int capacity) {
+            this.messages = new MidiMessage[capacity];
+            this.timestamps = new long[capacity];
+            this.arrivalNanos = new long[capacity];
+        }
+        
+        // Messages sent after the sequence, like all notes off, are not recorded 
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            if (count < messages.length) {
+                arrivalNanos[count] = System.nanoTime();
+                messages[count] = message;
+                timestamps[count] = timeStamp;
+                count++;
+            }
+        }
+        
+        @Override
+        public long getMicrosecondPosition() {
+            return (System.nanoTime() - startNanos) / 1000L;
+        }
+        
+        @Override public Info getDeviceInfo() { return null; }
+        @Override public void open() { isOpen = true; }
+        @Override public void close() { isOpen = false; }
+        @Override public boolean isOpen() { return isOpen; }
+        @Override public int getMaxReceivers() { return 1; }
+        @Override public int getMaxTransmitters() { return 0; }
+        @Override public Receiver getReceiver() { return this; }
+        @Override public List<Receiver> getReceivers() { return Collections.<Receiver>singletonList(this); }
+        @Override public Transmitter getTransmitter() { return null; }
+        @Override public List<Transmitter> getTransmitters() { return Collections.<Transmitter>emptyList(); }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jfugue.temporal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jp.kshoji.javax.sound.midi.MidiMessage;
+import jp.kshoji.javax.sound.midi.ShortMessage;
+
+import org.jfugue.midi.MidiDefaults;
+import org.jfugue.midi.MidiMessageTimeline;
+import org.jfugue.midi.MidiParserListener;
+import org.jfugue.parser.Parser;
+import org.jfugue.parser.ParserListenerAdapter;
+import org.jfugue.theory.Chord;
+import org.jfugue.theory.Note;
+import org.junit.Test;
+import org.staccato.StaccatoParser;
+
+/**
+ * Checks that the compiled TemporalPLP timeline places every note at the same time
+ * as the tick timeline that MidiEventManager builds for the same pattern.
+ */
+public class TemporalTimelineTest 
+{
+    /** One tick at the slowest tempo used below, plus a microsecond for rounding */
+    private static final long TOLERANCE_IN_MICROS = (60000000L / 60L) / MidiDefaults.DEFAULT_RESOLUTION_TICKS_PER_BEAT + 1L;
+
+    @Test
+    public void testNotesMatchMidiTimeline() {
+        assertSameNoteTimes("C D E F G A B C6");
+    }
+
+    @Test
+    public void testDurationsAndRestsMatchMidiTimeline() {
+        assertSameNoteTimes("Cw Dh Eq. Fi Rs Gt Ax. B/0.3 C6/1.25");
+    }
+
+    @Test
+    public void testChordsMatchMidiTimeline() {
+        assertSameNoteTimes("Cmajq Fmajh Gmaj7q Cmajw");
+    }
+
+    @Test
+    public void testTempoChangesMatchMidiTimeline() {
+        assertSameNoteTimes("T120 C D T60 E F T200 G A T[Allegro] B C6");
+    }
+
+    @Test
+    public void testVoicesAndLayersMatchMidiTimeline() {
+        assertSameNoteTimes("T90 V0 C D E F V1 Gh Ah V9 L0 [ACOUSTIC_BASS_DRUM]q Rq L1 [ACOUSTIC_SNARE]h");
+    }
+
+    @Test
+    public void testTimeBookmarksMatchMidiTimeline() {
+        assertSameNoteTimes("V0 C D #mark E F V1 @#mark G A @0.5 B");
+    }
+
+    @Test
+    public void testTimeQuantumRoundsTimes() {
+        TemporalPLP plp = new TemporalPLP();
+        plp.setTimeQuantumInMicros(1000L);
+        StaccatoParser parser = new StaccatoParser();
+        parser.addParserListener(plp);
+        parser.parse("T140 C D/0.3 E F");
+        TemporalTimeline timeline = plp.getTimeline();
+        for (int i=0; i < timeline.size(); i++) {
+            assertEquals(0L, timeline.getTime(i) % 1000L);
+        }
+    }
+
+    @Test
+    public void testSeekUsesMilliseconds() {
+        TemporalPLP plp = new TemporalPLP();
+        plp.seek(250L);
+        plp.seekMicros(250000L);
+        assertEquals(0L, plp.getCurrentTime());
+        assertEquals(0L, plp.getCurrentTimeInMicros());
+    }
+
+    private void assertSameNoteTimes(String pattern) {
+        List<TimedNote> expected = getMidiNoteTimes(pattern);
+        List<TimedNote> actual = getTemporalNoteTimes(pattern);
+        assertEquals("note count for " + pattern, expected.size(), actual.size());
+        for (int i=0; i < expected.size(); i++) {
+            TimedNote e = expected.get(i);
+            TimedNote a = actual.get(i);
+            assertEquals("note " + i + " of " + pattern, e.value, a.value);
+            if (Math.abs(e.timeInMicros - a.timeInMicros) > TOLERANCE_IN_MICROS) {
+                assertEquals("time of note " + i + " of " + pattern, e.timeInMicros, a.timeInMicros);
+            }
+        }
+    }
+
+    private List<TimedNote> getMidiNoteTimes(String pattern) {
+        MidiParserListener midiListener = new MidiParserListener();
+        StaccatoParser parser = new StaccatoParser();
+        parser.addParserListener(midiListener);
+        parser.parse(pattern);
+        
+        MidiMessageTimeline timeline = MidiMessageTimeline.fromSequence(midiListener.getSequence());
+        List<TimedNote> notes = new ArrayList<TimedNote>();
+        for (int i=0; i < timeline.size(); i++) {
+            MidiMessage message = timeline.getMessage(i);
+            if (message instanceof ShortMessage) {
+                ShortMessage shortMessage = (ShortMessage)message;
+                if ((shortMessage.getCommand() == ShortMessage.NOTE_ON) && (shortMessage.getData2() > 0)) {
+                    notes.add(new TimedNote(timeline.getTimeInMicros(i), shortMessage.getData1()));
+                }
+            }
+        }
+        Collections.sort(notes);
+        return notes;
+    }
+
+    private List<TimedNote> getTemporalNoteTimes(String pattern) {
+        TemporalPLP plp = new TemporalPLP();
+        StaccatoParser parser = new StaccatoParser();
+        parser.addParserListener(plp);
+        parser.parse(pattern);
+        
+        // Execute each event against a recording parser to see which notes it carries
+        final List<TimedNote> notes = new ArrayList<TimedNote>();
+        final long[] currentTime = new long[1];
+        Parser recorder = new Parser();
+        recorder.addParserListener(new ParserListenerAdapter() {
+            @Override
+            public void onNoteParsed(Note note) {
+                if (!note.isRest()) {
+                    notes.add(new TimedNote(currentTime[0], note.getValue()));
+                }
+            }
+            
+            @Override
+            public void onChordParsed(Chord chord) {
+                for (Note note : chord.getNotes()) {
+                    onNoteParsed(note);
+                }
+            }
+        });
+        TemporalTimeline timeline = plp.getTimeline();
+        for (int i=0; i < timeline.size(); i++) {
+            currentTime[0] = timeline.getTime(i);
+            timeline.getEvent(i).execute(recorder);
+        }
+        Collections.sort(notes);
+        return notes;
+    }
+
+    private static final class TimedNote implements Comparable<TimedNote> {
+        private final long timeInMicros;
+        private final int value;
+        
+        TimedNote(long timeInMicros, int value) {
+            this.timeInMicros = timeInMicros;
+            this.value = value;
+        }
+        
+        @Override
+        public int compareTo(TimedNote other) {
+            if (timeInMicros != other.timeInMicros) {
+                return (timeInMicros < other.timeInMicros) ? -1 : 1;
+            }
+            return value - other.value;
+        }
+        
+        @Override
+        public String toString() {
+            return value + "@" + timeInMicros;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jfugue.theory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures how many chord progressions ChordProgression builds per second across all 
+ * 24 major and minor keys: one key at a time with getChords(Key), and in bulk with 
+ * getChords(ChordProgression[], Key[], ExecutorService) on the calling thread and on a 
+ * thread pool. The number of threads defaults to the number of processors, or can be 
+ * given as the first argument.
+ */
+public class ChordProgressionBenchmark 
+{
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int REPEATS = 50;
+    private static final String[] PROGRESSIONS = new String[] {
+        "I IV V", "I V vi IV", "ii V I", "I vi ii V", "I IV vi V", "vi IV I V", 
+        "I iii IV V", "I IV ii V", "i iv v", "i VI III VII", "i iv VII III", "I7 IV7 V7"
+    };
+    private static long blackhole;
+    
+    public static void main(String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        final Key[] keys = Key.getAllMajorAndMinorKeys();
+        final ChordProgression[] progressions = new ChordProgression[PROGRESSIONS.length * REPEATS];
+        for (int i=0; i < progressions.length; i++) {
+            progressions[i] = new ChordProgression(PROGRESSIONS[i % PROGRESSIONS.length]);
+        }
+        int operations = progressions.length * keys.length;
+        
+        measure("getChords(Key), one at a time", operations, new Runnable() {
+            public void run() {
+                for (ChordProgression progression : progressions) {
+                    for (Key key : keys) {
+                        blackhole += progression.getChords(key).length;
+                    }
+                }
+            }
+        });
+        measure("getChords(progressions, keys), calling thread", operations, new Runnable() {
+            public void run() {
+                blackhole += ChordProgression.getChords(progressions, keys, null).length;
+            }
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            measure("getChords(progressions, keys), "+threads+" threads", operations, new Runnable() {
+                public void run() {
+                    blackhole += ChordProgression.getChords(progressions, keys, executor).length;
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        measure("getChords(Key) and toString()", operations, new Runnable() {
+            public void run() {
+                for (ChordProgression progression : progressions) {
+                    for (Key key : keys) {
+                        for (Chord chord : progression.getChords(key)) {
+                            blackhole += chord.toString().length();
+                        }
+                    }
+                }
+            }
+        });
+        System.out.println("(checksum "+blackhole+")");
+    }
+    
+    private static void measure(String name, int operations, Runnable benchmark) {
+        for (int i=0; i < WARMUP_ROUNDS; i++) {
+            benchmark.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i=0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            benchmark.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%-50s %12.0f progressions/s", name, operations * 1000000000.0 / best));
+    }
+}
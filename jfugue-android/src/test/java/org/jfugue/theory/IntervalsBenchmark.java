@@ -0,0 +1,143 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jfugue.theory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * Measures the throughput of chord expansion with compiled Intervals. Every chord in
+ * Chord.chordMap is expanded on each of the 12 roots, through Chord objects and through
+ * Staccato chord strings. For comparison, it also times reading the halfsteps of every 
+ * chord the way Intervals did before it was compiled: splitting the interval string and
+ * matching each token with a regular expression on every call.
+ */
+public class IntervalsBenchmark 
+{
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int REPEATS = 200;
+    private static final java.util.regex.Pattern NUMBER_PATTERN = java.util.regex.Pattern.compile("\\d+");
+    private static long blackhole;
+    
+    public static void main(String[] args) {
+        final List<Intervals> intervals = new ArrayList<Intervals>();
+        final List<String> intervalStrings = new ArrayList<String>();
+        final List<String> chordStrings = new ArrayList<String>();
+        for (Map.Entry<String, Intervals> entry : Chord.chordMap.entrySet()) {
+            intervals.add(entry.getValue());
+            intervalStrings.add(entry.getValue().toString());
+            chordStrings.add("C5" + entry.getKey());
+        }
+        final Note[] roots = new Note[12];
+        for (int i=0; i < 12; i++) {
+            roots[i] = new Note(60 + i);
+        }
+        int expansions = REPEATS * intervals.size() * roots.length;
+        
+        measure("Halfsteps, reparsed per call", REPEATS * intervals.size(), new Runnable() {
+            public void run() {
+                for (int r=0; r < REPEATS; r++) {
+                    for (String s : intervalStrings) {
+                        for (int halfsteps : parseHalfsteps(s)) {
+                            blackhole += halfsteps;
+                        }
+                    }
+                }
+            }
+        });
+        measure("Halfsteps, compiled", REPEATS * intervals.size(), new Runnable() {
+            public void run() {
+                for (int r=0; r < REPEATS; r++) {
+                    for (Intervals i : intervals) {
+                        for (int n=0; n < i.size(); n++) {
+                            blackhole += i.getNthHalfsteps(n);
+                        }
+                    }
+                }
+            }
+        });
+        measure("Chord(root, intervals).getNoteValues()", expansions, new Runnable() {
+            public void run() {
+                for (int r=0; r < REPEATS; r++) {
+                    for (Intervals i : intervals) {
+                        for (Note root : roots) {
+                            blackhole += new Chord(root, i).getNoteValues().length;
+                        }
+                    }
+                }
+            }
+        });
+        measure("Chord(root, intervals).getNotes()", expansions, new Runnable() {
+            public void run() {
+                for (int r=0; r < REPEATS; r++) {
+                    for (Intervals i : intervals) {
+                        for (Note root : roots) {
+                            blackhole += new Chord(root, i).getNotes().length;
+                        }
+                    }
+                }
+            }
+        });
+        measure("Chord(String).getNotes()", REPEATS * chordStrings.size(), new Runnable() {
+            public void run() {
+                for (int r=0; r < REPEATS; r++) {
+                    for (String s : chordStrings) {
+                        blackhole += new Chord(s).getNotes().length;
+                    }
+                }
+            }
+        });
+        System.out.println("(checksum "+blackhole+")");
+    }
+    
+    private static void measure(String name, int operations, Runnable benchmark) {
+        for (int i=0; i < WARMUP_ROUNDS; i++) {
+            benchmark.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i=0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            benchmark.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%-45s %12.0f ops/s", name, operations * 1000000000.0 / best));
+    }
+    
+    /** Halfsteps for an interval string, computed the way Intervals did before it was compiled */
+    private static int[] parseHalfsteps(String intervalPattern) {
+        String[] tokens = intervalPattern.split(" ");
+        int[] halfsteps = new int[tokens.length];
+        for (int i=0; i < tokens.length; i++) {
+            Matcher m = NUMBER_PATTERN.matcher(tokens[i]);
+            int degree = m.find() ? Integer.parseInt(m.group()) : 0;
+            halfsteps[i] = Intervals.getHalfsteps(Integer.toString(degree));
+            for (char ch : tokens[i].toUpperCase().toCharArray()) {
+                if (ch == 'B') {
+                    halfsteps[i]--;
+                } else if (ch == '#') {
+                    halfsteps[i]++;
+                }
+            }
+        }
+        return halfsteps;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.staccato;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import org.staccato.maps.CarnaticReplacementMap;
+import org.staccato.maps.SolfegeReplacementMap;
+
+/**
+ * Measures ReplacementMapPreprocessor on inputs of several megabytes: the solfege map
+ * with angle brackets, the Carnatic map without them, a large custom map, and a map 
+ * whose values contain further keys, replaced over several iterations. Each case is 
+ * compared with the regular expression replacement that ReplacementMapPreprocessor used 
+ * before it was given a ReplacementMapIndex, and the outputs are checked to be the same.
+ * The input size in megabytes can be given as the first argument; the default is 4.
+ */
+public class ReplacementMapPreprocessorBenchmark 
+{
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final java.util.regex.Pattern PATTERN_WITH_BRACKETS = java.util.regex.Pattern.compile("<\\S+>");
+    private static final java.util.regex.Pattern PATTERN_WITHOUT_BRACKETS = java.util.regex.Pattern.compile("\\S+");
+    
+    public static void main(String[] args) {
+        int megabytes = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        int length = megabytes * 1024 * 1024;
+        
+        measure("Solfege, <key>", new SolfegeReplacementMap(), true, 1, 
+                createInput(length, new String[] { "<Do>q", "<re>i", "<MI>", "<Fa>h", "<sol>", "<La>", "<Ti>w", "C5", "<Unknown>" }));
+        measure("Carnatic, bare keys", new CarnaticReplacementMap(), false, 1, 
+                createInput(length, new String[] { "S", "R1", "G3", "M1", "P", "D2", "N3", "S", "T120" }));
+        
+        Map<String, String> customMap = new HashMap<String, String>();
+        String[] customTokens = new String[64];
+        for (int i=0; i < 5000; i++) {
+            customMap.put("RIFF" + i, "C" + (i % 10) + "q+E" + (i % 10) + "q");
+            if (i < customTokens.length) {
+                customTokens[i] = "<riff" + (i * 79) + ">";
+            }
+        }
+        measure("Custom map of 5000 keys, <key>", customMap, true, 1, createInput(length, customTokens));
+        
+        Map<String, String> nestedMap = new HashMap<String, String>();
+        nestedMap.put("SONG", "<VERSE> <CHORUS> <VERSE>");
+        nestedMap.put("VERSE", "<LINE> <LINE>");
+        nestedMap.put("CHORUS", "C5q E5q G5h");
+        nestedMap.put("LINE", "C5i D5i E5q");
+        measure("Nested keys, 3 iterations", nestedMap, true, 3, createInput(length / 8, new String[] { "<Song>", "<Chorus>", "Rq" }));
+    }
+    
+    private static String createInput(int length, String[] tokens) {
+        StringBuilder buddy = new StringBuilder(length + 32);
+        for (int i=0; buddy.length() < length; i++) {
+            buddy.append(tokens[i % tokens.length]).append((i % 16 == 15) ? "  " : " ");
+        }
+        return buddy.toString();
+    }
+    
+    private static void measure(String name, final Map<String, String> map, final boolean requireAngleBrackets, final int iterations, final String input) {
+        final ReplacementMapPreprocessor preprocessor = ReplacementMapPreprocessor.getInstance();
+        preprocessor.setReplacementMap(map).setRequireAngleBrackets(requireAngleBrackets).setIterations(iterations).setCaseSensitive(false);
+        
+        final String[] results = new String[2];
+        long indexed = time(new Runnable() {
+            public void run() {
+                results[0] = preprocessor.preprocess(input, null);
+            }
+        });
+        long regex = time(new Runnable() {
+            public void run() {
+                results[1] = preprocessWithRegex(input, map, requireAngleBrackets, iterations);
+            }
+        });
+        if (!results[0].equals(results[1])) {
+            throw new AssertionError(name+": ReplacementMapPreprocessor and the regular expression replacement give different results");
+        }
+        double megabytes = input.length() / (1024.0 * 1024.0);
+        System.out.println(String.format("%-32s %6.1f MB  indexed %6d ms (%6.1f MB/s)  regex %6d ms (%6.1f MB/s)", 
+                name, megabytes, indexed / 1000000L, megabytes * 1e9 / indexed, regex / 1000000L, megabytes * 1e9 / regex));
+    }
+    
+    private static long time(Runnable benchmark) {
+        for (int i=0; i < WARMUP_ROUNDS; i++) {
+            benchmark.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i=0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            benchmark.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+    
+    /** Replaces keys the way ReplacementMapPreprocessor did before it was given a ReplacementMapIndex */
+    private static String preprocessWithRegex(String s, Map<String, String> map, boolean requireAngleBrackets, int iterations) {
+        String iteratingString = s;
+        for (int i=0; i < iterations; i++) {
+            StringBuilder buddy = new StringBuilder();
+            int posPrev = 0;
+            Matcher m = (requireAngleBrackets ? PATTERN_WITH_BRACKETS : PATTERN_WITHOUT_BRACKETS).matcher(iteratingString);
+            while (m.find()) {
+                String foundKey = requireAngleBrackets ? m.group().substring(1, m.group().length()-1) : m.group();
+                buddy.append(iteratingString.substring(posPrev, m.start()));
+                String replacementValue = map.get(foundKey.toUpperCase());
+                buddy.append((replacementValue != null) ? replacementValue : foundKey);
+                posPrev = m.end();
+            }
+            buddy.append(iteratingString.substring(posPrev, iteratingString.length()));
+            iteratingString = buddy.toString();
+        }
+        return iteratingString;
+    }
+}
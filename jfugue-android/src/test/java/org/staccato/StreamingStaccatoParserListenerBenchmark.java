@@ -0,0 +1,145 @@
+/*
+ * JFugue, an Application Programming Interface (API) for Music Programming
+ * http://www.jfugue.org
+ *
+ * Copyright (C) 2003-2014 David Koelle
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.staccato;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import jp.kshoji.javax.sound.midi.Sequence;
+import jp.kshoji.javax.sound.midi.Track;
+
+import org.jfugue.midi.MidiParser;
+import org.jfugue.midi.MidiParserListener;
+
+/**
+ * Measures how fast a MIDI sequence is converted to Staccato by StaccatoParserListener,
+ * which builds a Pattern, and by StreamingStaccatoParserListener, which writes to an 
+ * Appendable. The sequence has four voices of sixteenth notes and chords, 
+ * 30 minutes long by default, or the number of minutes given as the first argument.
+ */
+public class StreamingStaccatoParserListenerBenchmark 
+{
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int TEMPO_BPM = 120;
+    private static long blackhole;
+    
+    public static void main(String[] args) {
+        int minutes = (args.length > 0) ? Integer.parseInt(args[0]) : 30;
+        final Sequence sequence = createSequence(minutes);
+        final int events = countEvents(sequence);
+        System.out.println("Sequence of "+events+" MIDI events");
+        
+        measure("StaccatoParserListener", events, new Runnable() {
+            public void run() {
+                MidiParser parser = new MidiParser();
+                StaccatoParserListener listener = new StaccatoParserListener();
+                parser.addParserListener(listener);
+                parser.parse(sequence);
+                blackhole += listener.getPattern().toString().length();
+            }
+        });
+        measure("StreamingStaccatoParserListener, StringBuilder", events, new Runnable() {
+            public void run() {
+                StringBuilder out = new StringBuilder();
+                convert(sequence, new StreamingStaccatoParserListener(out));
+                blackhole += out.length();
+            }
+        });
+        measure("StreamingStaccatoParserListener, Writer", events, new Runnable() {
+            public void run() {
+                CountingWriter out = new CountingWriter();
+                convert(sequence, new StreamingStaccatoParserListener(out));
+                blackhole += out.count;
+            }
+        });
+        measure("  with quantization and chord collapsing", events, new Runnable() {
+            public void run() {
+                StringBuilder out = new StringBuilder();
+                convert(sequence, new StreamingStaccatoParserListener(out).setDurationQuantum(1.0 / 32.0).setCollapseSimultaneousNotes(true));
+                blackhole += out.length();
+            }
+        });
+        System.out.println("(checksum "+blackhole+")");
+    }
+    
+    private static void convert(Sequence sequence, StreamingStaccatoParserListener listener) {
+        MidiParser parser = new MidiParser();
+        parser.addParserListener(listener);
+        parser.parse(sequence);
+        listener.flush();
+    }
+    
+    private static Sequence createSequence(int minutes) {
+        int beats = minutes * TEMPO_BPM;
+        StringBuilder pattern = new StringBuilder("T"+TEMPO_BPM);
+        for (int voice=0; voice < 3; voice++) {
+            pattern.append(" V").append(voice).append(" I").append(voice * 8);
+            for (int i=0; i < beats * 4; i++) {
+                pattern.append(' ').append(48 + voice * 7 + i % 12).append('s');
+            }
+        }
+        pattern.append(" V3");
+        for (int i=0; i < beats; i++) {
+            pattern.append(' ').append(36 + i % 12).append("majq");
+        }
+        StaccatoParser parser = new StaccatoParser();
+        MidiParserListener listener = new MidiParserListener();
+        parser.addParserListener(listener);
+        parser.parse(pattern.toString());
+        return listener.getSequence();
+    }
+    
+    private static int countEvents(Sequence sequence) {
+        int events = 0;
+        for (Track track : sequence.getTracks()) {
+            events += track.size();
+        }
+        return events;
+    }
+    
+    private static void measure(String name, int events, Runnable benchmark) {
+        for (int i=0; i < WARMUP_ROUNDS; i++) {
+            benchmark.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i=0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            benchmark.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%-50s %8d ms %12.0f events/s", name, best / 1000000L, events * 1000000000.0 / best));
+    }
+    
+    /** A Writer that discards what is written, counting the characters */
+    private static class CountingWriter extends Writer {
+        private long count;
+        
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            count += length;
+        }
+        
+        @Override
+        public void flush() { }
+        
+        @Override
+        public void close() { }
+    }
+}